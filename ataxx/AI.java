@@ -4,32 +4,40 @@
 
 package ataxx;
 
-import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
-
-import static ataxx.PieceColor.*;
-import static java.lang.Math.min;
-import static java.lang.Math.max;
-
-/** A Player that computes its own moves.
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/** A Player that computes its own moves.  It searches on a separate
+ *  thread, so that while it thinks the user can stop the search (making
+ *  it play the best move found so far) or undo, start a new game, or
+ *  quit.  Its limits and options, such as whether pondering is on, come
+ *  from the GameContext of its Game.  If pondering is on, then after
+ *  each of its moves it goes on searching, in the background, the
+ *  position after the reply it expects.  If the opponent makes that
+ *  reply, the search continues as an ordinary one (a ponder hit);
+ *  otherwise it is abandoned.  Either way, what it
+ *  stored in the transposition table remains.  If its context has an
+ *  opening book, it plays from the book, without searching, while the
+ *  position is in it.
  *  @author Zac Nelson
  */
 class AI extends Player {
 
-    /** Maximum minimax search depth before going to static evaluation. */
-    private static final int MAX_DEPTH = 1;
-    /** A position magnitude indicating a win (for red if positive, blue
-     *  if negative). */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
-    /** A magnitude greater than a normal value. */
-    private static final int INFTY = Integer.MAX_VALUE;
-
     /** A new AI for GAME that will play MYCOLOR. SEED is used to initialize
      *  a random-number generator for use in move computations.  Identical
      *  seeds produce identical behaviour. */
     AI(Game game, PieceColor myColor, long seed) {
         super(game, myColor);
         _random = new Random(seed);
+        GameContext context = game.context();
+        _engine = new Engine(context.threads(), context.hashMegabytes());
+        _engine.setLateMoveReductions(context.lateMoveReductions());
+        _engine.setFutilityPruning(context.futilityPruning());
+        _engine.setEndgameEmpties(context.endgameEmpties());
+        _engine.setSymmetricHashing(context.symmetricHashing());
+        _engine.setCache(context.cache());
     }
 
     @Override
@@ -40,136 +48,133 @@ class AI extends Player {
     @Override
     String getMove() {
         if (!getBoard().canMove(myColor())) {
+            stopThinking();
             game().reportMove(Move.pass(), myColor());
             return "-";
         }
-        Main.startTiming();
-        Move move = findMove();
-        Main.endTiming();
+        Move bookMove = bookMove();
+        if (bookMove != null) {
+            stopThinking();
+            game().reportMove(bookMove, myColor());
+            return bookMove.toString();
+        }
+        GameContext context = context();
+        context.startTiming();
+        Future<Move> search = startSearch();
+        String interruption = awaitSearch(search, _engine::stop);
+        Move move = result(search);
+        context.endTiming(_engine.depthReached(), _engine.nodes());
+        context.debug(1, "[tt: %s]", _engine.tableStats());
+        context.debug(1, "[nodes by depth: %s]", _engine.depthStats());
+        context.debug(1, "[pv: %s]", _engine.principalVariation());
+        if (_engine.solved()) {
+            context.debug(1, "[solved: final red margin %d]",
+                          _engine.solvedScore());
+        }
+        if (interruption != null) {
+            return interruption;
+        }
+        if (context.ponder()) {
+            startPondering(move);
+        }
         game().reportMove(move, myColor());
         return move.toString();
     }
 
-    /** Return a move for me from the current position, assuming there
-     *  is a move. */
-    private Move findMove() {
-        Board b = new Board(getBoard());
-        _lastFoundMove = null;
-        if (myColor() == RED) {
-            minMax(b, MAX_DEPTH, true, 1, -INFTY, INFTY);
-        } else {
-            minMax(b, MAX_DEPTH, true, -1, -INFTY, INFTY);
+    @Override
+    void stopThinking() {
+        if (_ponder != null) {
+            _engine.stop();
+            result(_ponder);
         }
-        return _lastFoundMove;
     }
 
-    /** List of all legal moves for the player whose turn it is.
-     * @param board
-     * @Return List
-     **/
-    private ArrayList<Move> legalMoves(Board board) {
-        ArrayList<Move> legalMoves = new ArrayList<Move>();
-        for (char c0 = 'a'; c0 < (char) ('g' + 1); c0 = (char) (c0 + 1)) {
-            for (char r0 = '1'; r0 < (char) ('7' + 1); r0 = (char) (r0 + 1)) {
-                if (board.get(c0, r0) == board.whoseMove()) {
-                    for (char c1 = (char) (c0 - 2); c1 < (char) (c0 + 3);
-                         c1 = (char) (c1 + 1)) {
-                        for (char r1 = (char) (r0 - 2); r1 < (char) (r0 + 3);
-                             r1 = (char) (r1 + 1)) {
-                            if (board.get(c1, r1) == EMPTY) {
-                                legalMoves.add(Move.move(c0, r0, c1, r1));
-                            }
-                        }
-                    }
-                }
-            }
+    /** Return a move for me from the opening book of my context for the
+     *  current position, or null if there is no book or the position is
+     *  not in it. */
+    private Move bookMove() {
+        OpeningBook book = context().book();
+        if (book == null) {
+            return null;
         }
-        return legalMoves;
-    }
-
-    /** The move found by the last call to the findMove method
-     *  above. */
-    private Move _lastFoundMove;
-
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _foundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _foundMove. If the game is over
-     *  on BOARD, does not set _foundMove. */
-    private int minMax(Board board, int depth, boolean saveMove, int sense,
-                       int alpha, int beta) {
-        /* We use WINNING_VALUE + depth as the winning value so as to favor
-         * wins that happen sooner rather than later (depth is larger the
-         * fewer moves have been made. */
-        if (depth == 0 || board.getWinner() != null) {
-            return staticScore(board, WINNING_VALUE + depth);
+        Move move = book.choose(getBoard(), context().bookVariety(),
+                                _random);
+        if (move != null) {
+            context().debug(1, "[book: %s]", move);
         }
+        return move;
+    }
 
-        Move best;
-        best = null;
-        int bestScore;
-
-        ArrayList<Move> legalMoves = legalMoves(board);
-        if (sense == 1) {
-            bestScore = -INFTY;
-            for (Move m: legalMoves) {
-                board.makeMove(m);
-                int moveScore =
-                        minMax(board, depth - 1, false, -1, alpha, beta);
-                if (moveScore > bestScore) {
-                    bestScore = moveScore;
-                    best = m;
-                    alpha = max(alpha, bestScore);
-                }
-                board.undo();
-                if (alpha >= beta) {
-                    break;
-                }
-            }
-        } else {
-            bestScore = INFTY;
-            for (Move m: legalMoves) {
-                board.makeMove(m);
-                int moveScore = minMax(board, depth - 1, false, 1, alpha, beta);
-                if (moveScore < bestScore) {
-                    bestScore = moveScore;
-                    best = m;
-                    beta = min(beta, bestScore);
-                }
-                board.undo();
-                if (alpha >= beta) {
-                    break;
-                }
+    /** Start a search, in the background, for a move for me from the
+     *  current position, assuming there is a move, and return its
+     *  eventual result.  It searches to successively greater depths
+     *  until the think time or node budget is used up, returning the
+     *  move chosen by the deepest search that completed.  If I have been
+     *  pondering this position, the search continues from there. */
+    private Future<Move> startSearch() {
+        if (_ponder != null) {
+            if (getBoard().key() == _ponderBoard.key()
+                && getBoard().equals(_ponderBoard)) {
+                context().debug(1, "[ponder hit]");
+                _engine.ponderHit(context().thinkTime());
+                return _ponder;
             }
+            stopThinking();
         }
+        return _engine.startSearch(new Board(getBoard()),
+                                   context().thinkTime(),
+                                   context().nodeLimit(), Search.MAX_DEPTH);
+    }
 
-        if (legalMoves.isEmpty()) {
-            best = Move.pass();
+    /** Start searching, in the background, the position after I make
+     *  MOVE and my opponent makes the reply that the last search
+     *  expected, unless there is no such reply or the game would then be
+     *  over or require my pass. */
+    private void startPondering(Move move) {
+        List<Move> pv = _engine.principalVariation();
+        if (pv.size() < 2 || pv.get(0) != move) {
+            return;
         }
-
-        if (saveMove) {
-            _lastFoundMove = best;
+        Board board = new Board(getBoard());
+        board.makeMove(move);
+        if (!board.legalMove(pv.get(1))) {
+            return;
         }
-        return bestScore;
+        board.makeMove(pv.get(1));
+        if (board.getWinner() != null || !board.canMove(myColor())) {
+            return;
+        }
+        _ponderBoard = board;
+        _ponder = _engine.startSearch(new Board(board), 0,
+                                      context().nodeLimit(),
+                                      Search.MAX_DEPTH);
     }
 
-    /** Return a heuristic value for BOARD.  This value is +- WINNINGVALUE in
-     *  won positions, and 0 for ties. */
-    private int staticScore(Board board, int winningValue) {
-        PieceColor winner = board.getWinner();
-        if (winner != null) {
-            return switch (winner) {
-            case RED -> winningValue;
-            case BLUE -> -winningValue;
-            default -> 0;
-            };
+    /** Wait for SEARCH to finish, and return its move.  If it is the
+     *  background search, there is no longer one. */
+    private Move result(Future<Move> search) {
+        try {
+            return search.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("search failed", excp);
+        } finally {
+            if (search == _ponder) {
+                _ponder = null;
+                _ponderBoard = null;
+            }
         }
-
-        return board.redPieces() - board.bluePieces();
     }
 
+    /** The search machinery, kept (with its transposition table) from
+     *  move to move. */
+    private final Engine _engine;
+
+    /** The result of the background search, or null if none is in
+     *  progress. */
+    private Future<Move> _ponder;
+    /** The position being searched in the background, or null. */
+    private Board _ponderBoard;
+
     /** Pseudo-random number generator for move computation. */
     private Random _random = new Random();
 }
@@ -0,0 +1,239 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static ataxx.TranspositionTable.*;
+import static ataxx.GameException.error;
+
+/** A transposition table kept in a file, so that the results of deep
+ *  searches survive from one run to the next.  Searches store their
+ *  results for positions within MAX_PLY plies of the root that they
+ *  searched at least MIN_DEPTH plies deep, and consult it there and at
+ *  the root, before searching (see Engine.setCache).
+ *
+ *  The file is a header of HEADER_BYTES bytes, holding MAGIC, the
+ *  number of buckets, the flags, and the number of times the file has
+ *  been opened (its generation), followed by a power of two of buckets
+ *  of BUCKET_SIZE entries.  Each entry is two longs, like those of a
+ *  TranspositionTable: the packed contents (see TranspositionTable.pack,
+ *  whose age field here holds the generation), and the key of the
+ *  position exclusive-or'ed with them.  The key of a position folds in
+ *  its number of consecutive jumps (as Endgame's do), on which its value
+ *  depends through the jump limit.  A new entry replaces the one in
+ *  its bucket for the same position, if it is at least as deep, and
+ *  otherwise the entry that is shallowest, counting those from earlier
+ *  generations as somewhat shallower.  The size of the file is fixed
+ *  when it is created, so that it never grows past the size it was
+ *  given.
+ *
+ *  The file is memory-mapped, so that opening it takes the same time
+ *  however large it is, and only the pages actually probed are read.
+ *  An entry torn by a crash or by simultaneous stores fails to match its
+ *  key and is ignored, and a new file is written under a temporary name
+ *  and renamed when complete.  Any number of threads, and of processes
+ *  sharing the file, may use it at once without locking.
+ *
+ *  If the cache is symmetric (which is fixed when its file is created),
+ *  positions are stored under the keys of their canonical forms (see
+ *  Board.canonicalSymmetry), with their best moves transformed to match,
+ *  so that an entry serves all the rotations and reflections of its
+ *  position.
+ *  @author Zac Nelson
+ */
+class AnalysisCache implements Closeable {
+
+    /** The first long of a cache file. */
+    static final long MAGIC = 0x4154414341434832L;
+    /** Default size of a new cache file, in megabytes. */
+    static final int DEFAULT_MEGABYTES = 64;
+    /** Greatest size of a cache file, in megabytes. */
+    static final int MAX_MEGABYTES = 1024;
+    /** Greatest distance from the root, in plies, of positions stored in
+     *  the cache. */
+    static final int MAX_PLY = 2;
+    /** Least depth of search for which results are stored in the
+     *  cache. */
+    static final int MIN_DEPTH = 3;
+
+    /** Number of bytes in the header. */
+    private static final int HEADER_BYTES = 64;
+    /** Offsets in the header of the number of buckets, the flags, and
+     *  the generation. */
+    private static final int BUCKETS = Long.BYTES, FLAGS = 2 * Long.BYTES,
+        GENERATION = 3 * Long.BYTES;
+    /** Flag of a symmetric cache. */
+    private static final long SYMMETRIC = 1;
+    /** Number of entries in a bucket, and of bytes in an entry and a
+     *  bucket. */
+    private static final int BUCKET_SIZE = 4, ENTRY_BYTES = 2 * Long.BYTES,
+        BUCKET_BYTES = BUCKET_SIZE * ENTRY_BYTES;
+    /** Number of plies of depth by which an entry from an earlier
+     *  generation is discounted, per generation, when choosing an entry
+     *  to replace. */
+    private static final int AGE_PENALTY = 1;
+
+    /** The cache in FILE.  If FILE does not exist or is empty, it is
+     *  created with entries occupying MEGABYTES megabytes (between 1 and
+     *  MAX_MEGABYTES, and rounded down to a power of two), symmetric iff
+     *  SYMMETRIC; otherwise, it keeps the size and symmetry it was
+     *  created with.  Throws GameException if FILE is not a cache. */
+    AnalysisCache(File file, int megabytes, boolean symmetric)
+        throws IOException {
+        Path path = file.toPath();
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            create(path, megabytes, symmetric);
+        }
+        try (FileChannel channel =
+             FileChannel.open(path, StandardOpenOption.READ,
+                              StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw error("not an analysis cache: %s", file);
+            }
+            _buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        long buckets = _buffer.getLong(BUCKETS);
+        if (_buffer.getLong(0) != MAGIC || Long.bitCount(buckets) != 1
+            || HEADER_BYTES + buckets * BUCKET_BYTES != _buffer.capacity()) {
+            throw error("not an analysis cache: %s", file);
+        }
+        _mask = (int) buckets - 1;
+        _symmetric = (_buffer.getLong(FLAGS) & SYMMETRIC) != 0;
+        long generation = _buffer.getLong(GENERATION) + 1;
+        _buffer.putLong(GENERATION, generation);
+        _age = (int) generation & AGE_MASK;
+    }
+
+    /** Create an empty cache at PATH, as for the constructor.  The file
+     *  is written under a temporary name and renamed when complete, so
+     *  that a crash leaves either no cache or a whole one.  Its entries
+     *  are not written: they read as zeros, which are empty entries, and
+     *  the file system need not allocate them until they are stored. */
+    private static void create(Path path, int megabytes, boolean symmetric)
+        throws IOException {
+        long bytes = (long) Math.max(1, Math.min(megabytes, MAX_MEGABYTES))
+            << 20;
+        long buckets = Long.highestOneBit(bytes / BUCKET_BYTES);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(temp.toFile(),
+                                                         "rw")) {
+            out.setLength(0);
+            out.setLength(HEADER_BYTES + buckets * BUCKET_BYTES);
+            out.writeLong(MAGIC);
+            out.writeLong(buckets);
+            out.writeLong(symmetric ? SYMMETRIC : 0);
+            out.getChannel().force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Return the number of entries in the cache. */
+    int size() {
+        return (_mask + 1) * BUCKET_SIZE;
+    }
+
+    /** Return true iff positions are stored by their canonical forms. */
+    boolean symmetric() {
+        return _symmetric;
+    }
+
+    /** Return the packed contents (see TranspositionTable) of the entry
+     *  for BOARD, with its move transformed to suit BOARD, or 0 if there
+     *  is none. */
+    long probe(Board board) {
+        Symmetry sym = _symmetric ? board.canonicalSymmetry()
+            : Symmetry.IDENTITY;
+        long key = key(board, sym);
+        int i = bucket(key);
+        for (int k = 0; k < BUCKET_SIZE; k += 1, i += ENTRY_BYTES) {
+            long data = _buffer.getLong(i);
+            if (data != 0 && (_buffer.getLong(i + Long.BYTES) ^ data) == key) {
+                int move = move(data);
+                if (move != 0 && !Move.validCode(move)) {
+                    return 0;
+                }
+                if (move == 0 || sym == Symmetry.IDENTITY) {
+                    return data;
+                }
+                return pack(depth(data), bound(data), score(data),
+                            sym.inverse().applyCode(move), age(data));
+            }
+        }
+        return 0;
+    }
+
+    /** Record that BOARD has score SCORE, which is a bound of type BOUND
+     *  (as for a TranspositionTable), according to a search of depth
+     *  DEPTH that found the move with code BEST (0 if none) as its best
+     *  move. */
+    void store(Board board, int depth, int bound, int score, int best) {
+        Symmetry sym = _symmetric ? board.canonicalSymmetry()
+            : Symmetry.IDENTITY;
+        long key = key(board, sym);
+        int i = bucket(key);
+        int victim = -1;
+        int victimValue = Integer.MAX_VALUE;
+        for (int k = 0; k < BUCKET_SIZE; k += 1, i += ENTRY_BYTES) {
+            long old = _buffer.getLong(i);
+            if (old != 0 && (_buffer.getLong(i + Long.BYTES) ^ old) == key) {
+                if (depth < depth(old)) {
+                    return;
+                }
+                victim = i;
+                break;
+            }
+            int value = old == 0 ? -1
+                : depth(old) - AGE_PENALTY * ((_age - age(old)) & AGE_MASK);
+            if (value < victimValue) {
+                victim = i;
+                victimValue = value;
+            }
+        }
+        long data = pack(depth, bound, score,
+                         best == 0 ? 0 : sym.applyCode(best), _age);
+        _buffer.putLong(victim, data);
+        _buffer.putLong(victim + Long.BYTES, key ^ data);
+    }
+
+    /** Write my changes to the file. */
+    @Override
+    public void close() {
+        _buffer.force();
+    }
+
+    /** Return the key of the entry for BOARD, whose image under SYM is
+     *  stored. */
+    private static long key(Board board, Symmetry sym) {
+        return board.key(sym) ^ (board.numJumps() * Endgame.JUMP_KEY);
+    }
+
+    /** Return the byte offset of the first entry of the bucket for
+     *  KEY. */
+    private int bucket(long key) {
+        return HEADER_BYTES
+            + ((int) (key ^ (key >>> 32)) & _mask) * BUCKET_BYTES;
+    }
+
+    /** The file, mapped. */
+    private final MappedByteBuffer _buffer;
+    /** Mask for reducing hash values to bucket numbers. */
+    private final int _mask;
+    /** True iff positions are stored by their canonical forms. */
+    private final boolean _symmetric;
+    /** Age field of the entries stored in this generation. */
+    private final int _age;
+}
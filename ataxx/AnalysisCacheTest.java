@@ -0,0 +1,104 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/** Tests of analysis caches.
+ *  @author Zac Nelson
+ */
+public class AnalysisCacheTest {
+
+    @Test
+    public void testStoreAndProbe() throws IOException {
+        File dir = Files.createTempDirectory("ataxx-cache").toFile();
+        File file = new File(dir, "cache");
+        try {
+            Board board = new Board(), image = new Board();
+            board.makeMove(Move.move("a7-b6"));
+            image.makeMove(Symmetry.ROTATE_180.apply(Move.move("a7-b6")));
+            Move reply = Move.move("a1-b2");
+            try (AnalysisCache cache = new AnalysisCache(file, 1, true)) {
+                assertEquals("entry in new cache", 0, cache.probe(board));
+                cache.store(board, 5, TranspositionTable.EXACT, 42,
+                            reply.code());
+                cache.store(board, 3, TranspositionTable.LOWER, 7, 0);
+                long entry = cache.probe(board);
+                assertEquals("wrong depth", 5,
+                             TranspositionTable.depth(entry));
+                assertEquals("wrong score", 42,
+                             TranspositionTable.score(entry));
+                assertEquals("wrong move", reply.code(),
+                             TranspositionTable.move(entry));
+                assertEquals("wrong move for image",
+                             Symmetry.ROTATE_180.apply(reply).code(),
+                             TranspositionTable.move(cache.probe(image)));
+                String fen = board.toFen();
+                Board jumped = Board.fromFen(
+                    fen.substring(0, fen.lastIndexOf(' ')) + " 5");
+                assertEquals("entry for other jump count", 0,
+                             cache.probe(jumped));
+            }
+            try (AnalysisCache cache = new AnalysisCache(file, 2, false)) {
+                assertTrue("symmetry not kept", cache.symmetric());
+                assertEquals("size not kept", 1 << 16, cache.size());
+                assertEquals("entry lost", 42,
+                             TranspositionTable.score(cache.probe(image)));
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                for (long i = 0; i < raf.length(); i += Long.BYTES) {
+                    raf.seek(i);
+                    if (i >= Long.BYTES * 8 && raf.readLong() != 0) {
+                        raf.seek(i);
+                        raf.writeInt(raf.readInt() ^ 1);
+                        break;
+                    }
+                }
+            }
+            try (AnalysisCache cache = new AnalysisCache(file, 1, true)) {
+                assertEquals("torn entry used", 0, cache.probe(board));
+            }
+            Files.write(file.toPath(), new byte[100]);
+            try {
+                new AnalysisCache(file, 1, true);
+                fail("bad cache accepted");
+            } catch (GameException excp) {
+                /* Expected. */
+            }
+        } finally {
+            GameRecordTest.delete(dir);
+        }
+    }
+
+    @Test
+    public void testInterruptedCreation() throws IOException {
+        File dir = Files.createTempDirectory("ataxx-cache").toFile();
+        File file = new File(dir, "cache");
+        try {
+            Files.write(new File(dir, "cache.tmp").toPath(), new byte[100]);
+            Files.write(file.toPath(), new byte[0]);
+            try (AnalysisCache cache = new AnalysisCache(file, 1, false)) {
+                assertEquals("wrong size", 1 << 16, cache.size());
+                assertFalse("wrong symmetry", cache.symmetric());
+            }
+            assertFalse("temporary file left",
+                        new File(dir, "cache.tmp").exists());
+            try (AnalysisCache cache = new AnalysisCache(file, 1, true)) {
+                assertEquals("entry in new cache", 0,
+                             cache.probe(new Board()));
+            }
+        } finally {
+            GameRecordTest.delete(dir);
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static ataxx.PieceColor.*;
+
+/** Bulk analysis of positions.  Run as
+ *      java ataxx.Analyze [ --depth=N ] [ --nodes=N ] [ --time=MSEC ]
+ *          [ --threads=N ] [ --hash=MB ] [ --cache=FILE ]
+ *          [ INPUT [ OUTPUT ] ]
+ *  this reads positions, one per line in the notation of Board.toFen,
+ *  from INPUT (default: the standard input), searches each to depth N
+ *  (default DEFAULT_DEPTH, or no limit if --nodes or --time is given)
+ *  or for at most N positions or MSEC milliseconds, and writes to
+ *  OUTPUT (default: the standard output), for each, a line
+ *      POSITION bm MOVE score SCORE depth D nodes N pv MOVE ...
+ *  SCORE is for the player to move, in the units of the evaluation, or
+ *  "win" or "loss" if the search found a forced result.  A position in
+ *  which the player to move must pass has bm "-"; one whose game is over
+ *  gets "result" and the winner ("red", "blue", or "empty" for a draw);
+ *  a malformed one gets "error" and a message.  Blank lines and lines
+ *  starting with '#' are skipped.
+ *
+ *  The positions are searched N at a time (default: one per processor),
+ *  each thread with its own single-threaded Engine, which keeps its
+ *  transposition table of MB megabytes (default DEFAULT_HASH) from one
+ *  position to the next.  The input is streamed and the results are
+ *  written in input order, so that only a few positions per thread are
+ *  held at once, however long the input.  With --cache, the engines
+ *  share the analysis cache in FILE (see AnalysisCache), so that
+ *  positions analyzed in earlier runs, and those near them, are answered
+ *  from it.
+ *  @author Zac Nelson
+ */
+public class Analyze {
+
+    /** Default search depth. */
+    static final int DEFAULT_DEPTH = 6;
+    /** Default transposition table size of each thread, in megabytes. */
+    static final int DEFAULT_HASH = 16;
+    /** Number of positions per thread that may be in progress or awaiting
+     *  output at once. */
+    static final int WINDOW_PER_THREAD = 8;
+
+    /** Analyze positions as described in the class comment, with
+     *  arguments ARGS0. */
+    public static void main(String[] args0) {
+        CommandArgs args =
+            new CommandArgs("--depth=(\\d+){0,1} --nodes=(\\d+){0,1}"
+                            + " --time=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --hash=(\\d+){0,1} --cache=(.+){0,1}"
+                            + " --=(.*){0,2}", args0);
+        if (!args.ok()) {
+            System.err.println("Usage: java ataxx.Analyze [ --depth=N ]"
+                               + " [ --nodes=N ] [ --time=MSEC ]"
+                               + " [ --threads=N ] [ --hash=MB ]"
+                               + " [ --cache=FILE ] [ INPUT [ OUTPUT ] ]");
+            System.exit(1);
+        }
+        long nodes = args.contains("--nodes") ? args.getLong("--nodes") : 0;
+        long time = args.contains("--time") ? args.getLong("--time") : 0;
+        int depth = args.contains("--depth") ? args.getInt("--depth")
+            : nodes > 0 || time > 0 ? Search.MAX_DEPTH : DEFAULT_DEPTH;
+        int threads = args.contains("--threads") ? args.getInt("--threads")
+            : Runtime.getRuntime().availableProcessors();
+        int hash = args.contains("--hash") ? args.getInt("--hash")
+            : DEFAULT_HASH;
+        Analyze analyze = new Analyze(depth, nodes, time, threads, hash);
+        List<String> files = args.get("--");
+        try {
+            if (args.contains("--cache")) {
+                analyze.setCache(new AnalysisCache(
+                    new File(args.getFirst("--cache")),
+                    AnalysisCache.DEFAULT_MEGABYTES, false));
+            }
+        } catch (IOException | GameException excp) {
+            System.err.printf("Could not open cache: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+        try (BufferedReader input = new BufferedReader(
+                 files.isEmpty() || files.get(0).equals("-")
+                 ? new InputStreamReader(System.in)
+                 : new FileReader(files.get(0)));
+             PrintWriter output = files.size() < 2
+                 ? new PrintWriter(System.out)
+                 : new PrintWriter(new FileWriter(files.get(1)))) {
+            analyze.run(input, output);
+            analyze.setCache(null);
+        } catch (IOException excp) {
+            System.err.printf("I/O error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** An analysis of each position to at most DEPTH plies, NODES
+     *  positions, and THINKTIME milliseconds (0 for no limit on nodes or
+     *  time), using THREADS threads with transposition tables of
+     *  HASHMEGABYTES megabytes each. */
+    Analyze(int depth, long nodes, long thinkTime, int threads,
+            int hashMegabytes) {
+        _depth = Math.max(1, Math.min(Search.MAX_DEPTH, depth));
+        _nodeLimit = nodes;
+        _thinkTime = thinkTime;
+        _threads = Math.max(1, threads);
+        _engines = ThreadLocal.withInitial(() -> {
+            Engine engine = new Engine(1, Math.max(1, hashMegabytes));
+            engine.setCache(_cache);
+            return engine;
+        });
+    }
+
+    /** Let my engines keep the results of their deeper searches in CACHE
+     *  (none if null), closing my previous cache, if any.  This applies
+     *  only to engines of threads that have not yet analyzed anything. */
+    void setCache(AnalysisCache cache) {
+        if (_cache != null) {
+            _cache.close();
+        }
+        _cache = cache;
+    }
+
+    /** Analyze the positions on the lines of INPUT, writing the results
+     *  to OUTPUT, as described in the class comment. */
+    void run(BufferedReader input, PrintWriter output) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, (r) -> {
+            Thread t = new Thread(r, "ataxx-analyze");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        int window = _threads * WINDOW_PER_THREAD;
+        try {
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                String fen = line.trim();
+                if (fen.isEmpty() || fen.startsWith("#")) {
+                    continue;
+                }
+                if (pending.size() >= window) {
+                    output.println(result(pending.poll()));
+                }
+                pending.add(pool.submit(() -> analyze(fen)));
+            }
+            while (!pending.isEmpty()) {
+                output.println(result(pending.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+            output.flush();
+        }
+    }
+
+    /** Return the result line for the position FEN, searching it with
+     *  the calling thread's Engine. */
+    String analyze(String fen) {
+        Board board;
+        try {
+            board = Board.fromFen(fen);
+        } catch (GameException excp) {
+            return String.format("%s error %s", fen, excp.getMessage());
+        }
+        if (board.getWinner() != null) {
+            return String.format("%s result %s", fen,
+                                 board.getWinner().toString().toLowerCase());
+        } else if (!board.canMove(board.whoseMove())) {
+            return String.format("%s bm - pv -", fen);
+        }
+        Engine engine = _engines.get();
+        Move move = engine.findMove(board, _thinkTime, _nodeLimit, _depth);
+        int score = engine.score();
+        if (board.whoseMove() == BLUE) {
+            score = -score;
+        }
+        StringBuilder pv = new StringBuilder();
+        for (Move m : engine.principalVariation()) {
+            pv.append(' ').append(m);
+        }
+        if (pv.length() == 0) {
+            pv.append(' ').append(move);
+        }
+        return String.format("%s bm %s score %s depth %d nodes %d pv%s",
+                             fen, move,
+                             score >= Search.WINNING_VALUE ? "win"
+                             : score <= -Search.WINNING_VALUE ? "loss"
+                             : Integer.toString(score),
+                             engine.depthReached(), engine.nodes(), pv);
+    }
+
+    /** Return the result of RESULT, waiting for it if need be. */
+    private static String result(Future<String> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("analysis failed", excp);
+        }
+    }
+
+    /** Greatest search depth. */
+    private final int _depth;
+    /** Greatest number of positions per search, or 0 for no limit. */
+    private final long _nodeLimit;
+    /** Greatest time per search in milliseconds, or 0 for no limit. */
+    private final long _thinkTime;
+    /** Number of positions searched at once. */
+    private final int _threads;
+    /** Each thread's Engine. */
+    private final ThreadLocal<Engine> _engines;
+    /** Analysis cache of my engines, or null. */
+    private AnalysisCache _cache;
+}
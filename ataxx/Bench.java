@@ -0,0 +1,397 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/** Benchmarks for the Ataxx engine.  Run as
+ *      java ataxx.Bench [ smp ] [ DEPTH [ MAXTHREADS ] ]
+ *  this measures the time the parallel search takes to reach depth DEPTH
+ *  (default 6) on a fixed set of positions with 1, 2, 4, ... up to
+ *  MAXTHREADS (default 16) threads, and reports the speedup over one
+ *  thread.  Run as
+ *      java ataxx.Bench ordering [ DEPTH ]
+ *  it reports the number of positions a single-threaded search visits
+ *  to complete each depth up to DEPTH, with and without move
+ *  ordering.  Run as
+ *      java ataxx.Bench dedup [ DEPTH ]
+ *  it reports the same with and without merging extends to the same
+ *  square, along with the numbers of moves at the positions.  Run as
+ *      java ataxx.Bench aspiration [ DEPTH ]
+ *  it reports the same with and without aspiration windows.  Run as
+ *      java ataxx.Bench pruning [ DEPTH ]
+ *  it reports the positions visited, time taken, and effective
+ *  branching factor of single-threaded searches to depth DEPTH with
+ *  neither, either, and both of late-move reductions and futility
+ *  pruning.  Run as
+ *      java ataxx.Bench endgame [ EMPTIES ]
+ *  it reports how many of a set of positions with EMPTIES (default 3)
+ *  empty squares the endgame solver solves within ENDGAME_MILLIS
+ *  milliseconds, and the positions it visits and time it takes, when
+ *  finding wins, losses, and draws and when finding exact margins.
+ *  Run as
+ *      java ataxx.Bench mcts [ MILLIS ]
+ *  it reports the throughput of single-threaded Monte Carlo tree
+ *  searches of MILLIS (default MCTS_MILLIS) milliseconds per benchmark
+ *  position, in playouts per second, beside that of minimax searches of
+ *  the same length, in positions per second.  Run as
+ *      java ataxx.Bench alloc [ DEPTH ]
+ *  it reports the bytes of heap storage a single-threaded search to
+ *  depth DEPTH allocates per position visited, which should be near
+ *  zero.
+ *  @author Zac Nelson
+ */
+public class Bench {
+
+    /** Default search depth. */
+    static final int DEFAULT_DEPTH = 6;
+    /** Default maximum number of threads. */
+    static final int DEFAULT_MAX_THREADS = 16;
+    /** Transposition table size, in megabytes, used for benchmarks. */
+    static final int HASH_MEGABYTES = 64;
+    /** Numbers of random plies played from the initial position to get
+     *  the benchmark positions. */
+    private static final int[] OPENING_PLIES = { 0, 8, 16, 24, 32 };
+    /** Seed for the random plies. */
+    private static final long POSITION_SEED = 61;
+    /** Number of endgame benchmark positions. */
+    static final int ENDGAME_POSITIONS = 10;
+    /** Time limit, in milliseconds, for each endgame solution.  The
+     *  solver gets half of it. */
+    static final long ENDGAME_MILLIS = 4000;
+    /** Default time limit, in milliseconds, for each search in the
+     *  Monte Carlo benchmark. */
+    static final int MCTS_MILLIS = 2000;
+    /** Seed for the playouts of the Monte Carlo benchmark. */
+    private static final long PLAYOUT_SEED = 1;
+
+    /** Run the benchmark as described in the class comment, with
+     *  arguments ARGS. */
+    public static void main(String[] args) {
+        String mode = "smp";
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            mode = args[0];
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int depth = args.length > 0 ? Integer.parseInt(args[0])
+            : DEFAULT_DEPTH;
+        switch (mode) {
+        case "smp":
+            smp(depth, args.length > 1 ? Integer.parseInt(args[1])
+                : DEFAULT_MAX_THREADS);
+            break;
+        case "ordering":
+            ordering(depth);
+            break;
+        case "aspiration":
+            compareNodes(positions(), depth, "full", "aspiration",
+                         (engine, on) -> engine.setAspiration(on));
+            break;
+        case "pruning":
+            pruning(depth);
+            break;
+        case "endgame":
+            endgame(args.length > 0 ? depth : Endgame.DEFAULT_EMPTIES);
+            break;
+        case "mcts":
+            mcts(args.length > 0 ? depth : MCTS_MILLIS);
+            break;
+        case "dedup":
+            dedup(depth);
+            break;
+        case "alloc":
+            alloc(depth);
+            break;
+        default:
+            System.err.printf("Unknown benchmark: %s%n", mode);
+            System.exit(1);
+        }
+    }
+
+    /** Report the time to reach depth DEPTH with from 1 to MAXTHREADS
+     *  threads. */
+    static void smp(int depth, int maxThreads) {
+        List<Board> positions = positions();
+
+        timeToDepth(positions, depth - 1, 1);
+        System.out.printf("Time to depth %d on %d positions "
+                          + "(%d processors)%n", depth, positions.size(),
+                          Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %10s %12s %8s%n",
+                          "threads", "msec", "nodes", "speedup");
+        long base = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long[] result = timeToDepth(positions, depth, threads);
+            if (threads == 1) {
+                base = result[0];
+            }
+            System.out.printf("%8d %10d %12d %8.2f%n", threads, result[0],
+                              result[1],
+                              (double) base / Math.max(1, result[0]));
+        }
+    }
+
+    /** Report the positions visited to complete each depth up to DEPTH,
+     *  summed over the benchmark positions, with and without move
+     *  ordering. */
+    static void ordering(int depth) {
+        List<Board> positions = positions();
+        compareNodes(positions, depth, "unordered", "ordered",
+                     (engine, on) -> engine.setMoveOrdering(on));
+    }
+
+    /** Report the number of moves at the benchmark positions, and the
+     *  positions visited to complete each depth up to DEPTH, with and
+     *  without merging extends to the same square. */
+    static void dedup(int depth) {
+        List<Board> positions = positions();
+        int[] moves = new int[Board.MAX_MOVES];
+        long all, distinct;
+        all = distinct = 0;
+        for (Board board : positions) {
+            all += board.generateAllMoves(moves);
+            distinct += board.generateMoves(moves);
+        }
+        System.out.printf("Moves at %d positions: %d, %d after merging "
+                          + "extends%n", positions.size(), all, distinct);
+        compareNodes(positions, depth, "all", "merged",
+                     (engine, on) -> engine.setCloneDedup(on));
+    }
+
+    /** Report the positions visited to complete each depth up to DEPTH,
+     *  summed over POSITIONS, by single-threaded engines configured by
+     *  SETUP with false (labeled LABEL0) and true (labeled LABEL1). */
+    static void compareNodes(List<Board> positions, int depth,
+                             String label0, String label1,
+                             BiConsumer<Engine, Boolean> setup) {
+        long[][] nodes = new long[2][depth + 1];
+        for (int k = 0; k < 2; k += 1) {
+            for (Board board : positions) {
+                Engine engine = new Engine(1, HASH_MEGABYTES);
+                setup.accept(engine, k == 1);
+                engine.findMove(board, 0, 0, depth);
+                for (int d = 1; d <= depth; d += 1) {
+                    nodes[k][d] += engine.nodesByDepth(d);
+                }
+            }
+        }
+        System.out.printf("Nodes to complete each depth on %d positions%n",
+                          positions.size());
+        System.out.printf("%6s %14s %14s %8s%n",
+                          "depth", label0, label1, "ratio");
+        for (int d = 1; d <= depth; d += 1) {
+            System.out.printf("%6d %14d %14d %8.2f%n", d, nodes[0][d],
+                              nodes[1][d], (double) nodes[0][d]
+                              / Math.max(1, nodes[1][d]));
+        }
+    }
+
+    /** Report the positions visited to complete depth DEPTH, summed over
+     *  the benchmark positions, the time taken, and the mean effective
+     *  branching factor of the last iteration, with each combination of
+     *  late-move reductions and futility pruning.  A first round of
+     *  searches warms up the JIT compiler. */
+    static void pruning(int depth) {
+        List<Board> positions = positions();
+        String[] labels = { "none", "lmr", "futility", "both" };
+        System.out.printf("Search to depth %d on %d positions%n", depth,
+                          positions.size());
+        System.out.printf("%10s %14s %10s %8s%n",
+                          "pruning", "nodes", "msec", "ebf");
+        for (int round = 0; round < 2; round += 1) {
+            for (int k = 0; k < labels.length; k += 1) {
+                long nodes, msec;
+                nodes = msec = 0;
+                double ebf = 0;
+                for (Board board : positions) {
+                    Engine engine = new Engine(1, HASH_MEGABYTES);
+                    engine.setLateMoveReductions((k & 1) != 0);
+                    engine.setFutilityPruning((k & 2) != 0);
+                    engine.findMove(board, 0, 0, depth);
+                    nodes += engine.nodesByDepth(depth);
+                    msec += engine.elapsed();
+                    ebf += engine.branchingFactor() / positions.size();
+                }
+                if (round == 1) {
+                    System.out.printf("%10s %14d %10d %8.2f%n", labels[k],
+                                      nodes, msec, ebf);
+                }
+            }
+        }
+    }
+
+    /** Report how many of the endgame benchmark positions with EMPTIES
+     *  empty squares single-threaded engines solve, and the positions
+     *  visited and time taken, solving for wins, losses, and draws and for
+     *  exact margins. */
+    static void endgame(int empties) {
+        List<Board> positions = endgamePositions(empties);
+        System.out.printf("Solving %d positions with %d empty squares%n",
+                          positions.size(), empties);
+        System.out.printf("%8s %8s %14s %10s%n",
+                          "solve", "solved", "nodes", "msec");
+        for (int k = 0; k < 2; k += 1) {
+            int solved = 0;
+            long nodes, msec;
+            nodes = msec = 0;
+            for (Board board : positions) {
+                Engine engine = new Engine(1, HASH_MEGABYTES);
+                engine.setEndgameEmpties(empties);
+                engine.setEndgameExact(k == 1);
+                engine.findMove(board, ENDGAME_MILLIS, 0, Search.MAX_DEPTH);
+                solved += engine.solved() ? 1 : 0;
+                nodes += engine.nodes();
+                msec += engine.elapsed();
+            }
+            System.out.printf("%8s %8d %14d %10d%n", k == 0 ? "wld" : "exact",
+                              solved, nodes, msec);
+        }
+    }
+
+    /** Report the playouts per second of single-threaded Monte Carlo
+     *  searches of MILLIS milliseconds on each benchmark position, and
+     *  the positions per second of minimax searches of the same length.
+     *  A first round of searches warms up the JIT compiler. */
+    static void mcts(long millis) {
+        List<Board> positions = positions();
+        long playouts, mctsMsec, nodes, engineMsec;
+        playouts = mctsMsec = nodes = engineMsec = 0;
+        for (int round = 0; round < 2; round += 1) {
+            playouts = mctsMsec = nodes = engineMsec = 0;
+            for (Board board : positions) {
+                MonteCarlo mcts =
+                    new MonteCarlo(1, HASH_MEGABYTES, PLAYOUT_SEED);
+                mcts.findMove(board, millis, 0);
+                playouts += mcts.playouts();
+                mctsMsec += mcts.elapsed();
+                Engine engine = new Engine(1, HASH_MEGABYTES);
+                engine.findMove(board, millis, 0, Search.MAX_DEPTH);
+                nodes += engine.nodes();
+                engineMsec += engine.elapsed();
+            }
+        }
+        System.out.printf("Searches of %d msec on %d positions%n", millis,
+                          positions.size());
+        System.out.printf("%8s %14s %10s %14s%n",
+                          "search", "count", "msec", "per second");
+        System.out.printf("%8s %14d %10d %14d%n", "mcts", playouts,
+                          mctsMsec, playouts * 1000 / Math.max(1, mctsMsec));
+        System.out.printf("%8s %14d %10d %14d%n", "minimax", nodes,
+                          engineMsec, nodes * 1000 / Math.max(1, engineMsec));
+    }
+
+    /** Return ENDGAME_POSITIONS positions with EMPTIES empty squares in
+     *  which the player to move can move, reached by random play that
+     *  extends whenever it can.  Board.generateMoves lists extends
+     *  first. */
+    static List<Board> endgamePositions(int empties) {
+        Random random = new Random(POSITION_SEED);
+        List<Board> result = new ArrayList<>();
+        int[] moves = new int[Board.MAX_MOVES];
+        while (result.size() < ENDGAME_POSITIONS) {
+            Board board = new Board();
+            while (board.getWinner() == null
+                   && Long.bitCount(board.emptySquares()) > empties) {
+                int n = board.generateMoves(moves);
+                int extends0 = 0;
+                while (extends0 < n && isExtend(moves[extends0])) {
+                    extends0 += 1;
+                }
+                if (n == 0) {
+                    board.pass();
+                } else {
+                    board.makeMove(moves[random.nextInt(extends0 > 0
+                                                        ? extends0 : n)]);
+                }
+            }
+            if (board.getWinner() == null
+                && board.canMove(board.whoseMove())) {
+                result.add(board);
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff the move with code MOVE is an extend. */
+    private static boolean isExtend(int move) {
+        int from = move >>> Move.CODE_SHIFT, to = move & Move.CODE_MASK;
+        return (Board.neighbors(from) & (1L << to)) != 0;
+    }
+
+    /** Report the bytes allocated per position visited by single-threaded
+     *  searches to depth DEPTH of each benchmark position.  A first round
+     *  of searches warms up the JIT compiler, which then eliminates
+     *  allocations of short-lived objects it can prove do not escape. */
+    static void alloc(int depth) {
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        List<Board> positions = positions();
+        long bytes, nodes;
+        bytes = nodes = 0;
+        for (int round = 0; round < 2; round += 1) {
+            bytes = nodes = 0;
+            for (Board board : positions) {
+                Engine engine = new Engine(1, HASH_MEGABYTES);
+                long before = bean.getCurrentThreadAllocatedBytes();
+                engine.findMove(board, 0, 0, depth);
+                bytes += bean.getCurrentThreadAllocatedBytes() - before;
+                nodes += engine.nodes();
+            }
+        }
+        System.out.printf("Allocation at depth %d on %d positions%n",
+                          depth, positions.size());
+        System.out.printf("%14s %14s %10s%n", "bytes", "nodes", "bytes/node");
+        System.out.printf("%14d %14d %10.3f%n", bytes, nodes,
+                          (double) bytes / Math.max(1, nodes));
+    }
+
+    /** Return the benchmark positions: the positions reached by playing
+     *  the numbers of random legal moves in OPENING_PLIES from the
+     *  initial position.  The same positions result on every call. */
+    static List<Board> positions() {
+        Random random = new Random(POSITION_SEED);
+        List<Board> result = new ArrayList<>();
+        for (int plies : OPENING_PLIES) {
+            Board board = new Board();
+            for (int k = 0; k < plies && board.getWinner() == null; k += 1) {
+                List<Move> moves = Search.legalMoves(board);
+                if (moves.isEmpty()) {
+                    board.pass();
+                } else {
+                    board.makeMove(moves.get(random.nextInt(moves.size())));
+                }
+            }
+            if (board.getWinner() == null
+                && board.canMove(board.whoseMove())) {
+                result.add(new Board(board));
+            }
+        }
+        return result;
+    }
+
+    /** Search each of POSITIONS to depth DEPTH with THREADS threads, each
+     *  with a fresh engine, and return the total time in milliseconds
+     *  and the total number of positions searched. */
+    static long[] timeToDepth(List<Board> positions, int depth,
+                              int threads) {
+        long time, nodes;
+        time = nodes = 0;
+        for (Board board : positions) {
+            Engine engine = new Engine(threads, HASH_MEGABYTES);
+            long start = System.nanoTime();
+            engine.findMove(board, 0, 0, depth);
+            time += System.nanoTime() - start;
+            nodes += engine.nodes();
+        }
+        return new long[] { time / 1_000_000, nodes };
+    }
+
+}
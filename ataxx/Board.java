@@ -6,8 +6,8 @@ package ataxx;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.ArrayList;
-import java.util.Stack;
 import java.util.Formatter;
 
 import java.util.function.Consumer;
@@ -33,6 +33,16 @@ import static ataxx.GameException.error;
  *  integer, which we call its "linearized index".  This is simply the
  *  number of the square in row-major order (counting from 0).
  *
+ *  Internally, the contents of the board are kept as bitboards: one
+ *  64-bit word each for the red pieces, the blue pieces, and the blocks,
+ *  with one bit for each of the 49 real squares.  The bit for square
+ *  C R is bit (R - '1') * SIDE + (C - 'a'), which we call its "bit
+ *  index".  The border squares have no bits; they are always reported
+ *  as BLOCKED.  For each bit index, NEIGHBORS and JUMP_RING hold masks
+ *  of the squares one and exactly two steps away, so that captures,
+ *  mobility tests, and move generation come down to a few mask
+ *  operations.
+ *
  *  Moves on this board are denoted by Moves.
  *  @author Zac Nelson
  */
@@ -54,25 +64,39 @@ class Board {
     /** Number of board spots. */
     static final int BOARD_SPOTS = 121;
 
-    /** A new, cleared board in the initial configuration. */
-    Board() {
-        _board = new PieceColor[EXTENDED_SIDE * EXTENDED_SIDE];
-        _totalOpen = DEFAULT_OPEN;
-        _undoSquares = new Stack<>();
-        _undoPieces = new Stack<>();
-        if (redPieces() > 0) {
-            while (redPieces() != 0) {
-                incrPieces(RED, -1);
-            }
-        }
-        if (bluePieces() > 0) {
-            while (bluePieces() != 0) {
-                incrPieces(BLUE, -1);
-            }
-        }
+    /** Number of real (non-border) squares, and so of bit indices. */
+    static final int NUM_SQUARES = SIDE * SIDE;
+
+    /** An upper bound on the number of legal moves in any position:
+     *  a move for each square and each of the 24 squares within two
+     *  rows and columns of it. */
+    static final int MAX_MOVES = NUM_SQUARES * 24;
+
+    /** Masks of the squares in columns a and g. */
+    private static final long FIRST_COLUMN = 0x40810204081L,
+        LAST_COLUMN = FIRST_COLUMN << (SIDE - 1);
+
+    /** Initial capacity of the undo log, in moves and in changes. */
+    private static final int UNDO_CAPACITY = 64;
+
+    /** Characters denoting red and blue pieces (and players) and blocks
+     *  in the notation of toFen. */
+    static final char FEN_RED = 'r', FEN_BLUE = 'b', FEN_BLOCK = 'x';
 
+    /** Value in the undo log meaning that there was no winner. */
+    private static final int NO_WINNER = -1;
 
+    /** The PieceColors, indexed by ordinal. */
+    private static final PieceColor[] COLORS = PieceColor.values();
 
+    /** The Symmetries, in order of declaration. */
+    private static final Symmetry[] SYMMETRIES = Symmetry.values();
+
+    /** Bitboard containing all real squares. */
+    static final long ALL_SQUARES = (1L << NUM_SQUARES) - 1;
+
+    /** A new, cleared board in the initial configuration. */
+    Board() {
         setNotifier(NOP);
         clear();
     }
@@ -80,17 +104,48 @@ class Board {
     /** A board whose initial contents are copied from BOARD0, but whose
      *  undo history is clear, and whose notifier does nothing. */
     Board(Board board0) {
-        _board = board0._board.clone();
-        _undoSquares = new Stack<>();
-        _undoPieces = new Stack<>();
-        _numPieces = board0._numPieces.clone();
+        _red = board0._red;
+        _blue = board0._blue;
+        _blocked = board0._blocked;
+        _key = board0._key;
+        _redReach = board0._redReach;
+        _blueReach = board0._blueReach;
         _totalOpen = board0._totalOpen;
         _numJumps = board0.numJumps();
         _whoseMove = board0.whoseMove();
+        _winner = board0._winner;
         _allMoves = new ArrayList<>();
+        if (board0._imageKeys != null) {
+            _imageKeys = board0._imageKeys.clone();
+        }
         setNotifier(NOP);
     }
 
+    /** Make my contents those of BOARD0, as for the copy constructor, but
+     *  without allocating anything: my undo history is cleared, though
+     *  its storage is kept for reuse.  My notifier, and whether I track
+     *  symmetries, are unchanged. */
+    void copyFrom(Board board0) {
+        _red = board0._red;
+        _blue = board0._blue;
+        _blocked = board0._blocked;
+        _key = board0._key;
+        _redReach = board0._redReach;
+        _blueReach = board0._blueReach;
+        _totalOpen = board0._totalOpen;
+        _numJumps = board0.numJumps();
+        _whoseMove = board0.whoseMove();
+        _winner = board0._winner;
+        _allMoves.clear();
+        _undoSize = _numUndoMoves = 0;
+        if (_imageKeys != null && board0._imageKeys != null) {
+            System.arraycopy(board0._imageKeys, 0, _imageKeys, 0,
+                             _imageKeys.length);
+        } else if (_imageKeys != null) {
+            computeImageKeys();
+        }
+    }
+
     /** Return the linearized index of square COL ROW. */
     static int index(char col, char row) {
         return (row - '1' + 2) * EXTENDED_SIDE + (col - 'a' + 2);
@@ -102,22 +157,46 @@ class Board {
         return sq + dc + dr * EXTENDED_SIDE;
     }
 
+    /** Return the bit index of the square with linearized index SQ, or -1
+     *  if SQ is in the border. */
+    static int bitIndex(int sq) {
+        return BIT_INDEX[sq];
+    }
+
+    /** Return the linearized index of the square with bit index BIT. */
+    static int squareIndex(int bit) {
+        return SQUARE_INDEX[bit];
+    }
+
+    /** Return the mask of real squares adjacent to the square with bit
+     *  index BIT: the destinations of extending moves from it. */
+    static long neighbors(int bit) {
+        return NEIGHBORS[bit];
+    }
+
+    /** Return the mask of real squares exactly two rows or columns away
+     *  from the square with bit index BIT: the destinations of jumps
+     *  from it. */
+    static long jumpRing(int bit) {
+        return JUMP_RING[bit];
+    }
+
     /** Clear me to my starting state, with pieces in their initial
      *  positions and no blocks. */
     void clear() {
         _whoseMove = RED;
-        for (int i = 0; i < BOARD_SPOTS; i++) {
-            unrecordedSet(i, BLOCKED);
-        }
-        for (char col = 'a';  col < (char) ('g' + 1); col++) {
-            for (char row = '1'; row < (char) ('7' + 1); row++) {
-                unrecordedSet(col, row, EMPTY);
-            }
+        _red = _blue = _blocked = 0;
+        _key = 0;
+        if (_imageKeys != null) {
+            Arrays.fill(_imageKeys, 0);
         }
+        _totalOpen = DEFAULT_OPEN;
+        _undoSize = _numUndoMoves = 0;
         unrecordedSet('g', '1', RED);
         unrecordedSet('a', '1', BLUE);
         unrecordedSet('g', '7', BLUE);
         unrecordedSet('a', '7', RED);
+        updateReach();
 
         _numJumps = 0;
         _allMoves = new ArrayList<Move>();
@@ -148,24 +227,152 @@ class Board {
 
     /** Return number of COLOR pieces on the board. */
     int numPieces(PieceColor color) {
-        return _numPieces[color.ordinal()];
+        return Long.bitCount(pieces(color));
     }
 
-    /** Increment numPieces(COLOR) by K. */
-    private void incrPieces(PieceColor color, int k) {
-        _numPieces[color.ordinal()] += k;
+    /** Return the bitboard of squares whose contents are COLOR: the
+     *  pieces of that color for RED or BLUE, and the empty or blocked
+     *  real squares for EMPTY or BLOCKED. */
+    long pieces(PieceColor color) {
+        switch (color) {
+        case RED:
+            return _red;
+        case BLUE:
+            return _blue;
+        case BLOCKED:
+            return _blocked;
+        default:
+            return emptySquares();
+        }
+    }
+
+    /** Return the Zobrist hash of this position: the exclusive or of a
+     *  fixed random key for each piece and block on the board and for
+     *  blue's being on move.  It is kept up to date as squares change,
+     *  and is the same from run to run. */
+    long key() {
+        return _key;
+    }
+
+    /** Return the Zobrist hash (see key()) of the image of this position
+     *  under SYM.  This takes constant time if I track symmetries (see
+     *  setSymmetryTracking), and otherwise time proportional to the
+     *  number of pieces and blocks. */
+    long key(Symmetry sym) {
+        if (sym == Symmetry.IDENTITY) {
+            return _key;
+        }
+        long key = _whoseMove == BLUE ? BLUE_TO_MOVE : 0;
+        if (_imageKeys != null) {
+            return key ^ _imageKeys[sym.ordinal()];
+        }
+        long[] bits = { _red, _blue, _blocked };
+        for (int kind = RED_KEYS; kind <= BLOCK_KEYS; kind += 1) {
+            for (long b = bits[kind]; b != 0; b &= b - 1) {
+                key ^= ZOBRIST[kind][sym.bit(Long.numberOfTrailingZeros(b))];
+            }
+        }
+        return key;
+    }
+
+    /** Return the symmetry that maps this position to its canonical form:
+     *  the image with the least key (the first such symmetry, in order of
+     *  declaration, if several images have that key).  Symmetric
+     *  positions have the same canonical form. */
+    Symmetry canonicalSymmetry() {
+        Symmetry result = Symmetry.IDENTITY;
+        long least = _key;
+        for (Symmetry sym : SYMMETRIES) {
+            long key = key(sym);
+            if (key < least) {
+                least = key;
+                result = sym;
+            }
+        }
+        return result;
+    }
+
+    /** Return the key of the canonical form of this position (see
+     *  canonicalSymmetry): the least key of its images. */
+    long canonicalKey() {
+        return key(canonicalSymmetry());
+    }
+
+    /** Return true iff I keep the keys of the images of my position under
+     *  all the Symmetries up to date as squares change. */
+    boolean tracksSymmetries() {
+        return _imageKeys != null;
+    }
+
+    /** Keep the keys of the images of my position under all the
+     *  Symmetries up to date as squares change iff ON, so that key(Symmetry)
+     *  and canonicalSymmetry take constant time, at the cost of slowing
+     *  every change.  Copies of me made by the copy constructor do the
+     *  same. */
+    void setSymmetryTracking(boolean on) {
+        if (!on) {
+            _imageKeys = null;
+        } else if (_imageKeys == null) {
+            _imageKeys = new long[SYMMETRIES.length];
+            computeImageKeys();
+        }
+    }
+
+    /** Set _imageKeys, which must not be null, from scratch. */
+    private void computeImageKeys() {
+        Arrays.fill(_imageKeys, 0);
+        long[] bits = { _red, _blue, _blocked };
+        for (int kind = RED_KEYS; kind <= BLOCK_KEYS; kind += 1) {
+            for (long b = bits[kind]; b != 0; b &= b - 1) {
+                long[] images =
+                    IMAGE_KEYS[kind][Long.numberOfTrailingZeros(b)];
+                for (int s = 0; s < images.length; s += 1) {
+                    _imageKeys[s] ^= images[s];
+                }
+            }
+        }
+    }
+
+    /** Exclusive-or into my keys the keys of a square with bit index BIT
+     *  whose contents are described by KIND (a row of IMAGE_KEYS). */
+    private void toggle(int kind, int bit) {
+        long[] images = IMAGE_KEYS[kind][bit];
+        _key ^= images[0];
+        if (_imageKeys != null) {
+            for (int s = 1; s < images.length; s += 1) {
+                _imageKeys[s] ^= images[s];
+            }
+        }
+    }
+
+    /** Return the bitboard of empty squares. */
+    long emptySquares() {
+        return ALL_SQUARES & ~(_red | _blue | _blocked);
     }
 
     /** The current contents of square CR, where 'a'-2 <= C <= 'g'+2, and
      *  '1'-2 <= R <= '7'+2.  Squares outside the range a1-g7 are all
      *  BLOCKED.  Returns the same value as get(index(C, R)). */
     PieceColor get(char c, char r) {
-        return _board[index(c, r)];
+        return get(index(c, r));
     }
 
     /** Return the current contents of square with linearized index SQ. */
     PieceColor get(int sq) {
-        return _board[sq];
+        int bit = BIT_INDEX[sq];
+        if (bit < 0) {
+            return BLOCKED;
+        }
+        long mask = 1L << bit;
+        if ((_red & mask) != 0) {
+            return RED;
+        } else if ((_blue & mask) != 0) {
+            return BLUE;
+        } else if ((_blocked & mask) != 0) {
+            return BLOCKED;
+        } else {
+            return EMPTY;
+        }
     }
 
     /** Set get(C, R) to V, where 'a' <= C <= 'g', and
@@ -178,13 +385,7 @@ class Board {
      *  undoable. */
     private void set(int sq, PieceColor v) {
         addUndo(sq);
-        if (get(sq) == RED || get(sq) == BLUE) {
-            incrPieces(get(sq), -1);
-        }
-        _board[sq] = v;
-        if (get(sq) == RED || get(sq) == BLUE) {
-            incrPieces(get(sq), 1);
-        }
+        unrecordedSet(sq, v);
     }
 
     /** Set square at C R to V (not undoable). This is used for changing
@@ -196,12 +397,34 @@ class Board {
     /** Set square at linearized index SQ to V (not undoable). This is used
      * for changing contents of the board without updating the undo stacks. */
     private void unrecordedSet(int sq, PieceColor v) {
-        if (get(sq) == RED || get(sq) == BLUE) {
-            incrPieces(get(sq), -1);
+        int bit = BIT_INDEX[sq];
+        assert bit >= 0 : "attempt to change a border square";
+        long mask = 1L << bit;
+        if ((_red & mask) != 0) {
+            toggle(RED_KEYS, bit);
+        } else if ((_blue & mask) != 0) {
+            toggle(BLUE_KEYS, bit);
+        } else if ((_blocked & mask) != 0) {
+            toggle(BLOCK_KEYS, bit);
         }
-        _board[sq] = v;
-        if (get(sq) == RED || get(sq) == BLUE) {
-            incrPieces(get(sq), 1);
+        _red &= ~mask;
+        _blue &= ~mask;
+        _blocked &= ~mask;
+        switch (v) {
+        case RED:
+            _red |= mask;
+            toggle(RED_KEYS, bit);
+            break;
+        case BLUE:
+            _blue |= mask;
+            toggle(BLUE_KEYS, bit);
+            break;
+        case BLOCKED:
+            _blocked |= mask;
+            toggle(BLOCK_KEYS, bit);
+            break;
+        default:
+            break;
         }
     }
 
@@ -229,19 +452,97 @@ class Board {
     /** Return true iff player WHO can move, ignoring whether it is
      *  that player's move and whether the game is over. */
     boolean canMove(PieceColor who) {
-        for (int i = 0; i < BOARD_SPOTS; i++) {
-            if (get(i) == who) {
-                for (int c = -2; c < 3; c++) {
-                    for (int r = -2; r < 3; r++) {
-                        int side = neighbor(i, c, r);
-                        if (get(side) == EMPTY) {
-                            return true;
-                        }
-                    }
-                }
+        return (reach(who) & emptySquares()) != 0;
+    }
+
+    /** Return the number of empty squares to which player WHO could move
+     *  a piece, ignoring whether it is that player's move. */
+    int mobility(PieceColor who) {
+        return Long.bitCount(reach(who) & emptySquares());
+    }
+
+    /** Return the mask of squares within two rows and columns of a piece
+     *  of player WHO (RED or BLUE). */
+    private long reach(PieceColor who) {
+        return who == RED ? _redReach : _blueReach;
+    }
+
+    /** Recompute _redReach and _blueReach after the pieces change. */
+    private void updateReach() {
+        _redReach = reachOf(_red);
+        _blueReach = reachOf(_blue);
+    }
+
+    /** Return the mask of squares within two rows and columns of some
+     *  square in PIECES, computed by growing PIECES by one square in each
+     *  direction, twice. */
+    static long reachOf(long pieces) {
+        return grow(grow(pieces));
+    }
+
+    /** Return the squares of EMPTY that a player with pieces on PIECES
+     *  could fill by a sequence of extends alone. */
+    static long extendFill(long pieces, long empty) {
+        long filled = 0;
+        long next = grow(pieces) & empty;
+        while (next != filled) {
+            filled = next;
+            next = grow(filled | pieces) & empty;
+        }
+        return filled;
+    }
+
+    /** Return the mask of squares within one row and column of some square
+     *  in SQUARES. */
+    private static long grow(long squares) {
+        long rows = squares | ((squares << 1) & ~FIRST_COLUMN & ALL_SQUARES)
+            | ((squares >>> 1) & ~LAST_COLUMN);
+        return (rows | (rows << SIDE) | (rows >>> SIDE)) & ALL_SQUARES;
+    }
+
+    /** Store the codes (see Move.code()) of the legal moves other than
+     *  passes for the player to move in MOVES, which must have room for
+     *  MAX_MOVES of them, and return how many there are.  Since extending
+     *  to a given square has the same result whichever adjacent piece
+     *  extends, this generates only one extend to each square (from the
+     *  adjacent piece with the lowest bit index), along with all
+     *  jumps. */
+    int generateMoves(int[] moves) {
+        int n = 0;
+        long mine = pieces(_whoseMove);
+        long empty = emptySquares();
+        for (long to = grow(mine) & empty; to != 0; to &= to - 1) {
+            int t = Long.numberOfTrailingZeros(to);
+            moves[n] = (Long.numberOfTrailingZeros(NEIGHBORS[t] & mine)
+                        << Move.CODE_SHIFT) | t;
+            n += 1;
+        }
+        for (long from = mine; from != 0; from &= from - 1) {
+            int f = Long.numberOfTrailingZeros(from);
+            for (long to = JUMP_RING[f] & empty; to != 0; to &= to - 1) {
+                moves[n] = (f << Move.CODE_SHIFT)
+                    | Long.numberOfTrailingZeros(to);
+                n += 1;
             }
         }
-        return false;
+        return n;
+    }
+
+    /** Store the codes of all legal moves other than passes for the
+     *  player to move in MOVES, as for generateMoves, but including every
+     *  extend to each square, and return how many there are. */
+    int generateAllMoves(int[] moves) {
+        int n = 0;
+        long empty = emptySquares();
+        for (long from = pieces(_whoseMove); from != 0; from &= from - 1) {
+            int f = Long.numberOfTrailingZeros(from);
+            for (long to = REACH[f] & empty; to != 0; to &= to - 1) {
+                moves[n] = (f << Move.CODE_SHIFT)
+                    | Long.numberOfTrailingZeros(to);
+                n += 1;
+            }
+        }
+        return n;
     }
 
     /** Return the color of the player who has the next move.  The
@@ -291,27 +592,50 @@ class Board {
         }
         if (move.isPass()) {
             pass();
-            return;
+        } else {
+            doMove(move);
         }
+    }
+
+    /** Make the move whose code (see Move.code()) is CODE.  Unlike the
+     *  other makeMove methods, this does not check that the move is
+     *  legal: it is meant for searches, which generate only legal
+     *  moves. */
+    void makeMove(int code) {
+        if (code == Move.PASS_CODE) {
+            pass();
+        } else {
+            assert legalMove(Move.fromCode(code));
+            doMove(Move.fromCode(code));
+        }
+    }
+
+    /** Make MOVE, a legal move other than a pass. */
+    private void doMove(Move move) {
         _allMoves.add(move);
         startUndo();
         PieceColor opponent = _whoseMove.opposite();
 
-
         set(move.toIndex(), whoseMove());
-
         if (move.isJump()) {
             set(move.fromIndex(), EMPTY);
+        }
 
+        long captured = NEIGHBORS[BIT_INDEX[move.toIndex()]]
+            & pieces(opponent);
+        for (long c = captured; c != 0; c &= c - 1) {
+            int bit = Long.numberOfTrailingZeros(c);
+            addUndo(SQUARE_INDEX[bit]);
+            toggle(CAPTURE_KEYS, bit);
         }
-        for (int c = -1; c < 2; c++) {
-            for (int r = -1; r < 2; r++) {
-                int side = neighbor(index(move.col1(), move.row1()), c, r);
-                if (get(side) == opponent) {
-                    set(side, whoseMove());
-                }
-            }
+        if (_whoseMove == RED) {
+            _red |= captured;
+            _blue &= ~captured;
+        } else {
+            _blue |= captured;
+            _red &= ~captured;
         }
+        updateReach();
 
         if (move.isJump()) {
             _numJumps++;
@@ -319,6 +643,53 @@ class Board {
             _numJumps = 0;
         }
 
+        checkWinner();
+        _whoseMove = opponent;
+        _key ^= BLUE_TO_MOVE;
+        announce();
+    }
+
+    /** Make the move whose code (see Move.code()) is CODE, which must be
+     *  legal, as for makeMove(int), but without recording it in the undo
+     *  log or the list of moves, or notifying anyone, so that it allocates
+     *  nothing.  This is meant for random playouts, which make many moves
+     *  on a scratch board and never undo them. */
+    void playMove(int code) {
+        if (code != Move.PASS_CODE) {
+            int from = code >>> Move.CODE_SHIFT, to = code & Move.CODE_MASK;
+            boolean red = _whoseMove == RED;
+            int mine = red ? RED_KEYS : BLUE_KEYS;
+            long captured = NEIGHBORS[to] & (red ? _blue : _red);
+            long vacated = 0;
+            if ((NEIGHBORS[from] & (1L << to)) == 0) {
+                vacated = 1L << from;
+                toggle(mine, from);
+                _numJumps += 1;
+            } else {
+                _numJumps = 0;
+            }
+            toggle(mine, to);
+            for (long c = captured; c != 0; c &= c - 1) {
+                int bit = Long.numberOfTrailingZeros(c);
+                toggle(CAPTURE_KEYS, bit);
+            }
+            long gained = captured | (1L << to);
+            if (red) {
+                _red = (_red | gained) & ~vacated;
+                _blue &= ~captured;
+            } else {
+                _blue = (_blue | gained) & ~vacated;
+                _red &= ~captured;
+            }
+            updateReach();
+            checkWinner();
+        }
+        _whoseMove = _whoseMove.opposite();
+        _key ^= BLUE_TO_MOVE;
+    }
+
+    /** Set the winner, if the last move ended the game. */
+    private void checkWinner() {
         if (numPieces(RED) == 0) {
             _winner = BLUE;
         } else if (numPieces(BLUE) == 0) {
@@ -333,9 +704,6 @@ class Board {
                 _winner = EMPTY;
             }
         }
-
-        _whoseMove = opponent;
-        announce();
     }
 
     /** Update to indicate that the current player passes, assuming it
@@ -345,40 +713,55 @@ class Board {
         _allMoves.add(Move.pass());
         startUndo();
         _whoseMove = _whoseMove.opposite();
+        _key ^= BLUE_TO_MOVE;
         announce();
     }
 
     /** Undo the last move. */
     void undo() {
-        while (_undoSquares.peek() != null && !_undoPieces.empty()) {
-            int sq = _undoSquares.pop();
-            PieceColor color = _undoPieces.pop();
-            unrecordedSet(sq, color);
-        }
-        _undoSquares.pop();
-
-        int lastMoveInd = _allMoves.size() - 1;
-        if (_allMoves.get(lastMoveInd).isJump()) {
-            _numJumps--;
+        _numUndoMoves -= 1;
+        int start = _undoMoveStarts[_numUndoMoves];
+        while (_undoSize > start) {
+            _undoSize -= 1;
+            unrecordedSet(_undoSquares[_undoSize],
+                          COLORS[_undoContents[_undoSize]]);
         }
+        updateReach();
+        _numJumps = _undoJumps[_numUndoMoves];
+        int winner = _undoWinners[_numUndoMoves];
+        _winner = winner == NO_WINNER ? null : COLORS[winner];
 
         _whoseMove = _whoseMove.opposite();
+        _key ^= BLUE_TO_MOVE;
         _allMoves.remove(_allMoves.size() - 1);
-        _winner = null;
         announce();
     }
 
-    /** Indicate beginning of a move in the undo stack. See the
-     * _undoSquares and _undoPieces instance variable comments for
-     * details on how the beginning of moves are marked. */
+    /** Indicate the beginning of a move in the undo log, recording the
+     *  jump count and winner to restore when it is undone. */
     private void startUndo() {
-        _undoSquares.push(null);
+        if (_numUndoMoves == _undoMoveStarts.length) {
+            int n = 2 * _numUndoMoves;
+            _undoMoveStarts = Arrays.copyOf(_undoMoveStarts, n);
+            _undoJumps = Arrays.copyOf(_undoJumps, n);
+            _undoWinners = Arrays.copyOf(_undoWinners, n);
+        }
+        _undoMoveStarts[_numUndoMoves] = _undoSize;
+        _undoJumps[_numUndoMoves] = _numJumps;
+        _undoWinners[_numUndoMoves] =
+            _winner == null ? NO_WINNER : _winner.ordinal();
+        _numUndoMoves += 1;
     }
 
     /** Add an undo action for changing SQ on current board. */
     private void addUndo(int sq) {
-        _undoSquares.push(sq);
-        _undoPieces.push(get(sq));
+        if (_undoSize == _undoSquares.length) {
+            _undoSquares = Arrays.copyOf(_undoSquares, 2 * _undoSize);
+            _undoContents = Arrays.copyOf(_undoContents, 2 * _undoSize);
+        }
+        _undoSquares[_undoSize] = sq;
+        _undoContents[_undoSize] = get(sq).ordinal();
+        _undoSize += 1;
     }
 
     /** Return true iff it is legal to place a block at C R. */
@@ -467,12 +850,14 @@ class Board {
             return false;
         }
         Board other = (Board) obj;
-        return Arrays.equals(_board, other._board);
+        return _red == other._red && _blue == other._blue
+            && _blocked == other._blocked;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(_board);
+        return Long.hashCode((_red * HASH_MULT + _blue) * HASH_MULT
+                             + _blocked);
     }
 
     /** Return a text depiction of the board.  If LEGEND, supply row and
@@ -507,6 +892,96 @@ class Board {
         return out.toString();
     }
 
+    /** Return my position in compact notation: the rows from 7 down to
+     *  1, separated by '/', each giving its squares from a to g as 'r'
+     *  for red, 'b' for blue, 'x' for a block, and a digit for a run of
+     *  that many empty squares; then, separated by spaces, 'r' or 'b' for
+     *  the player to move and the number of consecutive jumps.  The
+     *  initial position is "r5b/7/7/7/7/7/b5r r 0".  See fromFen. */
+    String toFen() {
+        StringBuilder out = new StringBuilder();
+        for (char r = '7'; r >= '1'; r -= 1) {
+            int empty = 0;
+            for (char c = 'a'; c <= 'g'; c += 1) {
+                PieceColor v = get(c, r);
+                if (v == EMPTY) {
+                    empty += 1;
+                    continue;
+                }
+                if (empty > 0) {
+                    out.append(empty);
+                    empty = 0;
+                }
+                out.append(v == RED ? FEN_RED : v == BLUE ? FEN_BLUE
+                           : FEN_BLOCK);
+            }
+            if (empty > 0) {
+                out.append(empty);
+            }
+            if (r > '1') {
+                out.append('/');
+            }
+        }
+        out.append(' ').append(_whoseMove == RED ? FEN_RED : FEN_BLUE);
+        out.append(' ').append(_numJumps);
+        return out.toString();
+    }
+
+    /** Return a new board with the position FEN, in the notation of
+     *  toFen, with no undo history.  Blocks need not be symmetric.  The
+     *  winner is set if the position is over.  Throws GameException if
+     *  FEN is malformed. */
+    static Board fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        String[] rows = fields[0].split("/", -1);
+        if (fields.length != 3 || rows.length != SIDE) {
+            throw error("malformed position: %s", fen);
+        }
+        Board board = new Board();
+        board._red = board._blue = board._blocked = 0;
+        board._key = 0;
+        for (int k = 0; k < SIDE; k += 1) {
+            char r = (char) ('7' - k);
+            char c = 'a';
+            for (char ch : rows[k].toCharArray()) {
+                if (ch >= '1' && ch <= '7') {
+                    c += ch - '0';
+                    continue;
+                } else if (c > 'g') {
+                    throw error("wrong row length in position: %s", fen);
+                }
+                PieceColor v = ch == FEN_RED ? RED : ch == FEN_BLUE ? BLUE
+                    : ch == FEN_BLOCK ? BLOCKED : null;
+                if (v == null) {
+                    throw error("bad square in position: %s", fen);
+                }
+                board.unrecordedSet(c, r, v);
+                c += 1;
+            }
+            if (c != 'g' + 1) {
+                throw error("wrong row length in position: %s", fen);
+            }
+        }
+        if (fields[1].equals(String.valueOf(FEN_BLUE))) {
+            board._whoseMove = BLUE;
+            board._key ^= BLUE_TO_MOVE;
+        } else if (!fields[1].equals(String.valueOf(FEN_RED))) {
+            throw error("bad player to move in position: %s", fen);
+        }
+        try {
+            board._numJumps = Integer.parseInt(fields[2]);
+        } catch (NumberFormatException excp) {
+            board._numJumps = -1;
+        }
+        if (board._numJumps < 0 || board._numJumps > JUMP_LIMIT) {
+            throw error("bad jump count in position: %s", fen);
+        }
+        board._totalOpen = DEFAULT_OPEN - Long.bitCount(board._blocked);
+        board.updateReach();
+        board.checkWinner();
+        return board;
+    }
+
     /** Set my notifier to NOTIFY. */
     public void setNotifier(Consumer<Board> notify) {
         _notifier = notify;
@@ -524,21 +999,121 @@ class Board {
     /** Use _notifier.accept(this) to announce changes to this board. */
     private Consumer<Board> _notifier;
 
-    /** For reasons of efficiency in copying the board,
-     *  we use a 1D array to represent it, using the usual access
-     *  algorithm: row r, column c => index(r, c).
-     *
-     *  Next, instead of using a 7x7 board, we use an 11x11 board in
-     *  which the outer two rows and columns are blocks, and
-     *  row 2, column 2 actually represents row 0, column 0
-     *  of the real board.  As a result of this trick, there is no
-     *  need to special-case being near the edge: we don't move
-     *  off the edge because it looks blocked.
-     *
-     *  Using characters as indices, it follows that if 'a' <= c <= 'g'
-     *  and '1' <= r <= '7', then row r, column c of the board corresponds
-     *  to _board[(c -'a' + 2) + 11 (r - '1' + 2) ]. */
-    private final PieceColor[] _board;
+    /** Multiplier used to mix the words of a board in hashCode. */
+    private static final long HASH_MULT = 0x9E3779B97F4A7C15L;
+
+    /** Maps linearized indices on the 11x11 extended board to bit
+     *  indices, with -1 for the squares of the border.  Callers see the
+     *  extended board, on which row r, column c corresponds to
+     *  linearized index (c - 'a' + 2) + 11 (r - '1' + 2), so that there
+     *  is no need to special-case being near the edge: we don't move off
+     *  the edge because it looks blocked. */
+    private static final int[] BIT_INDEX = new int[BOARD_SPOTS];
+
+    /** Maps bit indices to linearized indices. */
+    private static final int[] SQUARE_INDEX = new int[NUM_SQUARES];
+
+    /** For each bit index, the mask of the (up to 8) adjacent squares. */
+    private static final long[] NEIGHBORS = new long[NUM_SQUARES];
+
+    /** For each bit index, the mask of the (up to 16) squares exactly two
+     *  rows or columns away. */
+    private static final long[] JUMP_RING = new long[NUM_SQUARES];
+
+    /** For each bit index, NEIGHBORS | JUMP_RING: every square a piece
+     *  there could move to. */
+    private static final long[] REACH = new long[NUM_SQUARES];
+
+    static {
+        Arrays.fill(BIT_INDEX, -1);
+        for (int r = 0; r < SIDE; r += 1) {
+            for (int c = 0; c < SIDE; c += 1) {
+                int bit = r * SIDE + c;
+                int sq = index((char) ('a' + c), (char) ('1' + r));
+                BIT_INDEX[sq] = bit;
+                SQUARE_INDEX[bit] = sq;
+            }
+        }
+        for (int bit = 0; bit < NUM_SQUARES; bit += 1) {
+            int sq = SQUARE_INDEX[bit];
+            for (int dc = -2; dc <= 2; dc += 1) {
+                for (int dr = -2; dr <= 2; dr += 1) {
+                    int other = BIT_INDEX[neighbor(sq, dc, dr)];
+                    if (other < 0 || (dc == 0 && dr == 0)) {
+                        continue;
+                    }
+                    if (Math.abs(dc) <= 1 && Math.abs(dr) <= 1) {
+                        NEIGHBORS[bit] |= 1L << other;
+                    } else {
+                        JUMP_RING[bit] |= 1L << other;
+                    }
+                }
+            }
+            REACH[bit] = NEIGHBORS[bit] | JUMP_RING[bit];
+        }
+    }
+
+    /** Rows of ZOBRIST holding the keys of red pieces, blue pieces, and
+     *  blocks. */
+    private static final int RED_KEYS = 0, BLUE_KEYS = 1, BLOCK_KEYS = 2;
+
+    /** Seed for the Zobrist keys.  Fixed, so that keys (and anything
+     *  saved under them) agree between runs. */
+    private static final long ZOBRIST_SEED = 0x61B5A7AC5L;
+
+    /** Zobrist keys for each kind of square contents (indexed by
+     *  RED_KEYS, BLUE_KEYS, BLOCK_KEYS) and bit index. */
+    private static final long[][] ZOBRIST = new long[3][NUM_SQUARES];
+
+    /** Zobrist key included when blue is to move. */
+    private static final long BLUE_TO_MOVE;
+
+    /** Row of IMAGE_KEYS for a piece changing color. */
+    private static final int CAPTURE_KEYS = 3;
+
+    /** The Zobrist keys of the images of each kind of square contents
+     *  (indexed by RED_KEYS, BLUE_KEYS, BLOCK_KEYS, or CAPTURE_KEYS, for
+     *  the exclusive or of the red and blue keys) and bit index, under
+     *  each Symmetry (indexed by ordinal; IDENTITY is first). */
+    private static final long[][][] IMAGE_KEYS =
+        new long[4][NUM_SQUARES][Symmetry.values().length];
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (long[] row : ZOBRIST) {
+            for (int bit = 0; bit < NUM_SQUARES; bit += 1) {
+                row[bit] = keys.nextLong();
+            }
+        }
+        BLUE_TO_MOVE = keys.nextLong();
+        for (int kind = RED_KEYS; kind <= BLOCK_KEYS; kind += 1) {
+            for (int bit = 0; bit < NUM_SQUARES; bit += 1) {
+                for (Symmetry sym : SYMMETRIES) {
+                    IMAGE_KEYS[kind][bit][sym.ordinal()] =
+                        ZOBRIST[kind][sym.bit(bit)];
+                    IMAGE_KEYS[CAPTURE_KEYS][bit][sym.ordinal()] ^=
+                        kind == BLOCK_KEYS ? 0 : ZOBRIST[kind][sym.bit(bit)];
+                }
+            }
+        }
+    }
+
+    /** Bitboards of the red pieces, blue pieces, and blocks, indexed by
+     *  bit index.  These three sets are disjoint; a real square in none
+     *  of them is empty. */
+    private long _red, _blue, _blocked;
+
+    /** Squares within two rows and columns of a red piece and of a blue
+     *  piece, kept up to date as pieces change.  See canMove. */
+    private long _redReach, _blueReach;
+
+    /** Zobrist hash of the current position.  See key(). */
+    private long _key;
+
+    /** If I track symmetries, the keys of the images of the current
+     *  position under the Symmetries, indexed by ordinal, less the key
+     *  for blue's being on move; otherwise null. */
+    private long[] _imageKeys;
 
     /** Player that is next to move. */
     private PieceColor _whoseMove;
@@ -550,10 +1125,6 @@ class Board {
     /** Total number of unblocked squares. */
     private int _totalOpen;
 
-    /** Number of blue and red pieces, indexed by the ordinal positions of
-     *  enumerals BLUE and RED. */
-    private int[] _numPieces = new int[BLUE.ordinal() + 1];
-
     /** Set to winner when game ends (EMPTY if tie).  Otherwise is null. */
     private PieceColor _winner;
 
@@ -561,15 +1132,29 @@ class Board {
      *  the game. */
     private ArrayList<Move> _allMoves;
 
-    /* The undo stack. We keep a stack of squares that have changed and
-     * their previous contents.  Any given move may involve several such
-     * changes, so we mark the start of the changes for each move (including
-     * passes) with a null. */
-
-    /** Stack of linearized indices of squares that have been modified and
-     *  not undone. Nulls mark the beginnings of full moves. */
-    private Stack<Integer> _undoSquares;
-    /** Stack of pieces formally at corresponding squares in _UNDOSQUARES. */
-    private Stack<PieceColor> _undoPieces;
+    /* The undo log.  We keep a stack of squares that have changed and
+     * their previous contents (as PieceColor ordinals).  Any given move
+     * may involve several such changes, so for each move (including
+     * passes) we record where its changes start, along with the jump
+     * count and winner before it.  The stacks are arrays that grow as
+     * needed, so that making and undoing moves allocates nothing once
+     * they are large enough. */
+
+    /** Linearized indices of squares that have been modified and not
+     *  undone, in _undoSquares[0 .. _undoSize-1]. */
+    private int[] _undoSquares = new int[UNDO_CAPACITY];
+    /** Ordinals of the pieces formerly at the corresponding squares in
+     *  _undoSquares. */
+    private int[] _undoContents = new int[UNDO_CAPACITY];
+    /** Number of entries in _undoSquares and _undoContents. */
+    private int _undoSize;
+    /** For each of the _numUndoMoves moves that have not been undone, the
+     *  index in _undoSquares of its first change, the jump count before
+     *  it, and the ordinal of the winner before it (NO_WINNER if none). */
+    private int[] _undoMoveStarts = new int[UNDO_CAPACITY],
+        _undoJumps = new int[UNDO_CAPACITY],
+        _undoWinners = new int[UNDO_CAPACITY];
+    /** Number of moves recorded in the undo log. */
+    private int _numUndoMoves;
 
 }
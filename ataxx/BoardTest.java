@@ -6,6 +6,10 @@ package ataxx;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
 import static ataxx.PieceColor.*;
 import static org.junit.Assert.*;
 
@@ -335,6 +339,319 @@ public class BoardTest {
         assertEquals("wrong bluePieces", 12, b.bluePieces());
     }
 
+    @Test
+    public void testMasks() {
+        int corner = Board.bitIndex(Board.index('a', '1'));
+        int center = Board.bitIndex(Board.index('d', '4'));
+        assertEquals("border has no bit", -1,
+                Board.bitIndex(Board.index((char) ('a' - 1), '1')));
+        assertEquals("wrong round trip", Board.index('d', '4'),
+                Board.squareIndex(center));
+        assertEquals("corner neighbors", 3,
+                Long.bitCount(Board.neighbors(corner)));
+        assertEquals("corner jump ring", 5,
+                Long.bitCount(Board.jumpRing(corner)));
+        assertEquals("center neighbors", 8,
+                Long.bitCount(Board.neighbors(center)));
+        assertEquals("center jump ring", 16,
+                Long.bitCount(Board.jumpRing(center)));
+
+        Board b = new Board();
+        assertEquals("wrong empty count", 45,
+                Long.bitCount(b.emptySquares()));
+        b.setBlock('c', '3');
+        assertEquals("wrong number of blocks", 4,
+                Long.bitCount(b.pieces(BLOCKED)));
+        assertEquals("wrong empty count after blocks", 41,
+                Long.bitCount(b.emptySquares()));
+
+        for (int bit = 0; bit < Board.NUM_SQUARES; bit += 1) {
+            assertEquals("wrong reach", Board.neighbors(bit)
+                    | Board.jumpRing(bit) | (1L << bit),
+                    Board.reachOf(1L << bit));
+        }
+    }
+
+    @Test
+    public void testMobility() {
+        Board b0 = new Board();
+        assertEquals("wrong initial mobility", 16, b0.mobility(RED));
+        makeMoves(b0, GAME1);
+        Board b1 = new Board(b0);
+        for (PieceColor who : new PieceColor[] { RED, BLUE }) {
+            int count = 0;
+            for (char c = 'a'; c <= 'g'; c += 1) {
+                for (char r = '1'; r <= '7'; r += 1) {
+                    if (b0.get(c, r) != EMPTY) {
+                        continue;
+                    }
+                    for (int dc = -2; dc <= 2; dc += 1) {
+                        for (int dr = -2; dr <= 2; dr += 1) {
+                            if (b0.get((char) (c + dc), (char) (r + dr))
+                                == who) {
+                                count += 1;
+                                dc = dr = 2;
+                            }
+                        }
+                    }
+                }
+            }
+            assertEquals("wrong mobility", count, b0.mobility(who));
+            assertEquals("copy has wrong mobility", count, b1.mobility(who));
+        }
+        b0.undo();
+        b0.undo();
+        assertTrue("undo lost mobility", b0.canMove(RED));
+    }
+
+    @Test
+    public void testKey() {
+        Board b0 = new Board();
+        long start = b0.key();
+        makeMoves(b0, GAME1);
+        assertNotEquals("moves did not change key", start, b0.key());
+        assertEquals("copy has different key", b0.key(),
+                new Board(b0).key());
+        for (int i = 0; i < GAME1.length; i += 1) {
+            b0.undo();
+        }
+        assertEquals("undo did not restore key", start, b0.key());
+
+        Board b1 = new Board();
+        makeMoves(b1, new String[] { "a7-a6", "a1-a2", "g1-g2", "g7-g6" });
+        Board b2 = new Board();
+        makeMoves(b2, new String[] { "g1-g2", "g7-g6", "a7-a6", "a1-a2" });
+        assertEquals("transposed positions differ", b1.key(), b2.key());
+        b2.clear();
+        assertEquals("cleared board has wrong key", start, b2.key());
+    }
+
+    @Test
+    public void testUndoJumps() {
+        Board b0 = new Board();
+        makeMoves(b0, new String[] { "a7-a5", "a1-a3", "g1-g3" });
+        assertEquals("wrong jump count", 3, b0.numJumps());
+        b0.makeMove(Move.move('g', '7', 'g', '6'));
+        assertEquals("extend did not reset jump count", 0, b0.numJumps());
+        b0.undo();
+        assertEquals("undo did not restore jump count", 3, b0.numJumps());
+        b0.undo();
+        assertEquals("undo did not restore jump count", 2, b0.numJumps());
+    }
+
+    @Test
+    public void testGenerateMoves() {
+        Board b0 = new Board();
+        makeMoves(b0, GAME1);
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = b0.generateAllMoves(moves);
+        assertEquals("wrong number of moves", Search.legalMoves(b0).size(),
+                n);
+        HashSet<Long> keys = new HashSet<>();
+        for (int i = 0; i < n; i += 1) {
+            Move mv = Move.fromCode(moves[i]);
+            assertEquals("code does not round-trip", moves[i], mv.code());
+            assertTrue("illegal move generated", b0.legalMove(mv));
+            Board b1 = new Board(b0);
+            b0.makeMove(mv);
+            b1.makeMove(moves[i]);
+            assertEquals("move codes make different moves", b0, b1);
+            keys.add(b0.key());
+            b0.undo();
+        }
+
+        n = b0.generateMoves(moves);
+        assertEquals("wrong number of distinct moves", keys.size(), n);
+        for (int i = 0; i < n; i += 1) {
+            b0.makeMove(moves[i]);
+            assertTrue("duplicate or missing move", keys.remove(b0.key()));
+            b0.undo();
+        }
+    }
+
+    @Test
+    public void testExtendFill() {
+        long all = (1L << Board.NUM_SQUARES) - 1;
+        long wall = 0, left = 0;
+        for (char r = '1'; r <= '7'; r += 1) {
+            wall |= 1L << Board.bitIndex(Board.index('c', r));
+            left |= 1L << Board.bitIndex(Board.index('a', r))
+                | 1L << Board.bitIndex(Board.index('b', r));
+        }
+        long a1 = 1L << Board.bitIndex(Board.index('a', '1'));
+        assertEquals("fill crosses a wall", left & ~a1,
+                Board.extendFill(a1, all & ~wall & ~a1));
+        assertEquals("fill misses squares", all & ~a1,
+                Board.extendFill(a1, all & ~a1));
+        assertEquals("fill with nothing empty", 0, Board.extendFill(a1, 0));
+    }
+
+    @Test
+    public void testFen() {
+        Board b0 = new Board();
+        assertEquals("wrong initial position", "r5b/7/7/7/7/7/b5r r 0",
+                b0.toFen());
+        b0.setBlock("c2");
+        makeMoves(b0, GAME1);
+        for (int k = 0; k <= GAME1.length; k += 1) {
+            Board b1 = Board.fromFen(b0.toFen());
+            assertEquals("position differs", b0, b1);
+            assertEquals("key differs", b0.key(), b1.key());
+            assertEquals("player differs", b0.whoseMove(), b1.whoseMove());
+            assertEquals("jumps differ", b0.numJumps(), b1.numJumps());
+            assertEquals("winner differs", b0.getWinner(), b1.getWinner());
+            assertEquals("notation differs", b0.toFen(), b1.toFen());
+            if (k < GAME1.length) {
+                b0.undo();
+            }
+        }
+        for (String bad : new String[] { "r5b/7/7/7/7/7 r 0",
+                                         "r6b/7/7/7/7/7/b5r r 0",
+                                         "r5b/7/7/7/7/7/b5r g 0",
+                                         "r5b/7/7/7/7/7/b5r r 26",
+                                         "r5q/7/7/7/7/7/b5r r 0",
+                                         "r5b/7/7/7/7/7/b5r r" }) {
+            try {
+                Board.fromFen(bad);
+                fail("accepted " + bad);
+            } catch (GameException excp) {
+                /* Expected. */
+            }
+        }
+        assertEquals("finished position has no winner", BLUE,
+                Board.fromFen("b6/7/7/7/7/7/7 r 0").getWinner());
+    }
+
+    @Test
+    public void testPlayMove() {
+        Board b0 = new Board();
+        Board b1 = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        int ply = 0;
+        while (b0.getWinner() == null) {
+            int n = b0.generateMoves(moves);
+            int m = n == 0 ? Move.PASS_CODE : moves[(7 * ply) % n];
+            b0.makeMove(m);
+            b1.playMove(m);
+            assertEquals("boards differ", b0, b1);
+            assertEquals("keys differ", b0.key(), b1.key());
+            assertEquals("jumps differ", b0.numJumps(), b1.numJumps());
+            assertEquals("winners differ", b0.getWinner(), b1.getWinner());
+            if (ply % 10 == 0) {
+                b1.copyFrom(b0);
+                assertEquals("copy differs", b0, b1);
+                assertEquals("copied key differs", b0.key(), b1.key());
+            }
+            ply += 1;
+        }
+    }
+
+    /** Return the image of the position on BOARD under SYM. */
+    private static Board image(Board board, Symmetry sym) {
+        Symmetry inverse = sym.inverse();
+        StringBuilder fen = new StringBuilder();
+        for (int r = Board.SIDE - 1; r >= 0; r -= 1) {
+            int empties = 0;
+            for (int c = 0; c < Board.SIDE; c += 1) {
+                int bit = inverse.bit(r * Board.SIDE + c);
+                PieceColor piece = board.get(Board.squareIndex(bit));
+                if (piece == EMPTY) {
+                    empties += 1;
+                    continue;
+                } else if (empties > 0) {
+                    fen.append(empties);
+                    empties = 0;
+                }
+                fen.append(piece == RED ? Board.FEN_RED
+                           : piece == BLUE ? Board.FEN_BLUE
+                           : Board.FEN_BLOCK);
+            }
+            if (empties > 0) {
+                fen.append(empties);
+            }
+            fen.append(r > 0 ? "/" : "");
+        }
+        fen.append(board.whoseMove() == RED ? " r " : " b ")
+            .append(board.numJumps());
+        return Board.fromFen(fen.toString());
+    }
+
+    @Test
+    public void testSymmetry() {
+        Board b0 = new Board();
+        b0.setBlock("c2");
+        makeMoves(b0, GAME1);
+        for (Symmetry sym : Symmetry.values()) {
+            for (int bit = 0; bit < Board.NUM_SQUARES; bit += 1) {
+                assertEquals("inverse fails", bit,
+                             sym.inverse().bit(sym.bit(bit)));
+            }
+            Board b1 = image(b0, sym);
+            assertEquals("wrong image key", b0.key(sym), b1.key());
+            assertEquals("wrong red pieces", sym.apply(b0.pieces(RED)),
+                         b1.pieces(RED));
+            assertEquals("canonical keys differ",
+                         b0.key(b0.canonicalSymmetry()),
+                         b1.key(b1.canonicalSymmetry()));
+            Board b3 = new Board();
+            b3.setSymmetryTracking(true);
+            b3.setBlock("c2");
+            makeMoves(b3, GAME1);
+            assertEquals("tracked key differs", b0.key(sym), b3.key(sym));
+            b3.undo();
+            b0.undo();
+            assertEquals("tracked key differs after undo", b0.key(sym),
+                         b3.key(sym));
+            makeMoves(b0, new String[] { GAME1[GAME1.length - 1] });
+            if (new Board().key(sym) == new Board().key()) {
+                Board b2 = new Board();
+                for (Move move : b0.allMoves()) {
+                    Move image = sym.apply(move);
+                    assertTrue("image illegal", b2.legalMove(image));
+                    b2.makeMove(image);
+                }
+                assertEquals("images differ", b1.pieces(BLUE),
+                             b2.pieces(BLUE));
+            }
+        }
+    }
+
+    @Test
+    public void testPerft() {
+        Board b0 = new Board();
+        long[] expected = { 1, 16, 256, 6460, 155888 };
+        for (int depth = 0; depth < expected.length; depth += 1) {
+            assertEquals("wrong perft count", expected[depth],
+                    Perft.count(b0, depth));
+        }
+        assertEquals("board changed", new Board(), b0);
+
+        makeMoves(b0, GAME1);
+        Perft split = new Perft(b0, 3, 2);
+        assertEquals("wrong parallel count", Perft.count(b0, 3),
+                split.nodes());
+        long sum = 0;
+        for (long count : split.counts()) {
+            sum += count;
+        }
+        assertEquals("divide does not add up", split.nodes(), sum);
+
+        Perft leaf = new Perft(b0, 0, 2);
+        assertEquals("wrong count at depth 0", 1, leaf.nodes());
+        assertEquals("moves and counts differ", leaf.counts().length,
+                     leaf.moves().size());
+        List<String> lines = new ArrayList<>();
+        leaf.report(true, lines::add);
+        assertEquals("wrong divide report", leaf.moves().size() + 1,
+                     lines.size());
+        try {
+            new Perft(b0, Perft.MAX_DEPTH + 1, 1);
+            fail("accepted excessive depth");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+    }
+
     private static final String[] GAME1 = {
         "a7-b7", "a1-a2",
         "a7-a6", "a2-a3",
@@ -12,7 +12,7 @@ import java.awt.BasicStroke;
 
 import java.awt.event.MouseEvent;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import static ataxx.PieceColor.*;
 import static ataxx.Utils.*;
@@ -51,7 +51,7 @@ class BoardWidget extends Pad  {
 
     /** A new widget sending commands resulting from mouse clicks
      *  to COMMANDQUEUE. */
-    BoardWidget(ArrayBlockingQueue<String> commandQueue) {
+    BoardWidget(BlockingQueue<String> commandQueue) {
         _commandQueue = commandQueue;
         setMouseHandler("click", this::handleClick);
         _dim = SQDIM * SIDE;
@@ -130,7 +130,7 @@ class BoardWidget extends Pad  {
     private int _dim;
 
     /** Model being displayed. */
-    private static Board _model;
+    private Board _model = new Board();
 
     /** Coordinates of currently selected square, or '\0' if no selection. */
     private char _selectedCol, _selectedRow;
@@ -139,5 +139,5 @@ class BoardWidget extends Pad  {
     private boolean _blockMode;
 
     /** Destination for commands derived from mouse clicks. */
-    private ArrayBlockingQueue<String> _commandQueue;
+    private BlockingQueue<String> _commandQueue;
 }
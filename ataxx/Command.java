@@ -18,7 +18,8 @@ class Command {
     /** A list of all commands. */
     private static final String[] COMMAND_NAMES = {
         "auto", "block", "board", "dump", "help", "manual",
-        "new", "q", "quiet", "quit", "seed", "undo", "verbose",
+        "new", "perft", "q", "quiet", "quit", "seed", "stop", "undo",
+        "verbose",
     };
 
     /** Command types.  PIECEMOVE indicates a move of the form
@@ -31,13 +32,14 @@ class Command {
         BLOCK("block\\s+([a-g][1-7])"),
         MANUAL("manual\\s+(red|blue)"),
         SEED("seed\\s+(\\d+)"),
+        PERFT("perft\\s+(\\d+)(?:\\s+(divide))?"),
         START,
         /* Regular moves. */
         PIECEMOVE("(-|[a-g][1-7]-[a-g][1-7])"),
         QUIT("q|quit"),
         NEW, DUMP, HELP,
         /* Extra commands. */
-        BOARD, VERBOSE, QUIET, UNDO,
+        BOARD, VERBOSE, QUIET, UNDO, STOP,
         /* Special "commands" internally generated. */
         /** Syntax error in command. */
         ERROR(".*"),
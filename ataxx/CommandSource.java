@@ -14,4 +14,13 @@ interface CommandSource {
      *  prompts for input, use PROMPT, if not null, to do so. */
     String getCommand(String prompt);
 
+    /** Return a command string, as for getCommand, if one is available
+     *  without waiting, and otherwise null.  Commands a user enters while
+     *  an AI is thinking are available this way; commands read from
+     *  scripts are not, so that scripts behave the same however long a
+     *  search takes.  By default, returns null. */
+    default String pollCommand() {
+        return null;
+    }
+
 }
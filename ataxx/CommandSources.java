@@ -35,6 +35,11 @@ class CommandSources implements CommandSource {
         return null;
     }
 
+    @Override
+    public String pollCommand() {
+        return _inputs.isEmpty() ? null : _inputs.peek().pollCommand();
+    }
+
     /** Make SOURCE the latest input source from which subsequent input
      *  will be read. */
     void addSource(CommandSource source) {
@@ -50,6 +50,18 @@ public class CommandTest {
         checkError("seed 142 foo");
     }
 
+    @Test public void testPERFT() {
+        check("perft 4", PERFT, "4", null);
+        check("perft 4 divide", PERFT, "4", "divide");
+        checkError("perft");
+        checkError("perft 4 foo");
+    }
+
+    @Test public void testSTOP() {
+        check("stop", STOP);
+        checkError("stop foo");
+    }
+
     @Test public void testSTART() {
         check("start", START);
         checkError("start foo");
@@ -0,0 +1,161 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import static ataxx.GameException.error;
+
+/** One side of a Tournament: the settings of a search and the machinery
+ *  that makes its moves.  The settings are given as a comma-separated
+ *  list of NAME=VALUE pairs, any of which may be omitted:
+ *      time=MSEC     think time per move (default 0: no limit)
+ *      nodes=N       positions (or playouts) per move (default
+ *                    DEFAULT_NODES; 0 for no limit)
+ *      depth=N       greatest search depth (default Search.MAX_DEPTH)
+ *      hash=MB       transposition table or tree size (default
+ *                    DEFAULT_HASH)
+ *      lmr=0|1       late-move reductions (default 1)
+ *      futility=0|1  futility pruning (default 1)
+ *      endgame=N     empty squares at which to solve exactly (default
+ *                    Endgame.DEFAULT_EMPTIES)
+ *      mcts=0|1      Monte Carlo tree search instead of minimax
+ *                    (default 0)
+ *      sym=0|1       hashing of positions by their canonical forms
+ *                    (see Engine.symmetricHashing; default 0)
+ *  Each Contestant searches with one thread; a Tournament gets its
+ *  parallelism by playing several games at once, each with its own
+ *  Contestants.
+ *  @author Zac Nelson
+ */
+class Contestant {
+
+    /** Default limit on positions per move.  A node limit, unlike a time
+     *  limit, makes games independent of the load on the machine. */
+    static final long DEFAULT_NODES = 50000;
+    /** Default transposition table size in megabytes.  Kept small, since
+     *  a Tournament keeps two per game in progress. */
+    static final int DEFAULT_HASH = 4;
+    /** Seed for the playouts of a Monte Carlo search. */
+    private static final long PLAYOUT_SEED = 1;
+
+    /** A Contestant with the settings SPEC, as described in the class
+     *  comment.  Throws GameException on a malformed SPEC. */
+    Contestant(String spec) {
+        _spec = spec;
+        for (String setting : spec.split(",")) {
+            if (setting.isEmpty()) {
+                continue;
+            }
+            String[] parts = setting.split("=", 2);
+            if (parts.length != 2) {
+                throw error("malformed setting: %s", setting);
+            }
+            try {
+                set(parts[0], Long.parseLong(parts[1]));
+            } catch (NumberFormatException excp) {
+                throw error("bad value in setting: %s", setting);
+            }
+        }
+        if (_mcts) {
+            _monteCarlo = new MonteCarlo(1, _hash, PLAYOUT_SEED);
+            _engine = null;
+        } else {
+            _engine = new Engine(1, _hash);
+            _engine.setLateMoveReductions(_lateMoveReductions);
+            _engine.setFutilityPruning(_futilityPruning);
+            _engine.setEndgameEmpties(_endgameEmpties);
+            _engine.setSymmetricHashing(_symmetricHashing);
+            _monteCarlo = null;
+        }
+    }
+
+    /** Set the setting NAME to VALUE.  Throws GameException if there is
+     *  no such setting or VALUE is out of range. */
+    private void set(String name, long value) {
+        if (value < 0) {
+            throw error("negative value for %s", name);
+        }
+        switch (name) {
+        case "time":
+            _thinkTime = value;
+            break;
+        case "nodes":
+            _nodeLimit = value;
+            break;
+        case "depth":
+            _maxDepth = (int) Math.min(Math.max(1, value), Search.MAX_DEPTH);
+            break;
+        case "hash":
+            _hash = (int) Math.min(Math.max(1, value), Integer.MAX_VALUE);
+            break;
+        case "lmr":
+            _lateMoveReductions = value != 0;
+            break;
+        case "futility":
+            _futilityPruning = value != 0;
+            break;
+        case "endgame":
+            _endgameEmpties = (int) Math.min(value, Board.NUM_SQUARES);
+            break;
+        case "mcts":
+            _mcts = value != 0;
+            break;
+        case "sym":
+            _symmetricHashing = value != 0;
+            break;
+        default:
+            throw error("unknown setting: %s", name);
+        }
+    }
+
+    /** Forget what I learned in previous games. */
+    void newGame() {
+        if (_mcts) {
+            _monteCarlo.clear();
+        } else {
+            _engine.clear();
+        }
+    }
+
+    /** Return my move for the player to move in BOARD, which must have a
+     *  legal non-pass move.  BOARD is not modified. */
+    Move findMove(Board board) {
+        if (_mcts) {
+            return _monteCarlo.findMove(board, _thinkTime, _nodeLimit);
+        } else {
+            return _engine.findMove(board, _thinkTime, _nodeLimit,
+                                    _maxDepth);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return _spec.isEmpty() ? "default" : _spec;
+    }
+
+    /** My settings, as given to the constructor. */
+    private final String _spec;
+    /** Think time per move in milliseconds, or 0 for no limit. */
+    private long _thinkTime;
+    /** Positions or playouts per move, or 0 for no limit. */
+    private long _nodeLimit = DEFAULT_NODES;
+    /** Greatest search depth. */
+    private int _maxDepth = Search.MAX_DEPTH;
+    /** Size of my transposition table or tree in megabytes. */
+    private int _hash = DEFAULT_HASH;
+    /** True iff I make late-move reductions. */
+    private boolean _lateMoveReductions = true;
+    /** True iff I do futility pruning. */
+    private boolean _futilityPruning = true;
+    /** Number of empty squares at or below which I solve positions. */
+    private int _endgameEmpties = Endgame.DEFAULT_EMPTIES;
+    /** True iff I use Monte Carlo tree search. */
+    private boolean _mcts;
+    /** True iff I hash positions by their canonical forms. */
+    private boolean _symmetricHashing;
+    /** My minimax search, or null if I use Monte Carlo tree search. */
+    private final Engine _engine;
+    /** My Monte Carlo search, or null if I use minimax. */
+    private final MonteCarlo _monteCarlo;
+}
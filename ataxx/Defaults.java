@@ -12,4 +12,15 @@ class Defaults {
     /** Current version designator. */
     static final String VERSION = "Attax 3.0";
 
+    /** Default time, in milliseconds, that an AI may think about a
+     *  move. */
+    static final long THINK_TIME = 500;
+
+    /** Default limit on the number of positions an AI may search for one
+     *  move.  0 means no limit. */
+    static final long NODE_LIMIT = 0;
+
+    /** Default size of an AI's transposition table, in megabytes. */
+    static final int HASH_MEGABYTES = 16;
+
 }
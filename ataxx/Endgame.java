@@ -0,0 +1,273 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ataxx.PieceColor.*;
+import static ataxx.TranspositionTable.*;
+
+/** One thread's share of an Engine's exact endgame solution: an
+ *  alpha-beta search of its own copy of a position all the way to the
+ *  end of the game, whose value is the final difference in pieces.
+ *  Searched with the full window, it finds that difference exactly;
+ *  searched with the window -1 .. 1, it finds only whether the game is
+ *  won, lost, or drawn, which is usually much faster.
+ *
+ *  Solvers share a transposition table of their own, separate from
+ *  that of the heuristic search, whose scores are not comparable.
+ *  Since the end of the game depends on the number of consecutive
+ *  jumps, that number is folded into the keys of its entries.
+ *
+ *  Once one player can never move again and the other can fill every
+ *  empty square by extends alone, the rest of the game is not searched:
+ *  the empty squares all go to the player who can move.
+ *  @author Zac Nelson
+ */
+class Endgame {
+
+    /** Default greatest number of empty squares at which an Engine
+     *  solves a position exactly. */
+    static final int DEFAULT_EMPTIES = 3;
+    /** Size of the solvers' transposition table, in megabytes. */
+    static final int HASH_MEGABYTES = 8;
+    /** A magnitude greater than any final difference in pieces. */
+    static final int INFTY = Board.SIDE * Board.SIDE + 1;
+
+    /** Multiplier of the number of consecutive jumps folded into
+     *  transposition-table and analysis-cache keys. */
+    static final long JUMP_KEY = 0x9E3779B97F4A7C15L;
+    /** The two players. */
+    private static final PieceColor[] PLAYERS = { RED, BLUE };
+    /** Initial number of plies for which buffers are allocated. */
+    private static final int INITIAL_PLIES = 64;
+
+    /** A solver for ENGINE, using TABLE as its transposition table. */
+    Endgame(Engine engine, TranspositionTable table) {
+        _engine = engine;
+        _table = table;
+    }
+
+    /** Forget the statistics of any previous solution. */
+    void reset() {
+        _nodes = 0;
+        _aborted = false;
+    }
+
+    /** Return the number of positions I have visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return true iff my last solution was cut short by the Engine. */
+    boolean aborted() {
+        return _aborted;
+    }
+
+    /** Return the value of making move MOVE (a code) on BOARD for the
+     *  player who makes it, within the window ALPHA .. BETA, as for
+     *  solve.  BOARD is left unchanged. */
+    int solveMove(Board board, int move, int alpha, int beta) {
+        board.makeMove(move);
+        int score = -solve(board, 0, -beta, -alpha);
+        board.undo();
+        return score;
+    }
+
+    /** Return the final difference in pieces of BOARD, PLY plies from the
+     *  root, for the player to move, assuming best play by both sides,
+     *  within the window ALPHA .. BETA: the result is exact if it lies
+     *  strictly inside the window, and otherwise a bound on the value
+     *  that is at most ALPHA or at least BETA.  If the Engine stops the
+     *  search, sets _aborted and returns a meaningless value. */
+    int solve(Board board, int ply, int alpha, int beta) {
+        if (outOfBudget()) {
+            return 0;
+        }
+        if (board.getWinner() != null) {
+            return margin(board);
+        }
+        int settled = settledValue(board);
+        if (settled != -INFTY) {
+            return settled;
+        }
+
+        long key = key(board);
+        long entry = _table.probe(key);
+        if (entry != 0) {
+            int score = score(entry);
+            int bound = bound(entry);
+            if (bound == EXACT || (bound == LOWER && score >= beta)
+                || (bound == UPPER && score <= alpha)) {
+                return score;
+            }
+        }
+
+        int[] moves = moves(ply);
+        int numMoves = board.generateMoves(moves);
+        if (numMoves == 0) {
+            moves[0] = Move.PASS_CODE;
+            numMoves = 1;
+        } else {
+            orderMoves(board, moves, numMoves,
+                       entry != 0 ? move(entry) : 0, _ranks[ply]);
+        }
+
+        int alpha0 = alpha;
+        int best = 0;
+        int bestScore = -INFTY;
+        for (int i = 0; i < numMoves && alpha < beta; i += 1) {
+            int m = moves[i];
+            board.makeMove(m);
+            int score = -solve(board, ply + 1, -beta, -alpha);
+            board.undo();
+            if (_aborted) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = m;
+                alpha = Math.max(alpha, score);
+            }
+        }
+
+        int bound = bestScore <= alpha0 ? UPPER
+            : bestScore >= beta ? LOWER : EXACT;
+        _table.store(key, 0, bound, bestScore,
+                     best == Move.PASS_CODE ? 0 : best);
+        return bestScore;
+    }
+
+    /** Return the line of play from BOARD, which is left unchanged, that
+     *  begins with the move whose code is MOVE and continues with the best
+     *  moves recorded in my transposition table, up to the end of the
+     *  game, the first position with no entry, or Search.MAX_DEPTH
+     *  moves. */
+    List<Move> principalVariation(Board board, int move) {
+        board = new Board(board);
+        List<Move> result = new ArrayList<>();
+        for (int m = move; m != 0 && result.size() < Search.MAX_DEPTH; ) {
+            result.add(Move.fromCode(m));
+            board.makeMove(m);
+            if (board.getWinner() != null) {
+                break;
+            } else if (!board.canMove(board.whoseMove())) {
+                m = Move.PASS_CODE;
+            } else {
+                m = move(_table.probe(key(board)));
+                if (m != 0 && !board.legalMove(Move.fromCode(m))) {
+                    m = 0;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the key of BOARD in the solvers' transposition table. */
+    private static long key(Board board) {
+        return board.key() ^ (board.numJumps() * JUMP_KEY);
+    }
+
+    /** Return the difference in pieces of BOARD for the player to
+     *  move. */
+    static int margin(Board board) {
+        int margin = board.redPieces() - board.bluePieces();
+        return board.whoseMove() == RED ? margin : -margin;
+    }
+
+    /** Return the final difference in pieces of BOARD for the player to
+     *  move if one player can never move again and the other can fill
+     *  all the empty squares with extends, and otherwise -INFTY.  A
+     *  player who cannot move now has no empty square within two rows and
+     *  columns of any of its pieces, so the other player's extends never
+     *  capture any of them or empty any square.  Hence the first player
+     *  can never move again, and the second gets every square it can
+     *  reach by extends. */
+    static int settledValue(Board board) {
+        long empty = board.emptySquares();
+        for (PieceColor stuck : PLAYERS) {
+            PieceColor mover = stuck.opposite();
+            if (!board.canMove(stuck)
+                && Board.extendFill(board.pieces(mover), empty) == empty) {
+                int gain = Long.bitCount(empty);
+                int margin = margin(board);
+                return board.whoseMove() == mover ? margin + gain
+                    : margin - gain;
+            }
+        }
+        return -INFTY;
+    }
+
+    /** Return the buffer for the moves at ply PLY, allocating it and the
+     *  corresponding rank buffer if need be. */
+    private int[] moves(int ply) {
+        if (ply >= _moves.length) {
+            int plies = Math.max(ply + 1, 2 * _moves.length);
+            _moves = Arrays.copyOf(_moves, plies);
+            _ranks = Arrays.copyOf(_ranks, plies);
+        }
+        if (_moves[ply] == null) {
+            _moves[ply] = new int[Board.MAX_MOVES];
+            _ranks[ply] = new int[Board.MAX_MOVES];
+        }
+        return _moves[ply];
+    }
+
+    /** Sort the first N moves of MOVES on BOARD so that HINT (the code of
+     *  the best move from the transposition table, or 0) comes first,
+     *  followed by the others in decreasing order of the pieces they
+     *  gain, using RANKS for scratch. */
+    static void orderMoves(Board board, int[] moves, int n, int hint,
+                           int[] ranks) {
+        long opponents = board.pieces(board.whoseMove().opposite());
+        for (int i = 0; i < n; i += 1) {
+            int m = moves[i];
+            int from = m >>> Move.CODE_SHIFT, to = m & Move.CODE_MASK;
+            boolean extend = (Board.neighbors(from) & (1L << to)) != 0;
+            ranks[i] = m == hint ? INFTY
+                : 2 * Long.bitCount(Board.neighbors(to) & opponents)
+                + (extend ? 1 : 0);
+        }
+        for (int i = 1; i < n; i += 1) {
+            int rank = ranks[i];
+            int m = moves[i];
+            int j;
+            for (j = i; j > 0 && ranks[j - 1] < rank; j -= 1) {
+                ranks[j] = ranks[j - 1];
+                moves[j] = moves[j - 1];
+            }
+            ranks[j] = rank;
+            moves[j] = m;
+        }
+    }
+
+    /** Count one more visited position and return true iff the Engine
+     *  has stopped the solution, in which case _aborted is set.  The
+     *  Engine's limits are checked only every Search.CHECK_INTERVAL
+     *  positions. */
+    private boolean outOfBudget() {
+        _nodes += 1;
+        if (!_aborted && _nodes % Search.CHECK_INTERVAL == 0
+            && !_engine.continueSolving(Search.CHECK_INTERVAL)) {
+            _aborted = true;
+        }
+        return _aborted;
+    }
+
+    /** The Engine whose solution I am part of. */
+    private final Engine _engine;
+    /** The transposition table shared by all solvers of the Engine. */
+    private final TranspositionTable _table;
+    /** Move buffers, indexed by ply, allocated as needed. */
+    private int[][] _moves = new int[INITIAL_PLIES][];
+    /** Move-ordering ranks of the moves in _moves. */
+    private int[][] _ranks = new int[INITIAL_PLIES][];
+    /** Number of positions visited. */
+    private long _nodes;
+    /** True iff my current solution was cut short. */
+    private boolean _aborted;
+}
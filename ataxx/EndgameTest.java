@@ -0,0 +1,181 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static ataxx.PieceColor.*;
+
+/** Tests of exact endgame solutions (see Endgame and Engine), against
+ *  plain minimax over the whole game tree.
+ *  @author Zac Nelson
+ */
+public class EndgameTest {
+
+    /** Positions, in the notation of Board.toFen, that are decided by
+     *  Endgame.settledValue: one player can never move again.  Like all
+     *  the positions tested, they are mostly blocked, so that minimax
+     *  over their whole game trees is fast. */
+    private static final String[] SETTLED = {
+        "r1xxxxx/rxxxxxx/xxxxxxx/xxxxxxx/xxxxxxb/xxxxxbb/xxxxxxx b 0",
+        "r1xxxxx/rxxxxxx/xxxxxxx/xxxxxxx/xxxxxxb/xxxxxbb/xxxxxxx r 0",
+        "rr1xxxx/rxxxxxx/1xxxxxx/xxxxxxx/xxxxxxx/xxxxxbb/xxxxxbb b 3",
+        "xxxxxxx/xxxxxxx/rrxxxxx/xxxxxxx/xxxxxxx/xxxxx1b/xxxxbb1 r 24",
+    };
+
+    /** Positions at the jump limit, or whose player must pass. */
+    private static final String[] SPECIAL = {
+        "rb1xxxx/b1rxxxx/xxxxxxx/xxxxxxx/xxxxxxx/xxxxxxx/xxxxxxx r 24",
+        "rb1xxxx/b1rxxxx/xxxxxxx/xxxxxxx/xxxxxxx/xxxxxxx/xxxxxxx b 23",
+        "rbxxxxx/bbxxxxx/xxxxxxx/xxxx1bx/xxxxxxx/xxxxxxx/xxxxxxx r 10",
+    };
+
+    /** Return the final difference in pieces of BOARD for the player to
+     *  move with best play by both sides, by minimax over every line of
+     *  play, remembering the values of positions in MEMO. */
+    private static int minimax(Board board, HashMap<String, Integer> memo) {
+        if (board.getWinner() != null) {
+            int margin = board.redPieces() - board.bluePieces();
+            return board.whoseMove() == RED ? margin : -margin;
+        }
+        String fen = board.toFen();
+        Integer known = memo.get(fen);
+        if (known != null) {
+            return known;
+        }
+        List<Move> moves = Search.legalMoves(board);
+        if (moves.isEmpty()) {
+            moves.add(Move.pass());
+        }
+        int best = -Endgame.INFTY;
+        for (Move move : moves) {
+            board.makeMove(move);
+            best = Math.max(best, -minimax(board, memo));
+            board.undo();
+        }
+        memo.put(fen, best);
+        return best;
+    }
+
+    /** Return the SPECIAL positions and NUM_RANDOM random positions whose
+     *  games are not over, from a generator seeded with SEED.  All but a
+     *  WINDOW x WINDOW square of each random position is blocked; its
+     *  squares are red, blue, empty, or blocked at random, and its number
+     *  of consecutive jumps is random. */
+    private static List<Board> positions(long seed) {
+        Random random = new Random(seed);
+        List<Board> result = new ArrayList<>();
+        for (String fen : SPECIAL) {
+            result.add(Board.fromFen(fen));
+        }
+        String squares = "rbb-rr-bx";
+        while (result.size() < SPECIAL.length + NUM_RANDOM) {
+            int col0 = random.nextInt(Board.SIDE - WINDOW + 1),
+                row0 = random.nextInt(Board.SIDE - WINDOW + 1);
+            StringBuilder fen = new StringBuilder();
+            for (int r = 0; r < Board.SIDE; r += 1) {
+                for (int c = 0; c < Board.SIDE; c += 1) {
+                    char ch = 'x';
+                    if (r >= row0 && r < row0 + WINDOW && c >= col0
+                        && c < col0 + WINDOW) {
+                        ch = squares.charAt(random.nextInt(squares.length()));
+                    }
+                    fen.append(ch == '-' ? '1' : ch);
+                }
+                fen.append(r < Board.SIDE - 1 ? "/" : " ");
+            }
+            fen.append(random.nextBoolean() ? 'r' : 'b').append(' ')
+                .append(random.nextInt(Board.JUMP_LIMIT));
+            Board board = Board.fromFen(fen.toString());
+            if (board.getWinner() == null) {
+                result.add(board);
+            }
+        }
+        return result;
+    }
+
+    /** Check that an Engine solves each of POSITIONS, finding its exact
+     *  value iff EXACT and otherwise its sign, and choosing a move that
+     *  achieves it. */
+    private static void checkSolutions(List<Board> positions,
+                                       boolean exact) {
+        HashMap<String, Integer> memo = new HashMap<>();
+        Engine engine = new Engine(1, 1);
+        engine.setEndgameEmpties(Board.SIDE * Board.SIDE);
+        engine.setEndgameExact(exact);
+        for (Board board : positions) {
+            if (Search.legalMoves(board).size() < 2) {
+                continue;
+            }
+            String fen = board.toFen();
+            int value = minimax(board, memo);
+            int sense = board.whoseMove() == RED ? 1 : -1;
+            Move move = engine.findMove(board, 0, 0, Search.MAX_DEPTH);
+            assertTrue("not solved: " + fen, engine.solved());
+            board.makeMove(move);
+            int achieved = -minimax(board, memo);
+            board.undo();
+            if (exact) {
+                assertEquals("wrong value: " + fen, sense * value,
+                             engine.solvedScore());
+                assertEquals("wrong move: " + fen, value, achieved);
+            } else {
+                assertEquals("wrong result: " + fen,
+                             Integer.signum(sense * value),
+                             Integer.signum(engine.solvedScore()));
+                assertEquals("wrong move: " + fen, Integer.signum(value),
+                             Integer.signum(achieved));
+            }
+        }
+    }
+
+    @Test
+    public void testSettledValue() {
+        HashMap<String, Integer> memo = new HashMap<>();
+        for (String fen : SETTLED) {
+            Board board = Board.fromFen(fen);
+            int settled = Endgame.settledValue(board);
+            assertNotEquals("not settled: " + fen, -Endgame.INFTY, settled);
+            assertEquals("wrong settled value: " + fen,
+                         minimax(board, memo), settled);
+        }
+        for (Board board : positions(1)) {
+            int settled = Endgame.settledValue(board);
+            if (settled != -Endgame.INFTY) {
+                assertEquals("wrong settled value: " + board.toFen(),
+                             minimax(board, memo), settled);
+            }
+        }
+    }
+
+    @Test
+    public void testSolveExact() {
+        List<Board> positions = positions(2);
+        for (String fen : SETTLED) {
+            positions.add(Board.fromFen(fen));
+        }
+        checkSolutions(positions, true);
+    }
+
+    @Test
+    public void testSolveWinLossDraw() {
+        List<Board> positions = positions(3);
+        for (String fen : SETTLED) {
+            positions.add(Board.fromFen(fen));
+        }
+        checkSolutions(positions, false);
+    }
+
+    /** Number of random positions tested. */
+    private static final int NUM_RANDOM = 40;
+    /** Side of the unblocked square of a random position. */
+    private static final int WINDOW = 3;
+}
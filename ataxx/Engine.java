@@ -0,0 +1,671 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/** The move-finding machinery of an AI: a "Lazy SMP" parallel search.
+ *  Every thread runs its own iteratively deepened search (see Search) on
+ *  its own copy of the position, and all share one lock-free
+ *  transposition table, so that each profits from what the others have
+ *  found.  Helper threads start at staggered depths and try root moves
+ *  in different orders, so that they do not all search the same tree in
+ *  lockstep.  The main thread's result is the one reported.
+ *
+ *  When few enough squares are empty, an Engine first tries to solve
+ *  the position exactly (see Endgame), dividing the root moves among its
+ *  threads, and falls back on the heuristic search only if that takes
+ *  more than half its think time.
+ *
+ *  An Engine keeps its table, threads, and search buffers from one
+ *  search to the next; the threads exit after IDLE_SECONDS without
+ *  work.
+ *  @author Zac Nelson
+ */
+class Engine {
+
+    /** Seconds a helper thread may be idle before it exits. */
+    static final long IDLE_SECONDS = 60;
+
+    /** An Engine that searches with THREADS threads (at least one), using
+     *  a transposition table of HASHMEGABYTES megabytes. */
+    Engine(int threads, int hashMegabytes) {
+        _threads = Math.max(1, threads);
+        _table = new TranspositionTable(hashMegabytes);
+        _searches = new Search[_threads];
+        _solvers = new Endgame[_threads];
+        for (int id = 0; id < _threads; id += 1) {
+            _searches[id] = new Search(this, _table, id);
+            _solvers[id] = new Endgame(this, _endgameTable);
+        }
+        if (_threads > 1) {
+            ThreadPoolExecutor pool =
+                new ThreadPoolExecutor(_threads - 1, _threads - 1,
+                                       IDLE_SECONDS, TimeUnit.SECONDS,
+                                       new LinkedBlockingQueue<>(), (r) -> {
+                                           Thread t = new Thread(r,
+                                                         "ataxx-search");
+                                           t.setDaemon(true);
+                                           return t;
+                                       });
+            pool.allowCoreThreadTimeOut(true);
+            _helpers = pool;
+        } else {
+            _helpers = null;
+        }
+    }
+
+    /** Return the number of threads I search with. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Return a move for the player to move in BOARD, which must have a
+     *  legal non-pass move.  Searches for at most THINKTIME milliseconds
+     *  and NODELIMIT positions (no limit if 0), and to at most MAXDEPTH
+     *  plies, returning the move chosen by the deepest search that the
+     *  main thread completed.  BOARD is not modified. */
+    Move findMove(Board board, long thinkTime, long nodeLimit, int maxDepth) {
+        setLimits(thinkTime, nodeLimit);
+        return search(board, maxDepth);
+    }
+
+    /** Start a search as for findMove(BOARD, THINKTIME, NODELIMIT,
+     *  MAXDEPTH) on a new thread, and return its eventual result.  The
+     *  search's limits are set before this returns, so that a following
+     *  stop or ponderHit applies to it. */
+    Future<Move> startSearch(Board board, long thinkTime, long nodeLimit,
+                             int maxDepth) {
+        setLimits(thinkTime, nodeLimit);
+        FutureTask<Move> result =
+            new FutureTask<>(() -> search(board, maxDepth));
+        Thread thread = new Thread(result, "ataxx-background-search");
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    /** Prepare for a search of at most THINKTIME milliseconds and
+     *  NODELIMIT positions (no limit if 0), starting now. */
+    private void setLimits(long thinkTime, long nodeLimit) {
+        _start = System.currentTimeMillis();
+        _thinkTime = thinkTime;
+        _deadline = thinkTime > 0 ? _start + thinkTime : Long.MAX_VALUE;
+        _nodeLimit = nodeLimit;
+        _sharedNodes.set(0);
+        _stopped = false;
+        _elapsed = -1;
+    }
+
+    /** Search BOARD to at most MAXDEPTH plies within the limits set by
+     *  setLimits, returning the move chosen as for findMove. */
+    private Move search(Board board, int maxDepth) {
+        _table.newSearch();
+        int depthLimit = Math.min(maxDepth, Search.MAX_DEPTH);
+
+        List<Move> rootMoves = Search.legalMoves(board);
+        for (Search s : _searches) {
+            Board copy = new Board(board);
+            copy.setSymmetryTracking(_symmetricHashing);
+            s.reset(copy);
+        }
+        for (Endgame s : _solvers) {
+            s.reset();
+        }
+        _solved = false;
+        if (rootMoves.size() == 1) {
+            _elapsed = 0;
+            return rootMoves.get(0);
+        }
+        if (Long.bitCount(board.emptySquares()) <= _endgameEmpties
+            && solve(board)) {
+            _elapsed = System.currentTimeMillis() - _start;
+            iterationDone();
+            return Move.fromCode(_rootMove);
+        }
+        Move cached = cachedMove(board, depthLimit, rootMoves);
+        if (cached != null) {
+            _elapsed = System.currentTimeMillis() - _start;
+            iterationDone();
+            return cached;
+        }
+
+        ArrayList<Future<?>> helpers = new ArrayList<>();
+        for (int id = 1; id < _threads; id += 1) {
+            Search helper = _searches[id];
+            int firstDepth = 1 + id % 2;
+            helpers.add(_helpers.submit(() ->
+                                        helper.iterate(firstDepth,
+                                                       depthLimit, false)));
+        }
+        _searches[0].iterate(1, depthLimit, true);
+        _stopped = true;
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new Error("search thread failed", excp);
+            }
+        }
+        _elapsed = System.currentTimeMillis() - _start;
+
+        return _searches[0].bestMove();
+    }
+
+    /** Try to solve BOARD exactly, and return true iff this succeeded
+     *  within the limits.  The value is narrowed down by a sequence of
+     *  probes, each testing with a null window whether it is at least
+     *  some goal: first whether the game is won, then whether it is
+     *  drawn, and then, if solving exactly, upwards one piece at a time
+     *  for a win and by bisection for a loss.  A probe that succeeds
+     *  needs only one good line of play for each reply, while one that
+     *  fails must refute every move, so we prefer probes likely to
+     *  succeed. */
+    private boolean solve(Board board) {
+        int[] moves = new int[Board.MAX_MOVES];
+        int numMoves = board.generateMoves(moves);
+        Endgame.orderMoves(board, moves, numMoves, 0, new int[numMoves]);
+        int lower = -Endgame.INFTY, upper = Endgame.INFTY;
+        int best = moves[0];
+        for (int goal = 1; lower < upper; ) {
+            boolean reached = probe(board, moves, numMoves, goal);
+            for (Endgame s : _solvers) {
+                if (s.aborted()) {
+                    return false;
+                }
+            }
+            if (reached) {
+                lower = Math.min(_rootValue, upper);
+                best = _rootMove;
+            } else {
+                upper = Math.max(_rootValue, lower);
+                if (lower == -Endgame.INFTY) {
+                    best = _rootMove;
+                }
+            }
+            if (!_endgameExact && (lower > 0 || upper < 0 || goal == 0)) {
+                break;
+            } else if (lower > 0) {
+                goal = lower + 1;
+            } else if (upper >= 0) {
+                goal = 0;
+            } else {
+                goal = Math.floorDiv(lower + upper + 1, 2);
+            }
+        }
+        _solved = true;
+        _rootMove = best;
+        int value = lower > 0 ? lower : upper < 0 ? upper : 0;
+        _solvedScore = board.whoseMove() == PieceColor.RED ? value : -value;
+        _solvedPV = _solvers[0].principalVariation(board, best);
+        return true;
+    }
+
+    /** Return true iff some move among the first NUMMOVES of MOVES from
+     *  BOARD has a value of at least GOAL for the player to move, dividing
+     *  the moves among my solvers.  Leaves in _rootMove such a move if
+     *  there is one, and otherwise the move with the greatest upper bound
+     *  on its value. */
+    private boolean probe(Board board, int[] moves, int numMoves,
+                          int goal) {
+        _rootMove = moves[0];
+        _rootValue = -Endgame.INFTY;
+        _nextRootMove.set(0);
+        ArrayList<Future<?>> helpers = new ArrayList<>();
+        for (int id = 1; id < _threads; id += 1) {
+            Endgame helper = _solvers[id];
+            Board helperBoard = new Board(board);
+            helpers.add(_helpers.submit(() ->
+                                        solveRoot(helper, helperBoard, moves,
+                                                  numMoves, goal)));
+        }
+        solveRoot(_solvers[0], new Board(board), moves, numMoves, goal);
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new Error("solver thread failed", excp);
+            }
+        }
+        return _rootValue >= goal;
+    }
+
+    /** Using SOLVER, test the moves from BOARD that remain among the
+     *  first NUMMOVES of MOVES against GOAL, as for probe, taking them one
+     *  at a time until none remain or one reaches GOAL. */
+    private void solveRoot(Endgame solver, Board board, int[] moves,
+                           int numMoves, int goal) {
+        while (!solver.aborted() && rootValue() < goal) {
+            int i = _nextRootMove.getAndIncrement();
+            if (i >= numMoves) {
+                break;
+            }
+            int score = solver.solveMove(board, moves[i], goal - 1, goal);
+            if (!solver.aborted()) {
+                improveRoot(moves[i], score);
+            }
+        }
+    }
+
+    /** Return the best value found so far for a root move. */
+    private synchronized int rootValue() {
+        return _rootValue;
+    }
+
+    /** Make MOVE the best root move if its value, SCORE, is better than
+     *  that of the best so far. */
+    private synchronized void improveRoot(int move, int score) {
+        if (score > _rootValue) {
+            _rootValue = score;
+            _rootMove = move;
+        }
+    }
+
+    /** Stop the current search, if any, as soon as possible.  It returns
+     *  the best move found so far, after searching at least one ply.  May
+     *  be called from any thread. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Turn the current search, which was started with no time limit to
+     *  ponder a position the opponent may reach, into an ordinary search
+     *  of THINKTIME milliseconds (no limit if 0) from now: the opponent
+     *  has made the expected move.  May be called from any thread. */
+    void ponderHit(long thinkTime) {
+        long now = System.currentTimeMillis();
+        _thinkTime = thinkTime;
+        _deadline = thinkTime > 0 ? now + thinkTime : Long.MAX_VALUE;
+        _start = now;
+    }
+
+    /** Forget everything learned in earlier searches. */
+    void clear() {
+        _table.clear();
+        _endgameTable.clear();
+    }
+
+    /** If my analysis cache has an exact result for BOARD from a search
+     *  at least DEPTH plies deep whose best move is among ROOTMOVES,
+     *  record it as the main thread's result and return its move.
+     *  Otherwise, return null. */
+    private Move cachedMove(Board board, int depth, List<Move> rootMoves) {
+        if (_cache == null) {
+            return null;
+        }
+        long entry = _cache.probe(board);
+        if (entry == 0 || TranspositionTable.bound(entry)
+            != TranspositionTable.EXACT
+            || TranspositionTable.depth(entry) < depth) {
+            return null;
+        }
+        Move move = Move.fromCode(TranspositionTable.move(entry));
+        if (!rootMoves.contains(move)) {
+            return null;
+        }
+        int score = TranspositionTable.score(entry);
+        _searches[0].setResult(move.code(),
+                               board.whoseMove() == PieceColor.RED
+                               ? score : -score,
+                               TranspositionTable.depth(entry));
+        return move;
+    }
+
+    /** Call LISTENER (if not null) with me each time the main thread
+     *  completes an iteration. */
+    void setListener(Consumer<Engine> listener) {
+        _listener = listener;
+    }
+
+    /** Called by the main thread's search when it completes an
+     *  iteration. */
+    void iterationDone() {
+        if (_listener != null) {
+            _listener.accept(this);
+        }
+    }
+
+    /** Return the principal variation found by the deepest iteration the
+     *  main thread has completed in the current or last search: the line
+     *  of play it expects, starting with its best move. */
+    List<Move> principalVariation() {
+        return _solved ? _solvedPV : _searches[0].principalVariation();
+    }
+
+    /** Return the depth of the deepest iteration completed by the main
+     *  thread in the last search, or if it was solved, the length of its
+     *  principal variation. */
+    int depthReached() {
+        return _solved ? _solvedPV.size() : _searches[0].depthReached();
+    }
+
+    /** Return the (red-relative) score of the last search's result.  If
+     *  it was solved, this is +-Search.WINNING_VALUE for a win or loss
+     *  and 0 for a draw. */
+    int score() {
+        if (_solved) {
+            return Integer.signum(_solvedScore) * Search.WINNING_VALUE;
+        }
+        return _searches[0].bestScore();
+    }
+
+    /** Return true iff the last search solved its position exactly. */
+    boolean solved() {
+        return _solved;
+    }
+
+    /** Return the (red-relative) final difference in pieces with best
+     *  play found by the last search, if it solved its position.  When
+     *  solving only for a win, loss, or draw, this may be just a bound
+     *  with the right sign. */
+    int solvedScore() {
+        return _solvedScore;
+    }
+
+    /** Return the total number of positions visited by all threads in the
+     *  last search. */
+    long nodes() {
+        long total = 0;
+        for (Search s : _searches) {
+            total += s.nodes();
+        }
+        for (Endgame s : _solvers) {
+            total += s.nodes();
+        }
+        return total;
+    }
+
+    /** Return the duration of the last search in milliseconds, or of the
+     *  current search so far. */
+    long elapsed() {
+        return _elapsed >= 0 ? _elapsed : System.currentTimeMillis() - _start;
+    }
+
+    /** Return a summary of the transposition-table statistics of the last
+     *  search. */
+    String tableStats() {
+        long probes, hits, cutoffs, collisions;
+        probes = hits = cutoffs = collisions = 0;
+        for (Search s : _searches) {
+            probes += s.ttProbes();
+            hits += s.ttHits();
+            cutoffs += s.ttCutoffs();
+            collisions += s.ttCollisions();
+        }
+        return String.format("%d probes, %d hits, %d cutoffs, %d collisions",
+                             probes, hits, cutoffs, collisions);
+    }
+
+    /** Return the number of positions the main thread had searched in
+     *  the last search when it completed its iteration of depth DEPTH, or
+     *  0 if it did not complete it. */
+    long nodesByDepth(int depth) {
+        return _searches[0].nodesByDepth(depth);
+    }
+
+    /** Return a summary of the number of positions the main thread had
+     *  searched by the end of each iteration of the last search, the
+     *  effective branching factor of its last iteration, and the numbers
+     *  of reduced and pruned moves. */
+    String depthStats() {
+        StringBuilder result = new StringBuilder();
+        for (int d = 1; d <= depthReached(); d += 1) {
+            result.append(String.format("%s%d:%d", d == 1 ? "" : " ",
+                                        d, nodesByDepth(d)));
+        }
+        long reductions, prunes;
+        reductions = prunes = 0;
+        for (Search s : _searches) {
+            reductions += s.reductions();
+            prunes += s.futilityPrunes();
+        }
+        result.append(String.format("; ebf %.2f; %d reduced, %d pruned",
+                                    branchingFactor(), reductions, prunes));
+        return result.toString();
+    }
+
+    /** Return the effective branching factor of the last search: the
+     *  ratio of the positions the main thread searched in its last
+     *  complete iteration to those it searched in the one before, or 0
+     *  if it completed fewer than two. */
+    double branchingFactor() {
+        int depth = depthReached();
+        if (depth < 2) {
+            return 0;
+        }
+        long last = nodesByDepth(depth), previous = nodesByDepth(depth - 1);
+        long before = depth > 2 ? nodesByDepth(depth - 2) : 0;
+        return (double) (last - previous) / Math.max(1, previous - before);
+    }
+
+    /** Return true iff searches order moves before trying them (see
+     *  Search.orderMoves).  The default is true. */
+    boolean moveOrdering() {
+        return _moveOrdering;
+    }
+
+    /** Turn move ordering on iff ON, for comparing node counts. */
+    void setMoveOrdering(boolean on) {
+        _moveOrdering = on;
+    }
+
+    /** Return true iff searches generate only one extend to each square
+     *  (see Board.generateMoves).  The default is true. */
+    boolean cloneDedup() {
+        return _cloneDedup;
+    }
+
+    /** Generate only one extend to each square iff ON, for comparing node
+     *  counts. */
+    void setCloneDedup(boolean on) {
+        _cloneDedup = on;
+    }
+
+    /** Return true iff searches use aspiration windows (see
+     *  Search.aspirationSearch).  The default is true. */
+    boolean aspiration() {
+        return _aspiration;
+    }
+
+    /** Use aspiration windows iff ON, for comparing node counts. */
+    void setAspiration(boolean on) {
+        _aspiration = on;
+    }
+
+    /** Return true iff searches search late, quiet moves to reduced
+     *  depth first (see Search.negamax).  The default is true. */
+    boolean lateMoveReductions() {
+        return _lateMoveReductions;
+    }
+
+    /** Make late-move reductions iff ON, for A/B comparisons. */
+    void setLateMoveReductions(boolean on) {
+        _lateMoveReductions = on;
+    }
+
+    /** Return true iff searches look positions up in the transposition
+     *  table by the keys of their canonical forms (see
+     *  Board.canonicalSymmetry), so that an entry for a position serves
+     *  all its rotations and reflections, with its best move transformed
+     *  to match.  This makes each change to a searched board slower (see
+     *  Board.setSymmetryTracking).  The default is false. */
+    boolean symmetricHashing() {
+        return _symmetricHashing;
+    }
+
+    /** Hash positions by their canonical forms iff ON. */
+    void setSymmetricHashing(boolean on) {
+        _symmetricHashing = on;
+    }
+
+    /** Return the analysis cache in which searches keep the results of
+     *  their deeper searches near the root from one run to the next (see
+     *  AnalysisCache), or null if none.  The default is null. */
+    AnalysisCache cache() {
+        return _cache;
+    }
+
+    /** Keep the results of deep searches in CACHE (none if null).  A
+     *  search whose position has an exact result there from a search at
+     *  least as deep as its own returns that result without searching. */
+    void setCache(AnalysisCache cache) {
+        _cache = cache;
+    }
+
+    /** Return true iff searches prune moves near the leaves that cannot
+     *  bring the static value up to the window, and cut off positions
+     *  whose static value is well above it (see Search.negamax).  The
+     *  default is true. */
+    boolean futilityPruning() {
+        return _futilityPruning;
+    }
+
+    /** Do futility and reverse-futility pruning iff ON, for A/B
+     *  comparisons. */
+    void setFutilityPruning(boolean on) {
+        _futilityPruning = on;
+    }
+
+    /** Return the greatest number of empty squares at which searches first
+     *  try to solve their positions exactly, or 0 if they never do.  The
+     *  default is Endgame.DEFAULT_EMPTIES. */
+    int endgameEmpties() {
+        return _endgameEmpties;
+    }
+
+    /** Solve positions with at most EMPTIES empty squares exactly (never,
+     *  if EMPTIES is 0). */
+    void setEndgameEmpties(int empties) {
+        _endgameEmpties = Math.max(0, empties);
+    }
+
+    /** Return true iff exact solutions find the final difference in
+     *  pieces, rather than just whether the game is won, lost, or drawn.
+     *  The default is false: proving the margin of a win or loss means
+     *  refuting every alternative, which is much slower. */
+    boolean endgameExact() {
+        return _endgameExact;
+    }
+
+    /** Find final differences in pieces iff EXACT, and otherwise just
+     *  wins, losses, and draws. */
+    void setEndgameExact(boolean exact) {
+        _endgameExact = exact;
+    }
+
+    /** Return true iff the current search has been stopped. */
+    boolean stopped() {
+        return _stopped;
+    }
+
+    /** Record that a thread has searched NODES more positions, and return
+     *  true iff the search may continue: it has not been stopped, and
+     *  neither the deadline nor the node limit has passed. */
+    boolean continueSearch(long nodes) {
+        long total = _sharedNodes.addAndGet(nodes);
+        if ((_nodeLimit > 0 && total >= _nodeLimit)
+            || System.currentTimeMillis() >= _deadline) {
+            _stopped = true;
+        }
+        return !_stopped;
+    }
+
+    /** Record that a solver has visited NODES more positions, and return
+     *  true iff it may continue: the search may continue, and less than
+     *  half the think time and half the node limit are used up, leaving
+     *  the rest for the heuristic search should the solution not
+     *  finish. */
+    boolean continueSolving(long nodes) {
+        return continueSearch(nodes) && timeForAnotherIteration()
+            && (_nodeLimit <= 0 || 2 * _sharedNodes.get() <= _nodeLimit);
+    }
+
+    /** Return true iff there seems to be time for the main thread to
+     *  complete another, deeper iteration.  Each iteration typically takes
+     *  several times as long as the last, so we give up once half the
+     *  think time is gone. */
+    boolean timeForAnotherIteration() {
+        if (_stopped) {
+            return false;
+        } else if (_thinkTime <= 0) {
+            return true;
+        } else {
+            return 2 * (System.currentTimeMillis() - _start) <= _thinkTime;
+        }
+    }
+
+    /** Number of search threads. */
+    private final int _threads;
+    /** Pool running the helper threads, or null if there are none. */
+    private final ExecutorService _helpers;
+    /** Transposition table shared among threads and searches. */
+    private final TranspositionTable _table;
+
+    /** The searches run by my threads, main thread's first. */
+    private final Search[] _searches;
+    /** Transposition table shared among my endgame solvers. */
+    private final TranspositionTable _endgameTable =
+        new TranspositionTable(Endgame.HASH_MEGABYTES);
+    /** The endgame solvers run by my threads, main thread's first. */
+    private final Endgame[] _solvers;
+    /** Index of the next root move for a solver to take. */
+    private final AtomicInteger _nextRootMove = new AtomicInteger();
+    /** Best root move found by the current probe of the solvers, and its
+     *  value (or a bound on it) for the player to move. */
+    private int _rootMove, _rootValue;
+    /** True iff the last search solved its position. */
+    private boolean _solved;
+    /** Red-relative value of the last solved position. */
+    private int _solvedScore;
+    /** Principal variation of the last solved position. */
+    private List<Move> _solvedPV;
+    /** Positions searched by all threads, as reported so far. */
+    private final AtomicLong _sharedNodes = new AtomicLong();
+    /** True once the current search should stop. */
+    private volatile boolean _stopped;
+    /** Start time (System.currentTimeMillis()) of the current search, or
+     *  of its ponder hit. */
+    private volatile long _start;
+    /** Think time of the current search, or 0 for unlimited. */
+    private volatile long _thinkTime;
+    /** Time at which the current search must stop. */
+    private volatile long _deadline;
+    /** Node limit of the current search, or 0 for unlimited. */
+    private long _nodeLimit;
+    /** Duration of the last search in milliseconds, or -1 during a
+     *  search. */
+    private long _elapsed;
+    /** Called after each iteration of the main thread, or null. */
+    private Consumer<Engine> _listener;
+    /** True iff searches order their moves. */
+    private boolean _moveOrdering = true;
+    /** True iff searches use aspiration windows. */
+    private boolean _aspiration = true;
+    /** True iff searches merge extends to the same square. */
+    private boolean _cloneDedup = true;
+    /** True iff searches make late-move reductions. */
+    private boolean _lateMoveReductions = true;
+    /** True iff searches do futility pruning. */
+    private boolean _futilityPruning = true;
+    /** Greatest number of empty squares at which to solve positions. */
+    private int _endgameEmpties = Endgame.DEFAULT_EMPTIES;
+    /** True iff solutions find exact differences in pieces. */
+    private boolean _endgameExact;
+    /** True iff searches hash positions by their canonical forms. */
+    private boolean _symmetricHashing;
+    /** Persistent cache of deep search results, or null. */
+    private AnalysisCache _cache;
+}
@@ -7,7 +7,8 @@ package ataxx;
 import ucb.gui2.TopLevel;
 import ucb.gui2.LayoutSpec;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import java.io.InputStream;
 import java.io.BufferedReader;
@@ -55,6 +56,8 @@ class GUI extends TopLevel implements View, CommandSource, Reporter {
                            false, this::adjustBlockMode);
         addMenuRadioButton("Game->Blocks->Move Pieces", "Blocks",
                            true, this::adjustBlockMode);
+        addMenuButton("Game->Stop", (dummy) -> send("stop"));
+        addMenuButton("Game->Undo", (dummy) -> send("undo"));
         addMenuButton("Game->Quit", this::quit);
         addMenuButton("Options->Seed...", this::setSeed);
         addMenuRadioButton("Options->Players->Red AI", "Red",
@@ -168,6 +171,11 @@ class GUI extends TopLevel implements View, CommandSource, Reporter {
         }
     }
 
+    @Override
+    public String pollCommand() {
+        return _commandQueue.poll();
+    }
+
     /** Return true iff we are currently in block-setting mode. */
     private boolean blockMode() {
         return isSelected("Game->Blocks->Set Blocks");
@@ -210,8 +218,8 @@ class GUI extends TopLevel implements View, CommandSource, Reporter {
     /** Contains the drawing logic for the Ataxx model. */
     private BoardWidget _widget;
     /** Queue for commands going to the controlling Game. */
-    private final ArrayBlockingQueue<String> _commandQueue =
-        new ArrayBlockingQueue<>(5);
+    private final BlockingQueue<String> _commandQueue =
+        new LinkedBlockingQueue<>();
     /** The model of the game. */
     private Board _board;
 }
@@ -4,6 +4,8 @@
 
 package ataxx;
 
+import java.util.ArrayDeque;
+
 import static ataxx.PieceColor.*;
 import static ataxx.GameException.error;
 import static ataxx.Utils.*;
@@ -16,22 +18,28 @@ class Game {
     /** Name of resource containing help message. */
     private static final String HELP = "ataxx/Help.txt";
 
-    /** A new Game that takes command/move input from INP, logs
-     *  commands if LOGGING, displays the board using VIEW, and uses REPORTER
+    /** A new Game with the settings in CONTEXT that takes command/move
+     *  input from INP, displays the board using VIEW, and uses REPORTER
      *  for messages to the user and error messages. SEED is intended to
      *  seed a random number generator, if one is used in an AI.
      */
-    Game(CommandSource inp, View view, Reporter reporter, boolean logging) {
+    Game(GameContext context, CommandSource inp, View view,
+         Reporter reporter) {
+        _context = context;
         _inp = inp;
         _view = view;
         _reporter = reporter;
-        _logging = logging;
         _seed = (long) (Math.random() * Long.MAX_VALUE);
 
         _board = new Board();
         _board.setNotifier((b) -> _view.update(b));
     }
 
+    /** Return my settings, which my players share. */
+    GameContext context() {
+        return _context;
+    }
+
     /** Returns the game board.  This board is not intended to be modified
      *  by the caller. */
     Board getBoard() {
@@ -66,6 +74,7 @@ class Game {
                 }
             } else if (!gameInProgress()) {
                 if (!winnerAnnounced) {
+                    stopThinking();
                     _reporter.announceWin(_board.getWinner());
                     winnerAnnounced = true;
                 }
@@ -87,6 +96,9 @@ class Game {
     /** Return a command from the current source, using PROMPT as a
      *  prompt, if needed. */
     String getCommand(String prompt) {
+        if (!_deferred.isEmpty()) {
+            return _deferred.remove();
+        }
         String cmnd = _inp.getCommand(prompt);
         if (cmnd == null) {
             return "quit";
@@ -95,6 +107,19 @@ class Game {
         }
     }
 
+    /** Return a command that the user has entered, if there is one that
+     *  can be had without waiting, and otherwise null.  Used to take
+     *  commands while an AI is thinking.  See CommandSource.pollCommand. */
+    String pollCommand() {
+        return _inp.pollCommand();
+    }
+
+    /** Arrange for CMND, taken by pollCommand but not acted on yet, to be
+     *  returned by getCommand before any further input. */
+    void deferCommand(String cmnd) {
+        _deferred.add(cmnd);
+    }
+
     /** Perform the move denoted by MOVESTR, which must be legal. */
     void makeMove(String moveStr) {
         Move move = Move.move(moveStr);
@@ -132,6 +157,15 @@ class Game {
         }
     }
 
+    /** Report the number of positions DEPTH moves from the current one,
+     *  and the rate at which they were counted.  If DIVIDE, also report
+     *  the count below each legal move.  Throws GameException if DEPTH
+     *  exceeds Perft.MAX_DEPTH.  See Perft. */
+    void perft(int depth, boolean divide) {
+        new Perft(_board, depth, _context.threads())
+            .report(divide, (line) -> _reporter.msg("%s", line));
+    }
+
     /** Report the move MOVE by PLAYER. */
     void reportMove(Move move, PieceColor player) {
         _reporter.announceMove(move, player);
@@ -148,9 +182,12 @@ class Game {
         _reporter.msg("* %s wins.", _board.getWinner().toString());
     }
 
-    /** Make the player of COLOR an AI for subsequent moves. */
+    /** Make the player of COLOR an AI (or a MonteCarloAI, if
+     *  context().mcts()) for subsequent moves. */
     private void setAuto(PieceColor color) {
-        setPlayer(color, new AI(this, color, _seed));
+        setPlayer(color,
+                  _context.mcts() ? new MonteCarloAI(this, color, _seed)
+                  : new AI(this, color, _seed));
         _seed += 1;
     }
 
@@ -167,11 +204,25 @@ class Game {
 
     /** Set getPlayer(COLOR) to PLAYER. */
     private void setPlayer(PieceColor color, Player player) {
+        Player old = _players[color.ordinal()];
+        if (old != null) {
+            old.stopThinking();
+        }
         _players[color.ordinal()] = player;
     }
 
+    /** Stop any background computation by the players. */
+    private void stopThinking() {
+        for (Player player : _players) {
+            if (player != null) {
+                player.stopThinking();
+            }
+        }
+    }
+
     /** Clear the board to its initial state. */
     void clear() {
+        stopThinking();
         _board.clear();
     }
 
@@ -226,6 +277,7 @@ class Game {
                 _verbose = false;
                 break;
             case QUIT:
+                stopThinking();
                 _exit = 0;
                 break;
             case SEED:
@@ -240,6 +292,9 @@ class Game {
             case BLOCK:
                 block(parts[0]);
                 break;
+            case PERFT:
+                perft(toInt(parts[0]), parts[1] != null);
+                break;
             case PIECEMOVE:
                 makeMove(parts[0]);
                 break;
@@ -261,22 +316,24 @@ class Game {
      *  The arguments FORMAT and ARGS have the same meaning as for
      *  String.format. */
     private void log(String format, Object... args) {
-        if (_logging) {
-            System.out.printf(format + "%n", args);
-        }
+        _context.log(format, args);
     }
 
     /** Send an error message to the user formed from arguments FORMAT
      *  and ARGS, whose meanings are as for printf. */
     void reportError(String format, Object... args) {
         _reporter.err(format, args);
-        if (Main.isStrict()) {
+        if (_context.isStrict()) {
             _exit = 1;
         }
     }
 
+    /** Settings of this game and its players. */
+    private final GameContext _context;
     /** Returns command input for the current game. */
     private final CommandSource _inp;
+    /** Commands taken by pollCommand that are still to be executed. */
+    private final ArrayDeque<String> _deferred = new ArrayDeque<>();
     /** Outlet for responses to the user. */
     private final Reporter _reporter;
 
@@ -284,8 +341,6 @@ class Game {
     private final Board _board;
     /** Displayer of boards. */
     private View _view;
-    /** True iff we are logging commands. */
-    private boolean _logging;
 
     /** True iff we should print the board after each move. */
     private boolean _verbose;
@@ -0,0 +1,324 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.io.PrintStream;
+
+/** The settings and statistics of one session of play: whether errors
+ *  are fatal (strict mode), whether commands are logged, the level of
+ *  debugging messages, the limits and options of automatic players,
+ *  and, if timing is on, the times their moves take.  Each Game has its
+ *  own, which it passes on to its players, so that any number of Games
+ *  may run in one program without interfering.  Main makes one from its
+ *  command-line options.
+ *  @author Zac Nelson
+ */
+class GameContext {
+
+    /** A context with the default settings that logs commands to
+     *  System.out and reports debugging messages and times to
+     *  System.err. */
+    GameContext() {
+        this(System.out, System.err);
+    }
+
+    /** A context with the default settings that logs commands to OUT and
+     *  reports debugging messages and times to ERR. */
+    GameContext(PrintStream out, PrintStream err) {
+        _out = out;
+        _err = err;
+    }
+
+    /* STRICT MODE AND LOGGING */
+
+    /** Return true iff in strict mode, in which errors detected by the
+     *  manual player end the session with an error code. */
+    boolean isStrict() {
+        return _strict;
+    }
+
+    /** Set strict mode iff STRICT. */
+    void setStrict(boolean strict) {
+        _strict = strict;
+    }
+
+    /** Return true iff commands are logged. */
+    boolean isLogging() {
+        return _logging;
+    }
+
+    /** Log commands iff LOGGING. */
+    void setLogging(boolean logging) {
+        _logging = logging;
+    }
+
+    /** Set the debugging message level to LEVEL. */
+    void setMessageLevel(int level) {
+        _messageLevel = level;
+    }
+
+    /** Print a message on the logging stream, if logging, appending a
+     *  newline.  The arguments FORMAT and ARGS have the same meaning as
+     *  for String.format. */
+    void log(String format, Object... args) {
+        if (_logging) {
+            _out.printf(format + "%n", args);
+        }
+    }
+
+    /** Print a message formed from FORMAT and ARGS, as for
+     *  String.format, with a newline, if the debugging message level is
+     *  at least LEVEL. */
+    void debug(int level, String format, Object... args) {
+        if (_messageLevel >= level) {
+            _err.printf(format + "%n", args);
+        }
+    }
+
+    /* SEARCH LIMITS AND OPTIONS */
+
+    /** Return the time, in milliseconds, that an AI may spend on one
+     *  move. */
+    long thinkTime() {
+        return _thinkTime;
+    }
+
+    /** Set the think time per move to MILLIS milliseconds. */
+    void setThinkTime(long millis) {
+        _thinkTime = millis;
+    }
+
+    /** Return the maximum number of positions an AI may search for one
+     *  move, or 0 if there is no such limit. */
+    long nodeLimit() {
+        return _nodeLimit;
+    }
+
+    /** Set the limit on positions searched per move to NODES (0 for no
+     *  limit). */
+    void setNodeLimit(long nodes) {
+        _nodeLimit = nodes;
+    }
+
+    /** Return the size, in megabytes, of an AI's transposition table. */
+    int hashMegabytes() {
+        return _hashMegabytes;
+    }
+
+    /** Set the size of an AI's transposition table to MEGABYTES. */
+    void setHashMegabytes(int megabytes) {
+        _hashMegabytes = megabytes;
+    }
+
+    /** Return the number of threads with which an AI searches. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Let an AI search with THREADS threads. */
+    void setThreads(int threads) {
+        _threads = threads;
+    }
+
+    /** Return true iff AIs should search while their opponents are
+     *  thinking. */
+    boolean ponder() {
+        return _ponder;
+    }
+
+    /** Let AIs ponder iff ON. */
+    void setPonder(boolean on) {
+        _ponder = on;
+    }
+
+    /** Return true iff AIs should make late-move reductions. */
+    boolean lateMoveReductions() {
+        return _lateMoveReductions;
+    }
+
+    /** Let AIs make late-move reductions iff ON. */
+    void setLateMoveReductions(boolean on) {
+        _lateMoveReductions = on;
+    }
+
+    /** Return true iff AIs should do futility pruning. */
+    boolean futilityPruning() {
+        return _futilityPruning;
+    }
+
+    /** Let AIs do futility pruning iff ON. */
+    void setFutilityPruning(boolean on) {
+        _futilityPruning = on;
+    }
+
+    /** Return the number of empty squares at or below which AIs try to
+     *  solve positions exactly. */
+    int endgameEmpties() {
+        return _endgameEmpties;
+    }
+
+    /** Let AIs try to solve positions with at most EMPTIES empty squares
+     *  exactly. */
+    void setEndgameEmpties(int empties) {
+        _endgameEmpties = empties;
+    }
+
+    /** Return true iff AIs should hash positions by their canonical
+     *  forms (see Engine.symmetricHashing). */
+    boolean symmetricHashing() {
+        return _symmetricHashing;
+    }
+
+    /** Let AIs hash positions by their canonical forms iff ON. */
+    void setSymmetricHashing(boolean on) {
+        _symmetricHashing = on;
+    }
+
+    /** Return true iff automatic players should be MonteCarloAIs rather
+     *  than AIs. */
+    boolean mcts() {
+        return _mcts;
+    }
+
+    /** Make automatic players MonteCarloAIs iff ON. */
+    void setMcts(boolean on) {
+        _mcts = on;
+    }
+
+    /** Return the opening book AIs consult before searching, or null if
+     *  there is none. */
+    OpeningBook book() {
+        return _book;
+    }
+
+    /** Let AIs consult BOOK (null for none) before searching. */
+    void setBook(OpeningBook book) {
+        _book = book;
+    }
+
+    /** Return the variety of the moves AIs choose from their book (see
+     *  OpeningBook.choose). */
+    double bookVariety() {
+        return _bookVariety;
+    }
+
+    /** Set the variety of the moves AIs choose from their book to
+     *  VARIETY. */
+    void setBookVariety(double variety) {
+        _bookVariety = variety;
+    }
+
+    /** Return the analysis cache in which AIs keep the results of their
+     *  deeper searches (see Engine.setCache), or null if none. */
+    AnalysisCache cache() {
+        return _cache;
+    }
+
+    /** Let AIs keep the results of their deeper searches in CACHE (none
+     *  if null). */
+    void setCache(AnalysisCache cache) {
+        _cache = cache;
+    }
+
+    /* TIMING */
+
+    /** Time AI computations iff ON. */
+    void setTiming(boolean on) {
+        _timing = on;
+    }
+
+    /** Start timing an operation. */
+    void startTiming() {
+        if (_timing) {
+            _startTime = System.currentTimeMillis();
+        }
+    }
+
+    /** End the timing started with the last call to startTiming(), for
+     *  a search that completed DEPTH plies and visited NODES positions.
+     *  Report result if we are timing. */
+    void endTiming(int depth, long nodes) {
+        if (_timing) {
+            long time = System.currentTimeMillis() - _startTime;
+            _err.printf("[%d msec, depth %d, %d nodes]%n",
+                        time, depth, nodes);
+            _maxTime = Math.max(_maxTime, time);
+            _totalTime += time;
+            _numTimedOps += 1;
+        }
+    }
+
+    /** Report total time statistics, if timing. */
+    void reportTotalTimes() {
+        if (_timing && _numTimedOps > 0) {
+            _err.printf("[Total time: %d msec for %d operations. "
+                        + "Avg: %d msec/operation. "
+                        + "Max: %d msec]%n", _totalTime,
+                        _numTimedOps, _totalTime / _numTimedOps,
+                        _maxTime);
+        }
+    }
+
+    /** Return the number of operations timed so far. */
+    int numTimedOps() {
+        return _numTimedOps;
+    }
+
+    /** Return the total time, in milliseconds, of the operations timed
+     *  so far. */
+    long totalTime() {
+        return _totalTime;
+    }
+
+    /** Destination of logged commands. */
+    private final PrintStream _out;
+    /** Destination of debugging messages and times. */
+    private final PrintStream _err;
+
+    /** True iff using strict mode. */
+    private boolean _strict;
+    /** True iff logging commands. */
+    private boolean _logging;
+    /** Level of debugging messages printed. */
+    private int _messageLevel;
+
+    /** Think time per AI move, in milliseconds. */
+    private long _thinkTime = Defaults.THINK_TIME;
+    /** Maximum positions searched per AI move, or 0 for no limit. */
+    private long _nodeLimit = Defaults.NODE_LIMIT;
+    /** Transposition table size in megabytes. */
+    private int _hashMegabytes = Defaults.HASH_MEGABYTES;
+    /** Search threads per AI. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+    /** True iff AIs ponder. */
+    private boolean _ponder;
+    /** True iff AIs make late-move reductions. */
+    private boolean _lateMoveReductions = true;
+    /** True iff AIs do futility pruning. */
+    private boolean _futilityPruning = true;
+    /** Number of empty squares at or below which AIs solve positions. */
+    private int _endgameEmpties = Endgame.DEFAULT_EMPTIES;
+    /** True iff AIs hash positions by their canonical forms. */
+    private boolean _symmetricHashing;
+    /** True iff automatic players use Monte Carlo tree search. */
+    private boolean _mcts;
+    /** Opening book of AIs, or null. */
+    private OpeningBook _book;
+    /** Variety of book moves. */
+    private double _bookVariety;
+    /** Analysis cache of AIs, or null. */
+    private AnalysisCache _cache;
+
+    /** True iff AI computations are timed. */
+    private boolean _timing;
+    /** Accumulated time. */
+    private long _totalTime;
+    /** Last start time. */
+    private long _startTime;
+    /** Number of operations timed. */
+    private int _numTimedOps;
+    /** Maximum operation time. */
+    private long _maxTime;
+}
@@ -0,0 +1,575 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static ataxx.GameException.error;
+
+/** An append-only database of game records (see GameRecord) stored in a
+ *  directory, with an index from the Zobrist key of each position to
+ *  the games that reach it.  Run as
+ *      java ataxx.GameDatabase DIR [ POSITION ]
+ *  this reports the size of the database in DIR, and given a POSITION
+ *  in the notation of Board.toFen, the results of the games that reach
+ *  it and the first MAX_LISTED of them.
+ *
+ *  The games are kept, in their binary forms, one after another in the
+ *  file GAMES_FILE; a game is identified by its offset there.  The index
+ *  is a set of segment files, each a header giving the length of the
+ *  games file it covers followed by entries of two longs, sorted by the
+ *  first: the key of a position and the offset of a game reaching it
+ *  shifted left by RESULT_BITS, plus the game's result byte.  Segments
+ *  are memory-mapped read-only and searched by bisection, so that the
+ *  index is never loaded onto the heap.  Entries for newly added games
+ *  are held in memory until there are FLUSH_ENTRIES of them or the
+ *  database is flushed or closed, and then written as a new segment.
+ *  Segments are numbered in the order written, and whenever the newest
+ *  has at least 1/MERGE_RATIO as many entries as the one before it, the
+ *  two are merged into one named by the range of numbers it replaces,
+ *  so that N entries occupy O(log N) segments and each is rewritten
+ *  O(log N) times.  A segment is written under a temporary name and
+ *  renamed when complete, and on opening, segments within the range of
+ *  another (left by a crash during a merge) are deleted and games the
+ *  segments do not cover are indexed again, so that a crash loses at
+ *  most a partly written game.
+ *
+ *  All methods may be called from any thread.  The list of segments is
+ *  replaced, never modified, so that lookups take the lock only to
+ *  fetch it and scan the pending entries, and bisect the segments
+ *  while games are added and segments written and merged.
+ *  @author Zac Nelson
+ */
+class GameDatabase implements Closeable {
+
+    /** Name of the file holding the games. */
+    static final String GAMES_FILE = "games.dat";
+    /** Prefix and suffix of the names of index segments. */
+    static final String SEGMENT_PREFIX = "index-", SEGMENT_SUFFIX = ".idx";
+    /** Number of pending index entries at which they are written out. */
+    static final int FLUSH_ENTRIES = 1 << 20;
+    /** Number of low-order bits of an index entry's value holding the
+     *  result byte. */
+    static final int RESULT_BITS = 2;
+    /** Greatest number of games listed by main. */
+    static final int MAX_LISTED = 10;
+    /** Greatest number of bytes of the games file mapped at once by
+     *  forEachGame.  Much more than the length of any game. */
+    static final int SCAN_WINDOW = 1 << 28;
+
+    /** Number of bytes in a segment's header. */
+    private static final int SEGMENT_HEADER = Long.BYTES;
+    /** Number of bytes in an index entry. */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    /** Number of entries written to a segment at once. */
+    private static final int WRITE_ENTRIES = 1 << 12;
+    /** Greatest ratio of the number of entries of a segment to that of
+     *  the next newer one at which they are merged. */
+    private static final int MERGE_RATIO = 2;
+
+    /** Report on the database named in ARGS as described in the class
+     *  comment. */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java ataxx.GameDatabase DIR"
+                               + " [ POSITION ]");
+            System.exit(1);
+        }
+        try (GameDatabase db = new GameDatabase(new File(args[0]))) {
+            System.out.printf("%d bytes of games, %d index segments%n",
+                              db.gamesBytes(), db.numSegments());
+            if (args.length > 1) {
+                Board position = Board.fromFen(String.join(" ",
+                    Arrays.copyOfRange(args, 1, args.length)));
+                long[] games = db.games(position.key());
+                int[] results = results(games);
+                System.out.printf("%d games: red wins %d, blue wins %d, "
+                                  + "draws %d, unfinished %d%n",
+                                  games.length, results[1], results[2],
+                                  results[3], results[0]);
+                for (int k = 0; k < games.length && k < MAX_LISTED;
+                     k += 1) {
+                    long offset = games[k] >>> RESULT_BITS;
+                    System.out.printf("%d: %s%n", offset,
+                                      db.game(offset).moves());
+                }
+            }
+        } catch (IOException | GameException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** The database in directory DIR, which is created if need be. */
+    GameDatabase(File dir) throws IOException {
+        _dir = dir.toPath();
+        Files.createDirectories(_dir);
+        _games = FileChannel.open(_dir.resolve(GAMES_FILE),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE);
+        long covered = 0;
+        String[] names = dir.list();
+        Arrays.sort(names);
+        List<MappedByteBuffer> segments = new ArrayList<>();
+        for (String name : names) {
+            int[] range = range(name);
+            if (range == null) {
+                continue;
+            } else if (superseded(range, names)) {
+                Files.delete(_dir.resolve(name));
+                continue;
+            }
+            MappedByteBuffer segment = map(_dir.resolve(name));
+            segments.add(segment);
+            _segmentNames.add(name);
+            covered = Math.max(covered, segment.getLong(0));
+            _nextSegment = Math.max(_nextSegment, range[1] + 1);
+        }
+        _segments = segments.toArray(new MappedByteBuffer[0]);
+        _end = _games.size();
+        reindex(covered);
+    }
+
+    /** Append GAME to the database and return its offset.  Throws
+     *  GameException if GAME contains an illegal move. */
+    synchronized long add(GameRecord game) throws IOException {
+        byte[] bytes = game.encode();
+        long offset = _end;
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            _games.write(buf, offset + buf.position());
+        }
+        _end += bytes.length;
+        addEntries(game, offset);
+        return offset;
+    }
+
+    /** Return the game at offset OFFSET.  Throws GameException if there
+     *  is none there. */
+    GameRecord game(long offset) throws IOException {
+        long end;
+        synchronized (this) {
+            end = _end;
+        }
+        if (offset < 0 || offset + GameRecord.HEADER_BYTES > end) {
+            throw error("no game at %d", offset);
+        }
+        ByteBuffer header = ByteBuffer.allocate(Short.BYTES);
+        readFully(header, offset);
+        int numMoves = header.getShort(0) & 0xFFFF;
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(
+            GameRecord.HEADER_BYTES + 2L * numMoves, end - offset));
+        readFully(buf, offset);
+        buf.flip();
+        return GameRecord.decode(buf);
+    }
+
+    /** Apply ACTION to each game in the database, in order of offset,
+     *  reading the games file through a window of at most SCAN_WINDOW
+     *  bytes mapped at a time. */
+    void forEachGame(Consumer<GameRecord> action) throws IOException {
+        long end;
+        synchronized (this) {
+            end = _end;
+        }
+        long offset = 0;
+        while (offset < end) {
+            long size = Math.min(SCAN_WINDOW, end - offset);
+            MappedByteBuffer window =
+                _games.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            int done = 0;
+            while (window.hasRemaining()) {
+                GameRecord game;
+                try {
+                    game = GameRecord.decode(window);
+                } catch (GameException excp) {
+                    if (offset + size == end || done == 0) {
+                        throw excp;
+                    }
+                    break;
+                }
+                action.accept(game);
+                done = window.position();
+            }
+            offset += done;
+        }
+    }
+
+    /** Return the index entries of the games reaching the position whose
+     *  key is KEY: their offsets shifted left by RESULT_BITS, plus their
+     *  result bytes, in increasing order. */
+    long[] games(long key) {
+        long[] result = new long[0];
+        int n = 0;
+        MappedByteBuffer[] segments;
+        synchronized (this) {
+            segments = _segments;
+            for (int i = 0; i < _numPending; i += 1) {
+                if (_pendingKeys[i] == key) {
+                    if (n == result.length) {
+                        result = Arrays.copyOf(result, 2 * n + 1);
+                    }
+                    result[n] = _pendingValues[i];
+                    n += 1;
+                }
+            }
+        }
+        for (MappedByteBuffer segment : segments) {
+            LongBuffer entries = entries(segment);
+            int size = entries.limit() / 2;
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (entries.get(2 * mid) < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < size && entries.get(2 * i) == key;
+                 i += 1) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, 2 * n + 1);
+                }
+                result[n] = entries.get(2 * i + 1);
+                n += 1;
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Return the numbers of the index entries ENTRIES (as returned by
+     *  games) with each result byte, indexed by result byte. */
+    static int[] results(long[] entries) {
+        int[] result = new int[1 << RESULT_BITS];
+        for (long entry : entries) {
+            result[(int) (entry & ((1 << RESULT_BITS) - 1))] += 1;
+        }
+        return result;
+    }
+
+    /** Return the length of the games file in bytes. */
+    synchronized long gamesBytes() {
+        return _end;
+    }
+
+    /** Return the number of index segments. */
+    synchronized int numSegments() {
+        return _segments.length;
+    }
+
+    /** Write out the pending index entries as a new segment, merging it
+     *  with older ones as described in the class comment, and force the
+     *  games to storage. */
+    synchronized void flush() throws IOException {
+        _games.force(false);
+        if (_numPending == 0) {
+            return;
+        }
+        sort(_pendingKeys, _pendingValues, 0, _numPending - 1);
+        String name = String.format("%s%010d%s", SEGMENT_PREFIX,
+                                    _nextSegment, SEGMENT_SUFFIX);
+        Path temp = _dir.resolve(name + ".tmp");
+        try (FileChannel out =
+             FileChannel.open(temp, StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING,
+                              StandardOpenOption.WRITE)) {
+            ByteBuffer buf =
+                ByteBuffer.allocate(WRITE_ENTRIES * ENTRY_BYTES);
+            buf.putLong(_end);
+            for (int i = 0; i < _numPending; i += 1) {
+                if (buf.remaining() < ENTRY_BYTES) {
+                    writeFully(out, buf);
+                }
+                buf.putLong(_pendingKeys[i]).putLong(_pendingValues[i]);
+            }
+            writeFully(out, buf);
+            out.force(false);
+        }
+        Path path = _dir.resolve(name);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        _nextSegment += 1;
+        MappedByteBuffer[] segments =
+            Arrays.copyOf(_segments, _segments.length + 1);
+        segments[_segments.length] = map(path);
+        _segments = segments;
+        _segmentNames.add(name);
+        _numPending = 0;
+        while (_segments.length > 1
+               && MERGE_RATIO * size(_segments[_segments.length - 1])
+                  >= size(_segments[_segments.length - 2])) {
+            mergeNewest();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        _games.close();
+    }
+
+    /** Replace the two newest segments with one holding the entries of
+     *  both. */
+    private void mergeNewest() throws IOException {
+        int n = _segments.length;
+        MappedByteBuffer older = _segments[n - 2], newer = _segments[n - 1];
+        String olderName = _segmentNames.get(n - 2),
+            newerName = _segmentNames.get(n - 1);
+        String name = String.format("%s%010d-%010d%s", SEGMENT_PREFIX,
+                                    range(olderName)[0],
+                                    range(newerName)[1], SEGMENT_SUFFIX);
+        Path temp = _dir.resolve(name + ".tmp");
+        try (FileChannel out =
+             FileChannel.open(temp, StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING,
+                              StandardOpenOption.WRITE)) {
+            ByteBuffer buf =
+                ByteBuffer.allocate(WRITE_ENTRIES * ENTRY_BYTES);
+            buf.putLong(Math.max(older.getLong(0), newer.getLong(0)));
+            LongBuffer a = entries(older), b = entries(newer);
+            while (a.hasRemaining() || b.hasRemaining()) {
+                LongBuffer next = a;
+                if (!a.hasRemaining()) {
+                    next = b;
+                } else if (b.hasRemaining()) {
+                    long keyA = a.get(a.position()),
+                        keyB = b.get(b.position());
+                    if (keyB < keyA || (keyB == keyA
+                                        && b.get(b.position() + 1)
+                                           < a.get(a.position() + 1))) {
+                        next = b;
+                    }
+                }
+                if (buf.remaining() < ENTRY_BYTES) {
+                    writeFully(out, buf);
+                }
+                buf.putLong(next.get()).putLong(next.get());
+            }
+            writeFully(out, buf);
+            out.force(false);
+        }
+        Path path = _dir.resolve(name);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        MappedByteBuffer[] segments = Arrays.copyOf(_segments, n - 1);
+        segments[n - 2] = map(path);
+        _segments = segments;
+        _segmentNames.remove(n - 1);
+        _segmentNames.set(n - 2, name);
+        for (String old : new String[] { olderName, newerName }) {
+            try {
+                Files.delete(_dir.resolve(old));
+            } catch (IOException excp) {
+                /* Some systems refuse to delete a mapped file.  The next
+                 * opening of the database deletes it instead. */
+            }
+        }
+    }
+
+    /** Index the games from offset START to the end of the games file,
+     *  truncating the file after the last complete game. */
+    private void reindex(long start) throws IOException {
+        if (start >= _end) {
+            return;
+        }
+        MappedByteBuffer tail =
+            _games.map(FileChannel.MapMode.READ_ONLY, start, _end - start);
+        long offset = start;
+        while (tail.hasRemaining()) {
+            GameRecord game;
+            try {
+                game = GameRecord.decode(tail);
+            } catch (GameException excp) {
+                break;
+            }
+            addEntries(game, offset);
+            offset = start + tail.position();
+        }
+        if (offset < _end) {
+            _games.truncate(offset);
+            _end = offset;
+        }
+    }
+
+    /** Add index entries for the distinct positions of GAME, which is at
+     *  offset OFFSET, flushing if there are then FLUSH_ENTRIES pending
+     *  entries. */
+    private void addEntries(GameRecord game, long offset)
+        throws IOException {
+        long value = (offset << RESULT_BITS) | game.resultCode();
+        Set<Long> seen = new HashSet<>();
+        for (long key : game.keys()) {
+            if (!seen.add(key)) {
+                continue;
+            }
+            if (_numPending == _pendingKeys.length) {
+                int n = Math.max(1, 2 * _numPending);
+                _pendingKeys = Arrays.copyOf(_pendingKeys, n);
+                _pendingValues = Arrays.copyOf(_pendingValues, n);
+            }
+            _pendingKeys[_numPending] = key;
+            _pendingValues[_numPending] = value;
+            _numPending += 1;
+        }
+        if (_numPending >= FLUSH_ENTRIES) {
+            flush();
+        }
+    }
+
+    /** Return the segment at PATH, mapped read-only. */
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel in = FileChannel.open(path,
+                                               StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < SEGMENT_HEADER
+                || (size - SEGMENT_HEADER) % ENTRY_BYTES != 0) {
+                throw error("corrupt index segment: %s", path);
+            }
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /** Return the first and last numbers of the segments replaced by the
+     *  segment file NAME, or null if NAME does not name a segment. */
+    private static int[] range(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX)
+            || !name.endsWith(SEGMENT_SUFFIX)) {
+            return null;
+        }
+        String[] numbers =
+            name.substring(SEGMENT_PREFIX.length(),
+                           name.length() - SEGMENT_SUFFIX.length())
+            .split("-");
+        try {
+            int first = Integer.parseInt(numbers[0]);
+            int last = Integer.parseInt(numbers[numbers.length - 1]);
+            return numbers.length > 2 || first > last ? null
+                : new int[] { first, last };
+        } catch (NumberFormatException excp) {
+            return null;
+        }
+    }
+
+    /** Return true iff RANGE (as returned by range) lies within that of
+     *  another of the segment files among NAMES. */
+    private static boolean superseded(int[] range, String[] names) {
+        for (String name : names) {
+            int[] other = range(name);
+            if (other != null && other[0] <= range[0]
+                && range[1] <= other[1]
+                && (other[0] != range[0] || other[1] != range[1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of entries of SEGMENT. */
+    private static int size(MappedByteBuffer segment) {
+        return (segment.capacity() - SEGMENT_HEADER) / ENTRY_BYTES;
+    }
+
+    /** Return the entries of SEGMENT as longs. */
+    private static LongBuffer entries(MappedByteBuffer segment) {
+        return segment.duplicate().position(SEGMENT_HEADER).slice()
+            .asLongBuffer();
+    }
+
+    /** Sort KEYS[LO .. HI] into increasing order, permuting VALUES[LO ..
+     *  HI] in the same way, and ordering equal keys by value. */
+    static void sort(long[] keys, long[] values, int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long pivotKey = keys[mid], pivotValue = values[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivotKey
+                       || (keys[i] == pivotKey && values[i] < pivotValue)) {
+                    i += 1;
+                }
+                while (keys[j] > pivotKey
+                       || (keys[j] == pivotKey && values[j] > pivotValue)) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    long t = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = t;
+                    t = values[i];
+                    values[i] = values[j];
+                    values[j] = t;
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(keys, values, lo, j);
+                lo = i;
+            } else {
+                sort(keys, values, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    /** Fill BUF from the games file starting at OFFSET, or up to the end
+     *  of the file. */
+    private void readFully(ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            if (_games.read(buf, offset + buf.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    /** Write the contents of BUF, which is then cleared, to OUT. */
+    private static void writeFully(FileChannel out, ByteBuffer buf)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    /** The directory holding the database. */
+    private final Path _dir;
+    /** The games file. */
+    private final FileChannel _games;
+    /** Length of the games file. */
+    private long _end;
+    /** The index segments, mapped, oldest first.  Replaced, never
+     *  modified, when segments are added or merged. */
+    private MappedByteBuffer[] _segments;
+    /** The file names of the index segments, in the order of
+     *  _segments. */
+    private final List<String> _segmentNames = new ArrayList<>();
+    /** Number of the next segment written. */
+    private int _nextSegment;
+    /** Keys and values of the index entries not yet written, in
+     *  _pendingKeys[0 .. _numPending-1] and the corresponding elements of
+     *  _pendingValues. */
+    private long[] _pendingKeys = new long[0], _pendingValues = new long[0];
+    /** Number of pending index entries. */
+    private int _numPending;
+}
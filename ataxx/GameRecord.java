@@ -0,0 +1,238 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static ataxx.PieceColor.*;
+import static ataxx.GameException.error;
+
+/** The record of a game played from the initial position with some
+ *  layout of blocks, and its compact binary form.
+ *
+ *  The binary form is a header of HEADER_BYTES bytes: the number of
+ *  moves (two bytes), the result (one byte: NO_RESULT, or 1 + the
+ *  ordinal of the winner among RED, BLUE, EMPTY), and the bitboard of
+ *  blocks (seven bytes), all big-endian.  It is followed by one byte per
+ *  move, giving the move's rank among the legal moves of its position
+ *  (those of Board.generateAllMoves, or the pass alone when there are
+ *  none) in increasing order of their codes.  In the rare position with
+ *  more than 256 legal moves, the rank takes two bytes.  Since ranking
+ *  the moves depends only on the rules, not on the order in which they
+ *  happen to be generated, records stay readable as the generator
+ *  changes.  A typical game takes 10 bytes plus one per move.
+ *  @author Zac Nelson
+ */
+class GameRecord {
+
+    /** Number of bytes in the header of the binary form. */
+    static final int HEADER_BYTES = 10;
+    /** Result byte of a game that has not ended. */
+    static final int NO_RESULT = 0;
+    /** Greatest number of moves in a record. */
+    static final int MAX_MOVES = 0xFFFF;
+
+    /** Number of bytes of the block bitboard in the binary form. */
+    private static final int BLOCK_BYTES = 7;
+    /** Greatest number of moves whose ranks fit in a byte. */
+    private static final int BYTE_MOVES = 256;
+    /** The possible results, indexed by result byte - 1. */
+    private static final PieceColor[] RESULTS = { RED, BLUE, EMPTY };
+
+    /** A record of the game with the blocks BLOCKS (a bitboard) and the
+     *  moves MOVES, which has ended with the winner RESULT (EMPTY for a
+     *  draw), or has not ended if RESULT is null. */
+    GameRecord(long blocks, List<Move> moves, PieceColor result) {
+        if (moves.size() > MAX_MOVES) {
+            throw error("game too long to record");
+        }
+        _blocks = blocks;
+        _moves = Collections.unmodifiableList(new ArrayList<>(moves));
+        _result = result;
+    }
+
+    /** Return a record of the game played on BOARD, from its initial
+     *  position to the present. */
+    static GameRecord of(Board board) {
+        return new GameRecord(board.pieces(BLOCKED), board.allMoves(),
+                              board.getWinner());
+    }
+
+    /** Return the bitboard of my blocks. */
+    long blocks() {
+        return _blocks;
+    }
+
+    /** Return my moves.  The list is unmodifiable. */
+    List<Move> moves() {
+        return _moves;
+    }
+
+    /** Return my result: the winner (EMPTY for a draw), or null if the
+     *  game has not ended. */
+    PieceColor result() {
+        return _result;
+    }
+
+    /** Return my result as a result byte (see the class comment). */
+    int resultCode() {
+        return _result == null ? NO_RESULT
+            : Arrays.asList(RESULTS).indexOf(_result) + 1;
+    }
+
+    /** Return the initial position of my game, with its blocks.  Throws
+     *  GameException if they could not have been placed by
+     *  Board.setBlock. */
+    Board initialBoard() {
+        Board board = new Board();
+        for (long b = _blocks; b != 0; b &= b - 1) {
+            int sq = Board.squareIndex(Long.numberOfTrailingZeros(b));
+            char c = (char) ('a' + sq % Board.EXTENDED_SIDE - 2);
+            char r = (char) ('1' + sq / Board.EXTENDED_SIDE - 2);
+            if (board.get(c, r) == EMPTY) {
+                if (!board.legalBlock(c, r)) {
+                    throw error("impossible blocks in game record");
+                }
+                board.setBlock(c, r);
+            }
+        }
+        if (board.pieces(BLOCKED) != _blocks) {
+            throw error("impossible blocks in game record");
+        }
+        return board;
+    }
+
+    /** Return the Zobrist keys (see Board.key) of the positions of my
+     *  game, from the initial position through the position after my
+     *  last move.  Throws GameException if a move is illegal. */
+    long[] keys() {
+        Board board = initialBoard();
+        long[] result = new long[_moves.size() + 1];
+        result[0] = board.key();
+        int k = 1;
+        for (Move move : _moves) {
+            play(board, move);
+            result[k] = board.key();
+            k += 1;
+        }
+        return result;
+    }
+
+    /** Return my binary form.  Throws GameException if a move is
+     *  illegal. */
+    byte[] encode() {
+        ByteBuffer out =
+            ByteBuffer.allocate(HEADER_BYTES + 2 * _moves.size());
+        out.putShort((short) _moves.size());
+        out.put((byte) resultCode());
+        for (int k = BLOCK_BYTES - 1; k >= 0; k -= 1) {
+            out.put((byte) (_blocks >>> (Byte.SIZE * k)));
+        }
+        Board board = initialBoard();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (Move move : _moves) {
+            int n = sortedMoves(board, moves);
+            int rank = Arrays.binarySearch(moves, 0, n, move.code());
+            if (rank < 0) {
+                throw error("illegal move in game record: %s", move);
+            }
+            if (n > BYTE_MOVES) {
+                out.putShort((short) rank);
+            } else {
+                out.put((byte) rank);
+            }
+            board.makeMove(move.code());
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /** Return the game whose binary form starts at the current position
+     *  of IN, leaving IN positioned after it.  Throws GameException if
+     *  the form is truncated or describes an impossible game. */
+    static GameRecord decode(ByteBuffer in) {
+        try {
+            int numMoves = in.getShort() & 0xFFFF;
+            int resultCode = in.get() & 0xFF;
+            long blocks = 0;
+            for (int k = 0; k < BLOCK_BYTES; k += 1) {
+                blocks = (blocks << Byte.SIZE) | (in.get() & 0xFF);
+            }
+            if (resultCode > RESULTS.length
+                || (blocks & ~Board.ALL_SQUARES) != 0) {
+                throw error("corrupt game record");
+            }
+            GameRecord header =
+                new GameRecord(blocks, Collections.emptyList(), null);
+            Board board = header.initialBoard();
+            int[] moves = new int[Board.MAX_MOVES];
+            List<Move> played = new ArrayList<>(numMoves);
+            for (int k = 0; k < numMoves; k += 1) {
+                int n = sortedMoves(board, moves);
+                int rank = n > BYTE_MOVES ? in.getShort() & 0xFFFF
+                    : in.get() & 0xFF;
+                if (rank >= n || board.getWinner() != null) {
+                    throw error("corrupt game record");
+                }
+                played.add(Move.fromCode(moves[rank]));
+                board.makeMove(moves[rank]);
+            }
+            return new GameRecord(blocks, played,
+                                  resultCode == NO_RESULT ? null
+                                  : RESULTS[resultCode - 1]);
+        } catch (BufferUnderflowException excp) {
+            throw error("truncated game record");
+        }
+    }
+
+    /** Make MOVE on BOARD, which must be legal. */
+    private static void play(Board board, Move move) {
+        if (move.isPass() ? board.canMove(board.whoseMove())
+            : !board.legalMove(move)) {
+            throw error("illegal move in game record: %s", move);
+        }
+        board.makeMove(move.code());
+    }
+
+    /** Store in MOVES the codes of the legal moves on BOARD, in
+     *  increasing order, or the pass alone if there are none, and return
+     *  their number.  Extends to the same square from different squares
+     *  are distinct, so that the record keeps the move actually made. */
+    private static int sortedMoves(Board board, int[] moves) {
+        int n = board.generateAllMoves(moves);
+        if (n == 0) {
+            moves[0] = Move.PASS_CODE;
+            return 1;
+        }
+        Arrays.sort(moves, 0, n);
+        return n;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof GameRecord)) {
+            return false;
+        }
+        GameRecord other = (GameRecord) obj;
+        return _blocks == other._blocks && _moves.equals(other._moves)
+            && _result == other._result;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(_blocks) * 31 + _moves.hashCode();
+    }
+
+    /** Bitboard of my blocks. */
+    private final long _blocks;
+    /** My moves. */
+    private final List<Move> _moves;
+    /** My result, or null if my game has not ended. */
+    private final PieceColor _result;
+}
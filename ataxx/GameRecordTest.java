@@ -0,0 +1,194 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests of game records and the game database.
+ *  @author Zac Nelson
+ */
+public class GameRecordTest {
+
+    /** Return a board on which a game with blocks at c2 (and its
+     *  reflections) has been played to the end with random legal moves
+     *  chosen using SEED. */
+    private static Board randomGame(long seed) {
+        Random random = new Random(seed);
+        Board board = new Board();
+        board.setBlock("c2");
+        int[] moves = new int[Board.MAX_MOVES];
+        while (board.getWinner() == null) {
+            int n = board.generateAllMoves(moves);
+            board.makeMove(n == 0 ? Move.PASS_CODE
+                           : moves[random.nextInt(n)]);
+        }
+        return board;
+    }
+
+    /** Delete DIR and its files. */
+    static void delete(File dir) {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (long seed = 0; seed < 5; seed += 1) {
+            Board board = randomGame(seed);
+            GameRecord game = GameRecord.of(board);
+            byte[] bytes = game.encode();
+            assertTrue("record too long",
+                       bytes.length <= GameRecord.HEADER_BYTES
+                       + 2 * game.moves().size());
+            GameRecord copy = GameRecord.decode(ByteBuffer.wrap(bytes));
+            assertEquals("record differs", game, copy);
+            assertEquals("result differs", board.getWinner(),
+                         copy.result());
+            long[] keys = copy.keys();
+            assertEquals("wrong final key", board.key(),
+                         keys[keys.length - 1]);
+            assertEquals("wrong initial key",
+                         copy.initialBoard().key(), keys[0]);
+        }
+    }
+
+    @Test
+    public void testBadRecords() {
+        byte[] bytes = GameRecord.of(randomGame(0)).encode();
+        try {
+            GameRecord.decode(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+            fail("accepted truncated record");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+        for (String[] moves : new String[][] { { "b6-b5" },
+                                               { "a7-b7", "-" } }) {
+            List<Move> game = new ArrayList<>();
+            for (String move : moves) {
+                game.add(Move.move(move));
+            }
+            try {
+                new GameRecord(0, game, null).encode();
+                fail("accepted illegal move");
+            } catch (GameException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testDatabase() throws IOException {
+        File dir = Files.createTempDirectory("ataxx-db").toFile();
+        try {
+            GameRecord[] games = new GameRecord[4];
+            long[] offsets = new long[games.length];
+            try (GameDatabase db = new GameDatabase(dir)) {
+                for (int k = 0; k < games.length; k += 1) {
+                    games[k] = GameRecord.of(randomGame(k));
+                    offsets[k] = db.add(games[k]);
+                    if (k == 1) {
+                        db.flush();
+                    }
+                }
+                long start = games[0].initialBoard().key();
+                assertEquals("start not in every game", games.length,
+                             db.games(start).length);
+                assertEquals("wrong game", games[2], db.game(offsets[2]));
+            }
+            try (RandomAccessFile file = new RandomAccessFile(
+                     new File(dir, GameDatabase.GAMES_FILE), "rw")) {
+                file.seek(file.length());
+                file.write(new byte[] { 0, 1, 2 });
+            }
+            try (GameDatabase db = new GameDatabase(dir)) {
+                assertEquals("partial game kept",
+                             offsets[3] + games[3].encode().length,
+                             db.gamesBytes());
+                long[] keys = games[3].keys();
+                long[] found = db.games(keys[keys.length - 1]);
+                assertEquals("final position not indexed", 1, found.length);
+                assertEquals("wrong offset", offsets[3],
+                             found[0] >>> GameDatabase.RESULT_BITS);
+                int[] results = GameDatabase.results(found);
+                assertEquals("wrong result", 1,
+                             results[games[3].resultCode()]);
+                assertEquals("game differs", games[3],
+                             db.game(offsets[3]));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        File dir = Files.createTempDirectory("ataxx-db").toFile();
+        try {
+            GameRecord[] games = new GameRecord[NUM_COMPACTED];
+            long[] offsets = new long[games.length];
+            long start;
+            int segments;
+            try (GameDatabase db = new GameDatabase(dir)) {
+                for (int k = 0; k < games.length; k += 1) {
+                    games[k] = GameRecord.of(randomGame(k));
+                    offsets[k] = db.add(games[k]);
+                    db.flush();
+                }
+                segments = db.numSegments();
+                assertTrue("segments not merged: " + segments,
+                           segments <= MAX_COMPACTED_SEGMENTS);
+                start = games[0].initialBoard().key();
+                assertEquals("start not in every game", games.length,
+                             db.games(start).length);
+            }
+            String merged = null;
+            for (String name : dir.list()) {
+                if (name.matches("index-\\d+-\\d+\\.idx")) {
+                    merged = name;
+                }
+            }
+            assertNotNull("no merged segment", merged);
+            File leftover = new File(dir, merged.replaceFirst("-\\d+\\.",
+                                                              "."));
+            Files.copy(new File(dir, merged).toPath(), leftover.toPath());
+            try (GameDatabase db = new GameDatabase(dir)) {
+                assertFalse("replaced segment kept", leftover.exists());
+                assertEquals("wrong number of segments", segments,
+                             db.numSegments());
+                assertEquals("start not in every game", games.length,
+                             db.games(start).length);
+                for (int k = 0; k < games.length; k += 1) {
+                    long[] keys = games[k].keys();
+                    long[] found = db.games(keys[keys.length - 1]);
+                    assertEquals("final position not indexed", 1,
+                                 found.length);
+                    assertEquals("wrong offset", offsets[k],
+                                 found[0] >>> GameDatabase.RESULT_BITS);
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Number of games added, flushing after each, by testCompaction. */
+    private static final int NUM_COMPACTED = 20;
+    /** Greatest number of segments those games may occupy. */
+    private static final int MAX_COMPACTED_SEGMENTS = 6;
+
+}
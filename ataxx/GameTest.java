@@ -0,0 +1,86 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests of Games that share a program.
+ *  @author Zac Nelson
+ */
+public class GameTest {
+
+    /** A Reporter that records error messages in ERRORS and ignores
+     *  everything else. */
+    private static Reporter quietReporter(List<String> errors) {
+        return new Reporter() {
+            @Override
+            public void announceWin(PieceColor side) {
+            }
+
+            @Override
+            public void announceMove(Move move, PieceColor player) {
+            }
+
+            @Override
+            public void msg(String format, Object... args) {
+            }
+
+            @Override
+            public void err(String format, Object... args) {
+                errors.add(String.format(format, args));
+            }
+        };
+    }
+
+    /** Return a Game with the settings CONTEXT whose commands are
+     *  INPUT, recording its error messages in ERRORS. */
+    private static Game game(GameContext context, String input,
+                             List<String> errors) {
+        List<Reader> readers = new ArrayList<>();
+        readers.add(new StringReader(input));
+        return new Game(context, new TextSource(readers), (b) -> { },
+                        quietReporter(errors));
+    }
+
+    @Test
+    public void testSeparateContexts() throws InterruptedException {
+        ByteArrayOutputStream log0 = new ByteArrayOutputStream(),
+            log1 = new ByteArrayOutputStream();
+        GameContext strict = new GameContext(new PrintStream(log0, true),
+                                             System.err);
+        strict.setStrict(true);
+        strict.setLogging(true);
+        GameContext lenient = new GameContext(new PrintStream(log1, true),
+                                              System.err);
+        List<String> errors0 = new ArrayList<>(),
+            errors1 = new ArrayList<>();
+        Game game0 = game(strict, "bogus\nquit\n", errors0);
+        Game game1 = game(lenient, "bogus\nquit\n", errors1);
+        int[] exits = new int[2];
+        Thread thread0 = new Thread(() -> exits[0] = game0.play());
+        Thread thread1 = new Thread(() -> exits[1] = game1.play());
+        thread0.start();
+        thread1.start();
+        thread0.join();
+        thread1.join();
+        assertEquals("strict game should fail", 1, exits[0]);
+        assertEquals("lenient game should not fail", 0, exits[1]);
+        assertEquals("strict game errors", 1, errors0.size());
+        assertEquals("lenient game errors", 1, errors1.size());
+        assertTrue("command not logged", log0.toString().contains("bogus"));
+        assertEquals("unlogged game logged", 0, log1.size());
+        assertSame("wrong context", strict, game0.context());
+    }
+
+}
@@ -4,6 +4,7 @@
 
 package ataxx;
 
+import java.io.File;
 import java.io.FileReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
@@ -21,6 +22,9 @@ public class Main {
     /** Location of usage message resource. */
     static final String USAGE = "ataxx/Usage.txt";
 
+    /** Units of --variety per unit of book variety. */
+    static final double PERCENT = 100.0;
+
     /** Run Ataxx game.  Options (in ARGS0):
      *       --display: Use GUI.
      *       --timing: Display think times for AI.
@@ -28,16 +32,43 @@ public class Main {
      *       --log: Print commands.
      *       --strict: Strict mode---players errors cause error exit.
      *       --debug: Set level of debugging information.
+     *       --time: Set the AI's think time per move, in milliseconds.
+     *       --nodes: Limit the number of positions the AI searches per move.
+     *       --hash: Set the size of the AI's transposition table in MB.
+     *       --threads: Set the number of threads each AI searches with.
+     *       --ponder: Let AIs think on their opponents' time.
+     *       --nolmr: Turn off the AIs' late-move reductions.
+     *       --nofutility: Turn off the AIs' futility pruning.
+     *       --endgame: Set the number of empty squares at or below which
+     *              AIs try to solve positions exactly (0 for never).
+     *       --symmetric: Let AIs share transposition table entries
+     *              between positions and their rotations and reflections.
+     *       --mcts: Make automatic players use Monte Carlo tree search.
+     *       --book: Let AIs play from an opening book (see OpeningBook).
+     *       --variety: Set the variety, in percent, of AIs' book moves.
+     *       --cache: Let AIs keep the results of their deeper searches in
+     *              a file, from one run to the next (see AnalysisCache).
+     *       --cachesize: Set the size in MB of a new cache file.
+     *       --uai: Act as an engine speaking the Universal Ataxx Interface
+     *              on the standard input and output (see UAI).
      *  Trailing arguments are input files; the standard input is the
      *  default.
      */
     public static void main(String[] args0) {
         CommandArgs args =
             new CommandArgs("--display{0,1} --strict --version --timing --log"
-                            + " --debug=(\\d+){0,1} --=(.*){0,}", args0);
-
-
-        System.out.println("CS61B Ataxx! Version 3.0");
+                            + " --debug=(\\d+){0,1} --time=(\\d+){0,1}"
+                            + " --nodes=(\\d+){0,1} --hash=(\\d+){0,1}"
+                            + " --threads=(\\d+){0,1} --ponder --uai"
+                            + " --nolmr --nofutility --endgame=(\\d+){0,1}"
+                            + " --symmetric --mcts --book=(.+){0,1}"
+                            + " --variety=(\\d+){0,1} --cache=(.+){0,1}"
+                            + " --cachesize=(\\d+){0,1}"
+                            + " --=(.*){0,}", args0);
+
+        if (!args.contains("--uai")) {
+            System.out.println("CS61B Ataxx! Version 3.0");
+        }
 
         if (!args.ok()) {
             usage();
@@ -49,16 +80,72 @@ public class Main {
             System.exit(0);
         }
 
-        _strict = args.contains("--strict");
-        boolean log = args.contains("--log");
+        GameContext context = new GameContext();
+        context.setStrict(args.contains("--strict"));
+        context.setTiming(args.contains("--timing"));
+        context.setLogging(args.contains("--log"));
+        if (args.contains("--time")) {
+            context.setThinkTime(args.getLong("--time"));
+        }
+        if (args.contains("--nodes")) {
+            context.setNodeLimit(args.getLong("--nodes"));
+        }
+        if (args.contains("--hash")) {
+            context.setHashMegabytes(args.getInt("--hash"));
+        }
+        if (args.contains("--threads")) {
+            context.setThreads(args.getInt("--threads"));
+        }
+        context.setPonder(args.contains("--ponder"));
+        context.setLateMoveReductions(!args.contains("--nolmr"));
+        context.setFutilityPruning(!args.contains("--nofutility"));
+        if (args.contains("--endgame")) {
+            context.setEndgameEmpties(args.getInt("--endgame"));
+        }
+        context.setSymmetricHashing(args.contains("--symmetric"));
+        context.setMcts(args.contains("--mcts"));
+        if (args.contains("--book")) {
+            try {
+                context.setBook(new OpeningBook(
+                    new File(args.getFirst("--book"))));
+            } catch (IOException | GameException excp) {
+                System.err.printf("Could not open book: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+        if (args.contains("--variety")) {
+            context.setBookVariety(args.getInt("--variety") / PERCENT);
+        }
+        if (args.contains("--cache")) {
+            int megabytes = args.contains("--cachesize")
+                ? args.getInt("--cachesize")
+                : AnalysisCache.DEFAULT_MEGABYTES;
+            try {
+                context.setCache(new AnalysisCache(
+                    new File(args.getFirst("--cache")), megabytes,
+                    context.symmetricHashing()));
+            } catch (IOException | GameException excp) {
+                System.err.printf("Could not open cache: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
         if (args.contains("--debug")) {
-            Utils.setMessageLevel(args.getInt("--debug"));
+            context.setMessageLevel(args.getInt("--debug"));
+        }
+
+        if (args.contains("--uai")) {
+            UAI uai = new UAI(new InputStreamReader(System.in), System.out,
+                              context);
+            uai.run();
+            System.exit(0);
         }
 
         Game game;
         if (args.contains("--display")) {
             GUI display = new GUI("Ataxx!");
-            game = new Game(display, display, display, log);
+            game = new Game(context, display, display, display);
             display.pack();
             display.setVisible(true);
         } else {
@@ -80,10 +167,18 @@ public class Main {
                     }
                 }
             }
-            game = new Game(new TextSource(inReaders),
-                            (b) -> { }, new TextReporter(), log);
+            boolean interactive = args.get("--").isEmpty()
+                && System.console() != null;
+            game = new Game(context,
+                            new TextSource(inReaders, interactive),
+                            (b) -> { }, new TextReporter());
         }
-        System.exit(game.play());
+        int exitCode = game.play();
+        context.reportTotalTimes();
+        if (context.cache() != null) {
+            context.cache().close();
+        }
+        System.exit(exitCode);
     }
 
     /** Print usage message. */
@@ -91,62 +186,4 @@ public class Main {
         printHelpResource(USAGE, System.err);
     }
 
-    /* STRICT MODE */
-
-    /** Return true iff --strict flag supplied. */
-    static boolean isStrict() {
-        return _strict;
-    }
-
-    /* TIMING */
-
-    /** Start timing an operation. */
-    static void startTiming() {
-        if (_timing) {
-            _startTime = System.currentTimeMillis();
-        }
-    }
-
-    /** End the timing started with the last call to startTiming().
-     *  Report result if we are timing. */
-    static void endTiming() {
-        if (_timing) {
-            long time = System.currentTimeMillis() - _startTime;
-            System.err.printf("[%d msec]%n", time);
-            _maxTime = Math.max(_maxTime, time);
-            _totalTime += time;
-            _numTimedOps += 1;
-        }
-    }
-
-    /** Report total time statistics, if timing. */
-    static void reportTotalTimes() {
-        if (_timing && _numTimedOps > 0) {
-            System.err.printf("[Total time: %d msec for %d operations. "
-                              + "Avg: %d msec/operation. "
-                              + "Max: %d msec]%n", _totalTime,
-                              _numTimedOps, _totalTime / _numTimedOps,
-                              _maxTime);
-        }
-    }
-
-    /** True iff AIs should time. */
-    private static boolean _timing;
-
-    /** True iff using strict mode (in which errors detected by the
-     *  manual player terminate the program with an error code of 2. */
-    private static boolean _strict;
-
-    /** Accumulated time. */
-    private static long _totalTime;
-
-    /** Last start time. */
-    private static long _startTime;
-
-    /** Number of operations timed. */
-    private static int _numTimedOps;
-
-    /** Maximum operation time. */
-    private static long _maxTime;
-
 }
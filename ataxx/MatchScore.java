@@ -0,0 +1,154 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+/** The running score of a match between two players, seen from the
+ *  second, with the usual statistics: the Elo difference its score
+ *  implies, with a 95% confidence interval, and the log-likelihood
+ *  ratio of a sequential probability ratio test (SPRT) between two
+ *  hypothetical Elo differences.
+ *
+ *  The SPRT uses the normal approximation to the generalized SPRT for
+ *  wins, draws, and losses: with s the mean score per game, v its
+ *  variance, s0 and s1 the expected scores under the two hypotheses,
+ *  and n games,
+ *      LLR = n (s1 - s0) (2 s - s0 - s1) / (2 v).
+ *  The test accepts the second hypothesis once LLR reaches
+ *  upperBound(ALPHA, BETA), and the first once it falls to
+ *  lowerBound(ALPHA, BETA), where ALPHA and BETA are the tolerated
+ *  probabilities of wrongly accepting the second and the first.
+ *  All methods may be called from any thread.
+ *  @author Zac Nelson
+ */
+class MatchScore {
+
+    /** Number of standard deviations on either side of the mean score
+     *  covering 95% of a normal distribution. */
+    static final double Z95 = 1.959964;
+    /** Bound on how close a score may come to 0 or 1 when converted to
+     *  Elo, which would otherwise be infinite. */
+    private static final double SCORE_LIMIT = 1e-6;
+
+    /** Record a game that the second player won. */
+    synchronized void addWin() {
+        _wins += 1;
+    }
+
+    /** Record a drawn game. */
+    synchronized void addDraw() {
+        _draws += 1;
+    }
+
+    /** Record a game that the second player lost. */
+    synchronized void addLoss() {
+        _losses += 1;
+    }
+
+    /** Return the number of games the second player won. */
+    synchronized int wins() {
+        return _wins;
+    }
+
+    /** Return the number of drawn games. */
+    synchronized int draws() {
+        return _draws;
+    }
+
+    /** Return the number of games the second player lost. */
+    synchronized int losses() {
+        return _losses;
+    }
+
+    /** Return the number of games recorded. */
+    synchronized int games() {
+        return _wins + _draws + _losses;
+    }
+
+    /** Return the second player's mean score per game (1 for a win and
+     *  1/2 for a draw), or 1/2 if there are no games. */
+    synchronized double score() {
+        int n = games();
+        return n == 0 ? 0.5 : (_wins + 0.5 * _draws) / n;
+    }
+
+    /** Return the variance of the second player's score per game. */
+    synchronized double variance() {
+        int n = games();
+        if (n == 0) {
+            return 0;
+        }
+        double s = score();
+        return (_wins * (1 - s) * (1 - s) + _draws * (0.5 - s) * (0.5 - s)
+                + _losses * s * s) / n;
+    }
+
+    /** Return the Elo difference in favor of the second player implied
+     *  by its score. */
+    synchronized double elo() {
+        return elo(score());
+    }
+
+    /** Return the half-width of the 95% confidence interval of elo(). */
+    synchronized double eloMargin() {
+        int n = games();
+        if (n == 0) {
+            return 0;
+        }
+        double s = score();
+        double dev = Z95 * Math.sqrt(variance() / n);
+        return (elo(s + dev) - elo(s - dev)) / 2;
+    }
+
+    /** Return the log-likelihood ratio of the hypothesis that the second
+     *  player is ELO1 Elo stronger than the first against the hypothesis
+     *  that it is ELO0 stronger. */
+    synchronized double llr(double elo0, double elo1) {
+        double v = variance();
+        if (v == 0) {
+            return 0;
+        }
+        double s0 = expectedScore(elo0), s1 = expectedScore(elo1);
+        return games() * (s1 - s0) * (2 * score() - s0 - s1) / (2 * v);
+    }
+
+    /** Return the log-likelihood ratio at or below which the SPRT accepts
+     *  its first hypothesis, as described in the class comment. */
+    static double lowerBound(double alpha, double beta) {
+        return Math.log(beta / (1 - alpha));
+    }
+
+    /** Return the log-likelihood ratio at or above which the SPRT accepts
+     *  its second hypothesis, as described in the class comment. */
+    static double upperBound(double alpha, double beta) {
+        return Math.log((1 - beta) / alpha);
+    }
+
+    /** Return the expected score per game of a player ELO Elo stronger
+     *  than its opponent. */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /** Return the Elo difference corresponding to the expected score
+     *  SCORE, which is first brought within SCORE_LIMIT of 0 and 1. */
+    static double elo(double score) {
+        double s = Math.min(Math.max(score, SCORE_LIMIT), 1 - SCORE_LIMIT);
+        return -400 * Math.log10(1 / s - 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("+%d -%d =%d  score %.3f  Elo %+.1f +- %.1f",
+                             _wins, _losses, _draws, score(), elo(),
+                             eloMargin());
+    }
+
+    /** Number of games the second player won. */
+    private int _wins;
+    /** Number of drawn games. */
+    private int _draws;
+    /** Number of games the second player lost. */
+    private int _losses;
+}
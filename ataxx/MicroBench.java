@@ -0,0 +1,237 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/** Microbenchmarks of the engine's basic operations: making and undoing
+ *  moves, canMove, move generation, copying boards, static evaluation,
+ *  Monte Carlo playouts, and fixed-depth search, each applied to the
+ *  benchmark positions of Bench.  Run as
+ *      java ataxx.MicroBench [ NAME ... ]
+ *  this runs the benchmarks with the given names (default: all) and
+ *  reports for each its mean rate in operations per second, with the
+ *  standard deviation over the measurement iterations, and the heap
+ *  storage it allocates per operation.
+ *
+ *  Each benchmark first runs for WARMUP_MILLIS so that the JIT compiler
+ *  has done its work, then for ITERATIONS periods of ITERATION_MILLIS,
+ *  each timed separately.  Results are folded into a sink field so that
+ *  the compiler cannot discard the work that produces them.
+ *  @author Zac Nelson
+ */
+public class MicroBench {
+
+    /** Milliseconds to run each benchmark before measuring it. */
+    static final long WARMUP_MILLIS = 1000;
+    /** Number of measurement iterations. */
+    static final int ITERATIONS = 5;
+    /** Milliseconds per measurement iteration. */
+    static final long ITERATION_MILLIS = 1000;
+    /** Depth of the search benchmark. */
+    static final int SEARCH_DEPTH = 4;
+    /** Transposition table size of the search benchmark, in megabytes:
+     *  small, since the table is cleared before each pass. */
+    static final int SEARCH_HASH_MEGABYTES = 1;
+
+    /** Run the benchmarks named in ARGS, or all of them if there are
+     *  none, as described in the class comment. */
+    public static void main(String[] args) {
+        new MicroBench().run(List.of(args));
+    }
+
+    /** A set of benchmarks of the positions of Bench.positions(). */
+    MicroBench() {
+        _positions = Bench.positions().toArray(new Board[0]);
+        _moves = new int[_positions.length][Board.MAX_MOVES];
+        _numMoves = new int[_positions.length];
+        for (int i = 0; i < _positions.length; i += 1) {
+            _numMoves[i] = _positions[i].generateMoves(_moves[i]);
+        }
+    }
+
+    /** Run the benchmarks whose names are in NAMES, or all if NAMES is
+     *  empty. */
+    void run(List<String> names) {
+        System.out.printf("%-14s %14s %10s %12s%n",
+                          "benchmark", "ops/s", "+-", "bytes/op");
+        if (names.isEmpty() || names.contains("makeMove")) {
+            measure("makeMove", totalMoves(), this::makeMoves);
+        }
+        if (names.isEmpty() || names.contains("canMove")) {
+            measure("canMove", 2 * _positions.length, this::canMove);
+        }
+        if (names.isEmpty() || names.contains("generate")) {
+            measure("generate", _positions.length, this::generate);
+        }
+        if (names.isEmpty() || names.contains("copy")) {
+            measure("copy", _positions.length, this::copy);
+        }
+        if (names.isEmpty() || names.contains("evaluate")) {
+            measure("evaluate", _positions.length, this::evaluate);
+        }
+        if (names.isEmpty() || names.contains("playout")) {
+            measure("playout", _positions.length, this::playout);
+        }
+        if (names.isEmpty() || names.contains("search")) {
+            Engine engine = new Engine(1, SEARCH_HASH_MEGABYTES);
+            measure("search", _positions.length, () -> search(engine));
+        }
+    }
+
+    /** Run BODY, each call of which performs OPS operations, as described
+     *  in the class comment, and report the results under NAME. */
+    private void measure(String name, int ops, LongSupplier body) {
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        runFor(WARMUP_MILLIS, body);
+        double[] rates = new double[ITERATIONS];
+        long bytes, calls;
+        bytes = calls = 0;
+        for (int i = 0; i < ITERATIONS; i += 1) {
+            long before = bean.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            long n = runFor(ITERATION_MILLIS, body);
+            rates[i] = (double) n * ops * 1e9 / (System.nanoTime() - start);
+            bytes += bean.getCurrentThreadAllocatedBytes() - before;
+            calls += n;
+        }
+        double mean, variance;
+        mean = variance = 0;
+        for (double rate : rates) {
+            mean += rate / ITERATIONS;
+        }
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean) / ITERATIONS;
+        }
+        System.out.printf("%-14s %14.0f %10.0f %12.2f%n", name, mean,
+                          Math.sqrt(variance), (double) bytes / (calls * ops));
+    }
+
+    /** Call BODY repeatedly for at least MILLIS milliseconds, and return
+     *  the number of calls. */
+    private long runFor(long millis, LongSupplier body) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        long calls = 0;
+        do {
+            _sink ^= body.getAsLong();
+            calls += 1;
+        } while (System.nanoTime() < end);
+        return calls;
+    }
+
+    /** Return the total number of moves at the benchmark positions. */
+    private int totalMoves() {
+        int total = 0;
+        for (int n : _numMoves) {
+            total += n;
+        }
+        return total;
+    }
+
+    /** Make and undo every move at each position, returning a combination
+     *  of the resulting keys. */
+    private long makeMoves() {
+        long result = 0;
+        for (int i = 0; i < _positions.length; i += 1) {
+            Board board = _positions[i];
+            for (int k = 0; k < _numMoves[i]; k += 1) {
+                board.makeMove(_moves[i][k]);
+                result += board.key();
+                board.undo();
+            }
+        }
+        return result;
+    }
+
+    /** Ask whether each player can move at each position, returning the
+     *  number of times the answer is yes. */
+    private long canMove() {
+        long result = 0;
+        for (Board board : _positions) {
+            result += board.canMove(PieceColor.RED) ? 1 : 0;
+            result += board.canMove(PieceColor.BLUE) ? 1 : 0;
+        }
+        return result;
+    }
+
+    /** Generate the moves at each position, returning their total
+     *  number. */
+    private long generate() {
+        long result = 0;
+        for (int i = 0; i < _positions.length; i += 1) {
+            result += _positions[i].generateMoves(_moves[i]);
+        }
+        return result;
+    }
+
+    /** Copy each position, returning a combination of the copies'
+     *  keys. */
+    private long copy() {
+        long result = 0;
+        for (Board board : _positions) {
+            result += new Board(board).key();
+        }
+        return result;
+    }
+
+    /** Evaluate each position statically, returning the sum of the
+     *  scores. */
+    private long evaluate() {
+        long result = 0;
+        for (Board board : _positions) {
+            result += Search.staticScore(board, Search.WINNING_VALUE);
+        }
+        return result;
+    }
+
+    /** Play out the game from each position, as in a Monte Carlo tree
+     *  search, on a scratch board, returning the number of red wins. */
+    private long playout() {
+        long result = 0;
+        for (Board board : _positions) {
+            _scratch.copyFrom(board);
+            PieceColor winner =
+                MonteCarlo.playout(_scratch, _playoutMoves, _random, 0);
+            result += winner == PieceColor.RED ? 1 : 0;
+        }
+        return result;
+    }
+
+    /** Search each position to depth SEARCH_DEPTH with ENGINE, returning
+     *  the number of positions visited.  ENGINE is cleared first, so
+     *  that each search starts with a table holding nothing about its
+     *  position, as in play, rather than the results of the previous
+     *  pass. */
+    private long search(Engine engine) {
+        long result = 0;
+        engine.clear();
+        for (Board board : _positions) {
+            engine.findMove(board, 0, 0, SEARCH_DEPTH);
+            result += engine.nodes();
+        }
+        return result;
+    }
+
+    /** The benchmark positions. */
+    private final Board[] _positions;
+    /** _moves[i] holds the codes of the _numMoves[i] moves at
+     *  _positions[i]. */
+    private final int[][] _moves;
+    /** Numbers of moves at the benchmark positions. */
+    private final int[] _numMoves;
+    /** Board on which playouts are made. */
+    private final Board _scratch = new Board();
+    /** Move buffer for playouts. */
+    private final int[] _playoutMoves = new int[Board.MAX_MOVES];
+    /** State of the playouts' random-number generator. */
+    private final long[] _random = { 1 };
+    /** Accumulates benchmark results so that they are not optimized
+     *  away. */
+    private volatile long _sink;
+}
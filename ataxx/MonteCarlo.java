@@ -0,0 +1,546 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ataxx.PieceColor.*;
+
+/** The move-finding machinery of a MonteCarloAI: a Monte Carlo tree
+ *  search.  Each iteration walks down the tree from the root, choosing
+ *  at each node the child with the best UCT value (its win rate plus a
+ *  bonus for being tried less often than its siblings), adds the
+ *  children of the node it reaches, and plays out the rest of the game
+ *  from there with quick, nearly random moves, crediting the result to
+ *  every node on the way.  The move chosen is the root's most visited
+ *  child.
+ *
+ *  The tree is a pool of nodes held in parallel arrays, as in
+ *  TranspositionTable, so that it has a fixed size and growing it
+ *  allocates nothing.  The children of a node occupy consecutive
+ *  entries.  Playouts use Board.playMove on one scratch board per thread,
+ *  and allocate nothing either.
+ *
+ *  Several threads may search the same tree without locking.  A thread
+ *  counts its visit to each node on its way down, before it knows the
+ *  result (a "virtual loss"), so that the others are steered towards
+ *  different lines meanwhile.  Children are published by a volatile
+ *  store of their parent's first-child index.
+ *
+ *  Between moves, the subtree below the position actually reached is
+ *  kept, and copied to the front of a second pool, which then replaces
+ *  the first.
+ *  @author Zac Nelson
+ */
+class MonteCarlo {
+
+    /** Weight of the exploration term of the UCT formula. */
+    static final double EXPLORATION = 1.0;
+    /** Greatest number of plies in a playout, after which the player with
+     *  more pieces is deemed the winner. */
+    static final int MAX_PLAYOUT_PLIES = 400;
+    /** Number of bytes of storage per node of the tree, counting both
+     *  pools and the map used to copy between them. */
+    static final int NODE_BYTES = 11 * Integer.BYTES;
+
+    /** Values of _firstChild for nodes whose children have not been
+     *  added, are being added, or will not be added because the pool is
+     *  full. */
+    private static final int UNEXPANDED = -1, EXPANDING = -2, FULL = -3;
+    /** Credits, in half-points, for a win and a draw. */
+    private static final int WIN = 2, DRAW = 1;
+    /** Greatest depth of the tree that is followed. */
+    private static final int MAX_TREE_DEPTH = 512;
+    /** Number of plies from the last root searched for the new root. */
+    private static final int REUSE_PLIES = 2;
+
+    /** A search with THREADS threads (at least one), using a tree
+     *  occupying at most MEGABYTES megabytes (and at least one node for
+     *  each possible move).  SEED initializes the random playouts. */
+    MonteCarlo(int threads, int megabytes, long seed) {
+        _threads = Math.max(1, threads);
+        int capacity = (int) Math.max(2 * Board.MAX_MOVES,
+                                      Math.min((long) megabytes << 20,
+                                               Integer.MAX_VALUE)
+                                      / NODE_BYTES);
+        allocate(capacity);
+        _boards = new Board[_threads];
+        _moveBuffers = new int[_threads][Board.MAX_MOVES];
+        _paths = new int[_threads][MAX_TREE_DEPTH + 1];
+        _random = new long[_threads];
+        _depths = new int[_threads];
+        for (int id = 0; id < _threads; id += 1) {
+            _boards[id] = new Board();
+            _random[id] = (seed + id) * 0x9E3779B97F4A7C15L | 1;
+        }
+        if (_threads > 1) {
+            ThreadPoolExecutor pool =
+                new ThreadPoolExecutor(_threads - 1, _threads - 1,
+                                       Engine.IDLE_SECONDS, TimeUnit.SECONDS,
+                                       new LinkedBlockingQueue<>(), (r) -> {
+                                           Thread t = new Thread(r,
+                                                         "ataxx-mcts");
+                                           t.setDaemon(true);
+                                           return t;
+                                       });
+            pool.allowCoreThreadTimeOut(true);
+            _helpers = pool;
+        } else {
+            _helpers = null;
+        }
+    }
+
+    /** Return a move for the player to move in BOARD, which must have a
+     *  legal non-pass move, after searching for at most THINKTIME
+     *  milliseconds and PLAYOUTLIMIT playouts (no limit if 0).  BOARD is
+     *  not modified. */
+    Move findMove(Board board, long thinkTime, long playoutLimit) {
+        setLimits(thinkTime, playoutLimit);
+        return search(new Board(board));
+    }
+
+    /** Start a search as for findMove(BOARD, THINKTIME, PLAYOUTLIMIT) on
+     *  a new thread, and return its eventual result.  The limits are set
+     *  before this returns, so that a following stop applies. */
+    Future<Move> startSearch(Board board, long thinkTime,
+                             long playoutLimit) {
+        setLimits(thinkTime, playoutLimit);
+        Board root = new Board(board);
+        FutureTask<Move> result = new FutureTask<>(() -> search(root));
+        Thread thread = new Thread(result, "ataxx-mcts-search");
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    /** Stop the current search, if any, as soon as possible.  It returns
+     *  the best move found so far.  May be called from any thread. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return the number of playouts in the last search. */
+    long playouts() {
+        return _playouts.get();
+    }
+
+    /** Return the duration of the last search in milliseconds. */
+    long elapsed() {
+        return _elapsed;
+    }
+
+    /** Return the number of playouts per second in the last search. */
+    long playoutRate() {
+        return playouts() * 1000 / Math.max(1, _elapsed);
+    }
+
+    /** Return the number of nodes in the tree. */
+    int treeSize() {
+        return Math.min(_size.get(), _capacity);
+    }
+
+    /** Return the number of visits to the root that were inherited from
+     *  earlier searches at the start of the last one. */
+    int reusedVisits() {
+        return _reusedVisits;
+    }
+
+    /** Return the greatest depth of the tree reached by the last
+     *  search. */
+    int depthReached() {
+        int depth = 0;
+        for (int d : _depths) {
+            depth = Math.max(depth, d);
+        }
+        return depth;
+    }
+
+    /** Return the fraction of the playouts through the root's most
+     *  visited child that the player to move at the root won, counting
+     *  draws as half. */
+    double winRate() {
+        int best = bestChild();
+        return best < 0 ? 0.5
+            : _wins.get(best) / (2.0 * Math.max(1, _visits.get(best)));
+    }
+
+    /** Forget the tree. */
+    void clear() {
+        _rootBoard = null;
+    }
+
+    /** Prepare for a search of at most THINKTIME milliseconds and
+     *  PLAYOUTLIMIT playouts (no limit if 0), starting now. */
+    private void setLimits(long thinkTime, long playoutLimit) {
+        _start = System.currentTimeMillis();
+        _deadline = thinkTime > 0 ? _start + thinkTime : Long.MAX_VALUE;
+        _playoutLimit = playoutLimit > 0 ? playoutLimit : Long.MAX_VALUE;
+        _playouts.set(0);
+        _stopped = false;
+    }
+
+    /** Search BOARD, which becomes my property, within the limits set by
+     *  setLimits, and return the move chosen as for findMove. */
+    private Move search(Board board) {
+        reuseTree(board);
+        _rootBoard = board;
+        _reusedVisits = _visits.get(0);
+        Arrays.fill(_depths, 0);
+        if (expand(0, board, _moveBuffers[0]) < 0) {
+            clearTree();
+            expand(0, board, _moveBuffers[0]);
+        }
+        ArrayList<Future<?>> helpers = new ArrayList<>();
+        for (int id = 1; id < _threads; id += 1) {
+            int helper = id;
+            helpers.add(_helpers.submit(() -> work(helper)));
+        }
+        work(0);
+        _stopped = true;
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new Error("search thread failed", excp);
+            }
+        }
+        _elapsed = System.currentTimeMillis() - _start;
+        return Move.fromCode(_moves[bestChild()]);
+    }
+
+    /** Return the root's most visited child, or -1 if it has none. */
+    private int bestChild() {
+        int first = _firstChild.get(0);
+        int best = -1;
+        for (int c = first; first >= 0 && c < first + _numChildren[0];
+             c += 1) {
+            if (best < 0 || _visits.get(c) > _visits.get(best)) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Run iterations as thread ID until the search stops. */
+    private void work(int id) {
+        Board board = _boards[id];
+        int[] path = _paths[id];
+        int[] moves = _moveBuffers[id];
+        while (!_stopped) {
+            board.copyFrom(_rootBoard);
+            _visits.incrementAndGet(0);
+            int depth = 0;
+            int node = 0;
+            while (board.getWinner() == null && depth < MAX_TREE_DEPTH) {
+                int first = _firstChild.get(node);
+                if (first == UNEXPANDED) {
+                    first = expand(node, board, moves);
+                }
+                if (first < 0) {
+                    break;
+                }
+                node = select(node, first);
+                _visits.incrementAndGet(node);
+                board.playMove(_moves[node]);
+                depth += 1;
+                path[depth] = node;
+            }
+            _depths[id] = Math.max(_depths[id], depth);
+            PieceColor winner = board.getWinner();
+            if (winner == null) {
+                winner = playout(board, moves, _random, id);
+            }
+            PieceColor mover = _rootBoard.whoseMove();
+            for (int d = 1; d <= depth; d += 1, mover = mover.opposite()) {
+                int credit = winner == mover ? WIN : winner == EMPTY ? DRAW
+                    : 0;
+                if (credit != 0) {
+                    _wins.addAndGet(path[d], credit);
+                }
+            }
+            long total = _playouts.incrementAndGet();
+            if (total >= _playoutLimit
+                || (id == 0 && System.currentTimeMillis() >= _deadline)) {
+                _stopped = true;
+            }
+        }
+    }
+
+    /** Return the child of NODE, whose children start at FIRST, with the
+     *  greatest UCT value, or the first unvisited child, if any. */
+    private int select(int node, int first) {
+        double logVisits = Math.log(Math.max(1, _visits.get(node)));
+        int best = first;
+        double bestValue = -1;
+        for (int c = first; c < first + _numChildren[node]; c += 1) {
+            int visits = _visits.get(c);
+            if (visits == 0) {
+                return c;
+            }
+            double value = _wins.get(c) / (2.0 * visits)
+                + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                best = c;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    /** Add the children of NODE, whose position is BOARD, using MOVES to
+     *  hold their moves, unless another thread is doing so or the pool is
+     *  full.  Return the index of the first child, or a negative value if
+     *  there are none yet. */
+    private int expand(int node, Board board, int[] moves) {
+        if (!_firstChild.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+            return _firstChild.get(node);
+        }
+        int n = board.generateMoves(moves);
+        if (n == 0) {
+            moves[0] = Move.PASS_CODE;
+            n = 1;
+        }
+        int first = _size.getAndAdd(n);
+        if (first > _capacity - n) {
+            _firstChild.set(node, FULL);
+            return FULL;
+        }
+        for (int k = 0; k < n; k += 1) {
+            _moves[first + k] = moves[k];
+            _firstChild.set(first + k, UNEXPANDED);
+            _visits.set(first + k, 0);
+            _wins.set(first + k, 0);
+        }
+        _numChildren[node] = n;
+        _firstChild.set(node, first);
+        return first;
+    }
+
+    /** Play out the game from BOARD, using MOVES to hold moves and
+     *  RANDOM[ID] as the state of the random-number generator, and return
+     *  the winner (EMPTY for a draw).  Each move is the better, by the
+     *  number of pieces it gains, of two chosen at random.  After
+     *  MAX_PLAYOUT_PLIES plies, the player with more pieces wins. */
+    static PieceColor playout(Board board, int[] moves, long[] random,
+                              int id) {
+        for (int ply = 0;
+             board.getWinner() == null && ply < MAX_PLAYOUT_PLIES;
+             ply += 1) {
+            int n = board.generateMoves(moves);
+            if (n == 0) {
+                board.playMove(Move.PASS_CODE);
+                continue;
+            }
+            long opponents = board.pieces(board.whoseMove().opposite());
+            int move = moves[nextInt(random, id, n)];
+            int other = moves[nextInt(random, id, n)];
+            if (gain(other, opponents) > gain(move, opponents)) {
+                move = other;
+            }
+            board.playMove(move);
+        }
+        if (board.getWinner() != null) {
+            return board.getWinner();
+        }
+        int margin = board.redPieces() - board.bluePieces();
+        return margin > 0 ? RED : margin < 0 ? BLUE : EMPTY;
+    }
+
+    /** Return the number of pieces gained by the player making the move
+     *  with code MOVE against an opponent with pieces OPPONENTS. */
+    private static int gain(int move, long opponents) {
+        int from = move >>> Move.CODE_SHIFT, to = move & Move.CODE_MASK;
+        int captures = Long.bitCount(Board.neighbors(to) & opponents);
+        return (Board.neighbors(from) & (1L << to)) != 0 ? captures + 1
+            : captures;
+    }
+
+    /** Return a pseudo-random integer in 0 .. N-1, using RANDOM[ID] as
+     *  the state of an xorshift generator. */
+    private static int nextInt(long[] random, int id, int n) {
+        long x = random[id];
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        random[id] = x;
+        return (int) (((x >>> 32) * n) >>> 32);
+    }
+
+    /** If BOARD is reached from the last root by at most REUSE_PLIES
+     *  moves in the tree, make the subtree below it the whole tree, with
+     *  its root at node 0.  Otherwise, clear the tree. */
+    private void reuseTree(Board board) {
+        int node = _rootBoard == null ? -1
+            : find(0, new Board(_rootBoard), board, REUSE_PLIES);
+        if (node < 0) {
+            clearTree();
+            return;
+        } else if (node == 0) {
+            return;
+        }
+        _origins[0] = node;
+        _spareFirstChild.set(0, UNEXPANDED);
+        _spareVisits.set(0, _visits.get(node));
+        _spareWins.set(0, _wins.get(node));
+        int size = 1;
+        for (int i = 0; i < size; i += 1) {
+            int old = _origins[i];
+            int first = _firstChild.get(old);
+            if (first < 0) {
+                _spareFirstChild.set(i, UNEXPANDED);
+                continue;
+            }
+            int n = _numChildren[old];
+            for (int k = 0; k < n; k += 1) {
+                _origins[size + k] = first + k;
+                _spareMoves[size + k] = _moves[first + k];
+                _spareVisits.set(size + k, _visits.get(first + k));
+                _spareWins.set(size + k, _wins.get(first + k));
+            }
+            _spareFirstChild.set(i, size);
+            _spareNumChildren[i] = n;
+            size += n;
+        }
+        swapPools();
+        _size.set(size);
+    }
+
+    /** Make the tree a single unexpanded root. */
+    private void clearTree() {
+        _size.set(1);
+        _firstChild.set(0, UNEXPANDED);
+        _visits.set(0, 0);
+        _wins.set(0, 0);
+    }
+
+    /** Return the node at most PLIES moves below NODE, whose position is
+     *  BOARD, that has the position TARGET, or -1 if there is none.
+     *  BOARD is left unchanged. */
+    private int find(int node, Board board, Board target, int plies) {
+        if (board.key() == target.key() && board.equals(target)
+            && board.whoseMove() == target.whoseMove()) {
+            return node;
+        }
+        int first = _firstChild.get(node);
+        if (plies == 0 || first < 0) {
+            return -1;
+        }
+        for (int c = first; c < first + _numChildren[node]; c += 1) {
+            board.makeMove(_moves[c]);
+            int result = find(c, board, target, plies - 1);
+            board.undo();
+            if (result >= 0) {
+                return result;
+            }
+        }
+        return -1;
+    }
+
+    /** Allocate the two pools of CAPACITY nodes and the map between
+     *  them. */
+    private void allocate(int capacity) {
+        _capacity = capacity;
+        _moves = new int[capacity];
+        _numChildren = new int[capacity];
+        _firstChild = new AtomicIntegerArray(capacity);
+        _visits = new AtomicIntegerArray(capacity);
+        _wins = new AtomicIntegerArray(capacity);
+        _spareMoves = new int[capacity];
+        _spareNumChildren = new int[capacity];
+        _spareFirstChild = new AtomicIntegerArray(capacity);
+        _spareVisits = new AtomicIntegerArray(capacity);
+        _spareWins = new AtomicIntegerArray(capacity);
+        _origins = new int[capacity];
+    }
+
+    /** Exchange the pool of the tree with the spare pool. */
+    private void swapPools() {
+        int[] moves = _moves;
+        _moves = _spareMoves;
+        _spareMoves = moves;
+        int[] numChildren = _numChildren;
+        _numChildren = _spareNumChildren;
+        _spareNumChildren = numChildren;
+        AtomicIntegerArray firstChild = _firstChild;
+        _firstChild = _spareFirstChild;
+        _spareFirstChild = firstChild;
+        AtomicIntegerArray visits = _visits;
+        _visits = _spareVisits;
+        _spareVisits = visits;
+        AtomicIntegerArray wins = _wins;
+        _wins = _spareWins;
+        _spareWins = wins;
+    }
+
+    /** Number of search threads. */
+    private final int _threads;
+    /** Pool running the helper threads, or null if there are none. */
+    private final ExecutorService _helpers;
+
+    /** Number of nodes in each pool. */
+    private int _capacity;
+    /** Number of nodes of the pool in use (possibly more than _capacity,
+     *  once it is full). */
+    private final AtomicInteger _size = new AtomicInteger();
+    /** For each node, the code of the move that leads to it from its
+     *  parent. */
+    private int[] _moves;
+    /** For each expanded node, its number of children. */
+    private int[] _numChildren;
+    /** For each node, the index of its first child, or UNEXPANDED,
+     *  EXPANDING, or FULL. */
+    private AtomicIntegerArray _firstChild;
+    /** For each node, the number of iterations that have passed through
+     *  it. */
+    private AtomicIntegerArray _visits;
+    /** For each node, the half-points won in the playouts through it by
+     *  the player who made the move that leads to it. */
+    private AtomicIntegerArray _wins;
+    /** The spare pool, into which a subtree is copied for reuse. */
+    private int[] _spareMoves, _spareNumChildren;
+    /** See _spareMoves. */
+    private AtomicIntegerArray _spareFirstChild, _spareVisits, _spareWins;
+    /** While copying a subtree, the old index of each new node. */
+    private int[] _origins;
+
+    /** Position at the root of the tree, or null if there is no tree. */
+    private Board _rootBoard;
+    /** Scratch boards for the threads' iterations. */
+    private final Board[] _boards;
+    /** Move buffers for the threads' expansions and playouts. */
+    private final int[][] _moveBuffers;
+    /** The threads' paths through the tree: the nodes at each depth. */
+    private final int[][] _paths;
+    /** States of the threads' random-number generators. */
+    private final long[] _random;
+    /** Greatest tree depth reached by each thread. */
+    private final int[] _depths;
+
+    /** Number of playouts in the current search. */
+    private final AtomicLong _playouts = new AtomicLong();
+    /** True once the current search should stop. */
+    private volatile boolean _stopped;
+    /** Start time (System.currentTimeMillis()) of the current search. */
+    private long _start;
+    /** Time at which the current search must stop. */
+    private long _deadline;
+    /** Playout limit of the current search. */
+    private long _playoutLimit;
+    /** Duration of the last search in milliseconds. */
+    private long _elapsed;
+    /** Visits to the root inherited by the last search. */
+    private int _reusedVisits;
+}
@@ -0,0 +1,69 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/** A Player that computes its own moves by Monte Carlo tree search (see
+ *  MonteCarlo), as an alternative to the minimax search of an AI.  Like
+ *  an AI, it searches on a separate thread, so that the user can stop
+ *  it, undo, start a new game, or quit meanwhile.  It keeps its tree
+ *  from move to move.
+ *  @author Zac Nelson
+ */
+class MonteCarloAI extends Player {
+
+    /** A new MonteCarloAI for GAME that will play MYCOLOR.  SEED
+     *  initializes its random playouts. */
+    MonteCarloAI(Game game, PieceColor myColor, long seed) {
+        super(game, myColor);
+        _mcts = new MonteCarlo(game.context().threads(),
+                               game.context().hashMegabytes(), seed);
+    }
+
+    @Override
+    boolean isAuto() {
+        return true;
+    }
+
+    @Override
+    String getMove() {
+        if (!getBoard().canMove(myColor())) {
+            game().reportMove(Move.pass(), myColor());
+            return "-";
+        }
+        GameContext context = context();
+        context.startTiming();
+        Future<Move> search =
+            _mcts.startSearch(new Board(getBoard()), context.thinkTime(),
+                              context.nodeLimit());
+        String interruption = awaitSearch(search, _mcts::stop);
+        Move move;
+        try {
+            move = search.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("search failed", excp);
+        }
+        context.endTiming(_mcts.depthReached(), _mcts.playouts());
+        context.debug(1, "[mcts: %d playouts, %d per second, tree %d,"
+                      + " reused %d, win rate %.2f]", _mcts.playouts(),
+                      _mcts.playoutRate(), _mcts.treeSize(),
+                      _mcts.reusedVisits(), _mcts.winRate());
+        if (interruption != null) {
+            return interruption;
+        }
+        game().reportMove(move, myColor());
+        return move.toString();
+    }
+
+    @Override
+    void stopThinking() {
+        _mcts.stop();
+    }
+
+    /** The search machinery, kept (with its tree) from move to move. */
+    private final MonteCarlo _mcts;
+}
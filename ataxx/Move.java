@@ -31,6 +31,8 @@ class Move {
         _row1 = (char) (row1 + '1' - 2);
         _fromIndex = row0 * EXTENDED_SIDE + col0;
         _toIndex = row1 * EXTENDED_SIDE + col1;
+        _code = (((row0 - 2) * SIDE + col0 - 2) << CODE_SHIFT)
+            | ((row1 - 2) * SIDE + col1 - 2);
 
         if ((abs(_col0 - _col1) == 2) || (abs(_row0 - _row1) == 2)) {
             _isJump = true;
@@ -44,6 +46,7 @@ class Move {
         _col0 = _col1 = _row0 = _row1 = 0;
         _fromIndex = _toIndex = -1;
         _isJump = _isExtend = false;
+        _code = PASS_CODE;
     }
 
     /** A factory method that returns a Move from COL0 ROW0 to COL1 ROW1,
@@ -58,6 +61,33 @@ class Move {
             [col1 - 'a' + 2][row1 - '1' + 2];
     }
 
+    /** A factory method that returns the Move from the square with
+     *  linearized index FROMINDEX to the one with linearized index TOINDEX,
+     *  or null if the squares are too far apart. */
+    static Move move(int fromIndex, int toIndex) {
+        return ALL_MOVES[fromIndex % EXTENDED_SIDE][fromIndex / EXTENDED_SIDE]
+            [toIndex % EXTENDED_SIDE][toIndex / EXTENDED_SIDE];
+    }
+
+    /** Return true iff CODE has the form of a move code (see code()):
+     *  PASS_CODE, or the codes of two real squares.  The squares need not
+     *  be within reach of each other. */
+    static boolean validCode(int code) {
+        return code == PASS_CODE
+            || (code > 0 && (code >>> CODE_SHIFT) < SIDE * SIDE
+                && (code & CODE_MASK) < SIDE * SIDE);
+    }
+
+    /** Return the Move whose code (see code()) is CODE. */
+    static Move fromCode(int code) {
+        if (code == PASS_CODE) {
+            return PASS;
+        }
+        int from = code >>> CODE_SHIFT, to = code & CODE_MASK;
+        return ALL_MOVES[from % SIDE + 2][from / SIDE + 2]
+            [to % SIDE + 2][to / SIDE + 2];
+    }
+
     /** Return the Move denoted by STR, or null if STR is not a syntactically
      *  valid move designation. */
     static Move move(String str) {
@@ -125,6 +155,14 @@ class Move {
         return _toIndex;
     }
 
+    /** Return my code, a compact int form used where creating or looking
+     *  up Move objects would be too slow: the bit index (see Board) of my
+     *  'from' square shifted left by CODE_SHIFT, plus that of my 'to'
+     *  square, or PASS_CODE if I am a pass.  No move has code 0. */
+    int code() {
+        return _code;
+    }
+
     @Override
     public String toString() {
         if (isPass()) {
@@ -144,12 +182,24 @@ class Move {
     /** Size of side of a board plus 2-deep boundary. */
     static final int EXTENDED_SIDE = SIDE + 4;
 
+    /** Shift of the 'from' square in a move code. */
+    static final int CODE_SHIFT = 6;
+
+    /** Mask for the 'to' square in a move code. */
+    static final int CODE_MASK = (1 << CODE_SHIFT) - 1;
+
+    /** Code of a pass, and an upper bound on the codes of other moves. */
+    static final int PASS_CODE = (1 << (2 * CODE_SHIFT)) - 1;
+
     /** The pass. */
     static final Move PASS = new Move();
 
     /** Linearized indices. */
     private final int _fromIndex, _toIndex;
 
+    /** My code. */
+    private final int _code;
+
     /** Move characteristics, indicating whether move is extension or jump. */
     private boolean _isExtend, _isJump;
 
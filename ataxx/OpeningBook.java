@@ -0,0 +1,323 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import ucb.util.CommandArgs;
+
+import static ataxx.PieceColor.*;
+import static ataxx.GameException.error;
+
+/** A book of opening moves with their results in past games, consulted
+ *  by AIs before searching.  Run as
+ *      java ataxx.OpeningBook [ --plies=N ] [ --min=N ] DB BOOK
+ *  this builds the book BOOK from the finished games in the
+ *  GameDatabase in directory DB (for example, one filled by
+ *  Tournament --record), counting the first N plies of each (default
+ *  DEFAULT_PLIES) and keeping the moves played in at least N of them
+ *  (default DEFAULT_MIN_GAMES).
+ *
+ *  Positions are folded under the symmetries of the board: each is
+ *  stored in its canonical form (see Board.canonicalSymmetry), with its
+ *  moves transformed to match, so that the statistics of all the images
+ *  of a position, and of the equivalent moves in a symmetric one, are
+ *  pooled.  The book file is a header (MAGIC) followed
+ *  by entries of ENTRY_BYTES bytes, sorted by position and then move:
+ *  the key of a canonical position (a long), the code of a move (an
+ *  int), the number of games in which the move was played there, and
+ *  the number of points the player making it scored in them (two for a
+ *  win, one for a draw).  A book is memory-mapped read-only and searched
+ *  by bisection, so that opening it takes no time and consulting it,
+ *  microseconds, however large it is.  It is written under a temporary
+ *  name and renamed when complete.
+ *
+ *  A book may be consulted from any thread.
+ *  @author Zac Nelson
+ */
+class OpeningBook {
+
+    /** The first long of a book file. */
+    static final long MAGIC = 0x4154414258424B31L;
+    /** Number of bytes in an entry. */
+    static final int ENTRY_BYTES = Long.BYTES + 3 * Integer.BYTES;
+    /** Default number of plies of each game counted. */
+    static final int DEFAULT_PLIES = 16;
+    /** Default least number of games in which a move must have been
+     *  played to be kept. */
+    static final int DEFAULT_MIN_GAMES = 2;
+
+    /** Number of bytes in the header. */
+    private static final int HEADER_BYTES = Long.BYTES;
+    /** Offsets within an entry of the move code, the number of games,
+     *  and the number of points. */
+    private static final int CODE = Long.BYTES, GAMES = CODE + Integer.BYTES,
+        POINTS = GAMES + Integer.BYTES;
+    /** Number of entries written at once. */
+    private static final int WRITE_ENTRIES = 1 << 12;
+
+    /** Build a book as described in the class comment, with arguments
+     *  ARGS0. */
+    public static void main(String[] args0) {
+        CommandArgs args =
+            new CommandArgs("--plies=(\\d+){0,1} --min=(\\d+){0,1}"
+                            + " --=(.+){2}", args0);
+        if (!args.ok()) {
+            System.err.println("Usage: java ataxx.OpeningBook [ --plies=N ]"
+                               + " [ --min=N ] DB BOOK");
+            System.exit(1);
+        }
+        int plies = args.contains("--plies") ? args.getInt("--plies")
+            : DEFAULT_PLIES;
+        int minGames = args.contains("--min") ? args.getInt("--min")
+            : DEFAULT_MIN_GAMES;
+        List<String> files = args.get("--");
+        try (GameDatabase db = new GameDatabase(new File(files.get(0)))) {
+            int size = build(db, plies, minGames, new File(files.get(1)));
+            System.out.printf("%d book moves%n", size);
+        } catch (IOException | GameException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** The book in FILE.  Throws GameException if FILE is not a book. */
+    OpeningBook(File file) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_BYTES
+                || (size - HEADER_BYTES) % ENTRY_BYTES != 0
+                || size - HEADER_BYTES > (long) Integer.MAX_VALUE) {
+                throw error("not an opening book: %s", file);
+            }
+            _entries = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (_entries.getLong(0) != MAGIC) {
+                throw error("not an opening book: %s", file);
+            }
+            _size = (int) ((size - HEADER_BYTES) / ENTRY_BYTES);
+        }
+    }
+
+    /** Return the number of entries (position-move pairs) in the book. */
+    int size() {
+        return _size;
+    }
+
+    /** Return a move from the book for the player to move on BOARD, or
+     *  null if there is none.  Each move is rated by the fraction of the
+     *  points available that it scored, counting one extra game drawn so
+     *  that moves played once are not overrated.  If VARIETY is 0, the
+     *  move chosen is the best rated (and of those, the most played);
+     *  otherwise, it is chosen using RANDOM from those rated within
+     *  VARIETY of the best, with probability proportional to the number
+     *  of games in which each was played. */
+    Move choose(Board board, double variety, Random random) {
+        if (board.getWinner() != null || !board.canMove(board.whoseMove())) {
+            return null;
+        }
+        Symmetry sym = board.canonicalSymmetry();
+        long key = board.key(sym);
+        int first = find(key), last;
+        double best = -1;
+        int bestEntry = -1;
+        for (last = first; last < _size && key(last) == key; last += 1) {
+            double rating = rating(last);
+            if (rating > best
+                || (rating == best && games(last) > games(bestEntry))) {
+                best = rating;
+                bestEntry = last;
+            }
+        }
+        if (bestEntry < 0) {
+            return null;
+        }
+        int chosen = bestEntry;
+        if (variety > 0) {
+            long total = 0;
+            for (int i = first; i < last; i += 1) {
+                if (rating(i) >= best - variety) {
+                    total += games(i);
+                }
+            }
+            long pick = (long) (random.nextDouble() * total);
+            for (int i = first; i < last; i += 1) {
+                if (rating(i) >= best - variety) {
+                    pick -= games(i);
+                    if (pick < 0) {
+                        chosen = i;
+                        break;
+                    }
+                }
+            }
+        }
+        int code = _entries.getInt(offset(chosen) + CODE);
+        if (code == Move.PASS_CODE || !Move.validCode(code)) {
+            return null;
+        }
+        Move move = Move.fromCode(sym.inverse().applyCode(code));
+        return board.legalMove(move) ? move : null;
+    }
+
+    /** Write to FILE a book built from the games in DB, as described in
+     *  the class comment, counting their first PLIES plies and keeping
+     *  moves played in at least MINGAMES of them, and return its number
+     *  of entries. */
+    static int build(GameDatabase db, int plies, int minGames, File file)
+        throws IOException {
+        long[][] entries = { new long[0], new long[0] };
+        int[] count = { 0 };
+        db.forEachGame((game) -> {
+            PieceColor result = game.result();
+            if (result == null) {
+                return;
+            }
+            Board board = game.initialBoard();
+            board.setSymmetryTracking(true);
+            for (Move move : game.moves()) {
+                if (board.allMoves().size() >= plies
+                    || board.getWinner() != null) {
+                    break;
+                } else if (!board.legalMove(move)) {
+                    throw error("illegal move in game: %s", move);
+                } else if (!move.isPass()) {
+                    long key = board.key(board.canonicalSymmetry());
+                    PieceColor mover = board.whoseMove();
+                    int points = result == mover ? 2 : result == EMPTY ? 1
+                        : 0;
+                    if (count[0] == entries[0].length) {
+                        int n = Math.max(1, 2 * count[0]);
+                        entries[0] = Arrays.copyOf(entries[0], n);
+                        entries[1] = Arrays.copyOf(entries[1], n);
+                    }
+                    entries[0][count[0]] = key;
+                    entries[1][count[0]] =
+                        ((long) canonicalCode(board, key, move.code())
+                         << Integer.SIZE) | points;
+                    count[0] += 1;
+                }
+                board.makeMove(move.code());
+            }
+        });
+        long[] keys = entries[0], values = entries[1];
+        int n = count[0];
+        if (n > 0) {
+            GameDatabase.sort(keys, values, 0, n - 1);
+        }
+        Path path = file.toPath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int size = 0;
+        try (FileChannel out =
+             FileChannel.open(temp, StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING,
+                              StandardOpenOption.WRITE)) {
+            ByteBuffer buf =
+                ByteBuffer.allocate(WRITE_ENTRIES * ENTRY_BYTES);
+            buf.putLong(MAGIC);
+            for (int i = 0, j; i < n; i = j) {
+                int code = (int) (values[i] >>> Integer.SIZE), games = 0,
+                    points = 0;
+                for (j = i; j < n && keys[j] == keys[i]
+                         && (int) (values[j] >>> Integer.SIZE) == code;
+                     j += 1) {
+                    games += 1;
+                    points += (int) values[j];
+                }
+                if (games < minGames) {
+                    continue;
+                }
+                if (buf.remaining() < ENTRY_BYTES) {
+                    writeFully(out, buf);
+                }
+                buf.putLong(keys[i]).putInt(code).putInt(games)
+                    .putInt(points);
+                size += 1;
+            }
+            writeFully(out, buf);
+            out.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+        return size;
+    }
+
+    /** Return the code of the canonical form of the move with code CODE
+     *  on BOARD, whose canonical form has the key KEY: the least code of
+     *  its images under the symmetries that map BOARD to its canonical
+     *  form.  Where a position is symmetric, its equivalent moves thus
+     *  share an entry. */
+    private static int canonicalCode(Board board, long key, int code) {
+        int result = Integer.MAX_VALUE;
+        for (Symmetry sym : Symmetry.values()) {
+            if (board.key(sym) == key) {
+                result = Math.min(result, sym.applyCode(code));
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of the first entry whose key is at least KEY, or
+     *  size() if there is none. */
+    private int find(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the byte offset of entry I. */
+    private static int offset(int i) {
+        return HEADER_BYTES + i * ENTRY_BYTES;
+    }
+
+    /** Return the position key of entry I. */
+    private long key(int i) {
+        return _entries.getLong(offset(i));
+    }
+
+    /** Return the number of games of entry I. */
+    private int games(int i) {
+        return _entries.getInt(offset(i) + GAMES);
+    }
+
+    /** Return the rating (see choose) of entry I. */
+    private double rating(int i) {
+        int games = games(i);
+        return (_entries.getInt(offset(i) + POINTS) + 1.0)
+            / (2.0 * games + 2.0);
+    }
+
+    /** Write the contents of BUF, which is then cleared, to OUT. */
+    private static void writeFully(FileChannel out, ByteBuffer buf)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    /** The book file, mapped. */
+    private final MappedByteBuffer _entries;
+    /** Number of entries. */
+    private final int _size;
+}
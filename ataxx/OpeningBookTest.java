@@ -0,0 +1,60 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static ataxx.PieceColor.*;
+
+/** Tests of opening books.
+ *  @author Zac Nelson
+ */
+public class OpeningBookTest {
+
+    @Test
+    public void testBuildAndChoose() throws IOException {
+        File dir = Files.createTempDirectory("ataxx-book").toFile();
+        File file = new File(dir, "book");
+        try {
+            try (GameDatabase db = new GameDatabase(dir)) {
+                Object[][] games = {
+                    { "a7-b6", RED }, { "a7-b6", RED }, { "g1-f2", BLUE },
+                    { "a7-a6", EMPTY }, { "g1-g2", EMPTY },
+                    { "a7-a6", EMPTY }, { "a7-b7", null }
+                };
+                for (Object[] game : games) {
+                    db.add(new GameRecord(0, List.of(Move.move(
+                        (String) game[0])), (PieceColor) game[1]));
+                }
+                assertEquals("wrong book size", 2,
+                             OpeningBook.build(db, 1, 3, file));
+            }
+            OpeningBook book = new OpeningBook(file);
+            Board board = new Board();
+            List<String> best = Arrays.asList("a7-b6", "g1-f2");
+            Random random = new Random(0);
+            assertTrue("wrong best move", best.contains(
+                book.choose(board, 0, random).toString()));
+            for (int k = 0; k < 20; k += 1) {
+                Move move = book.choose(board, 1, random);
+                assertTrue("book move illegal", board.legalMove(move));
+                assertFalse("unplayed move", move.isJump());
+            }
+            board.makeMove(Move.move("a7-b6"));
+            assertNull("move beyond book", book.choose(board, 0, random));
+        } finally {
+            GameRecordTest.delete(dir);
+        }
+    }
+
+}
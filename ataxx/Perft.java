@@ -0,0 +1,177 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import static ataxx.GameException.error;
+
+/** Performance tests ("perft") of the move generator: counts of the
+ *  positions reached by every sequence of a given number of moves from a
+ *  given position.  Moves are those of Board.generateMoves, so that
+ *  extends to the same square count once, plus a pass when the player to
+ *  move has no other move; a finished game has no moves.  Known counts
+ *  check the generator, and the time taken measures its speed.
+ *
+ *  The root moves are divided among the threads of a ForkJoinPool.  Run
+ *  as
+ *      java ataxx.Perft [ DEPTH [ THREADS ] ] [ divide ]
+ *  this reports the count to depth DEPTH (default 5, and at most
+ *  MAX_DEPTH) from the initial position using THREADS threads (default:
+ *  one per processor), and with "divide", the count below each root
+ *  move.
+ *  @author Zac Nelson
+ */
+public class Perft {
+
+    /** Default perft depth. */
+    static final int DEFAULT_DEPTH = 5;
+    /** Greatest perft depth. */
+    static final int MAX_DEPTH = Search.MAX_DEPTH;
+
+    /** Run a perft as described in the class comment, with arguments
+     *  ARGS. */
+    public static void main(String[] args) {
+        boolean divide = args.length > 0
+            && args[args.length - 1].equals("divide");
+        int n = divide ? args.length - 1 : args.length;
+        try {
+            int depth = n > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+            int threads = n > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+            new Perft(new Board(), depth, threads)
+                .report(divide, System.out::println);
+        } catch (NumberFormatException excp) {
+            System.err.println("Usage: java ataxx.Perft [ DEPTH [ THREADS ] ]"
+                               + " [ divide ]");
+            System.exit(1);
+        } catch (GameException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Count the positions DEPTH moves from BOARD, which is not modified,
+     *  using THREADS threads.  Throws GameException unless 0 <= DEPTH <=
+     *  MAX_DEPTH. */
+    Perft(Board board, int depth, int threads) {
+        if (depth < 0 || depth > MAX_DEPTH) {
+            throw error("perft depth must be between 0 and %d", MAX_DEPTH);
+        }
+        _depth = depth;
+        long start = System.nanoTime();
+        int[] moves = new int[Board.MAX_MOVES];
+        int numMoves = rootMoves(board, moves);
+        _moves = new ArrayList<>();
+        for (int i = 0; i < numMoves; i += 1) {
+            _moves.add(Move.fromCode(moves[i]));
+        }
+        _counts = new long[numMoves];
+        if (depth == 0) {
+            _nodes = 1;
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+            List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+            for (int i = 0; i < numMoves; i += 1) {
+                Board child = new Board(board);
+                child.makeMove(moves[i]);
+                tasks.add(pool.submit(() -> count(child, depth - 1)));
+            }
+            for (int i = 0; i < numMoves; i += 1) {
+                _counts[i] = tasks.get(i).join();
+                _nodes += _counts[i];
+            }
+            pool.shutdown();
+        }
+        _nanos = System.nanoTime() - start;
+    }
+
+    /** Return the number of positions DEPTH moves from BOARD, which is
+     *  left unchanged. */
+    static long count(Board board, int depth) {
+        return count(board, depth, new int[depth + 1][Board.MAX_MOVES]);
+    }
+
+    /** Return the number of positions DEPTH moves from BOARD, which is
+     *  left unchanged, using MOVES[DEPTH] to hold the moves from BOARD
+     *  and lower rows for those below it. */
+    private static long count(Board board, int depth, int[][] moves) {
+        if (depth == 0) {
+            return 1;
+        }
+        int numMoves = rootMoves(board, moves[depth]);
+        if (depth == 1) {
+            return numMoves;
+        }
+        long total = 0;
+        for (int i = 0; i < numMoves; i += 1) {
+            board.makeMove(moves[depth][i]);
+            total += count(board, depth - 1, moves);
+            board.undo();
+        }
+        return total;
+    }
+
+    /** Store the codes of the moves from BOARD in MOVES, and return how
+     *  many there are: the moves of Board.generateMoves, or a pass if
+     *  there are none and the game is not over. */
+    private static int rootMoves(Board board, int[] moves) {
+        if (board.getWinner() != null) {
+            return 0;
+        }
+        int numMoves = board.generateMoves(moves);
+        if (numMoves == 0) {
+            moves[0] = Move.PASS_CODE;
+            numMoves = 1;
+        }
+        return numMoves;
+    }
+
+    /** Return the total number of positions counted. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the moves from the starting position, in the order of
+     *  counts(). */
+    List<Move> moves() {
+        return _moves;
+    }
+
+    /** Return the number of positions counted below each of moves(). */
+    long[] counts() {
+        return _counts;
+    }
+
+    /** Send a report of the results to OUT, one line at a time, with the
+     *  count below each root move first iff DIVIDE. */
+    void report(boolean divide, Consumer<String> out) {
+        if (divide) {
+            for (int i = 0; i < _counts.length; i += 1) {
+                out.accept(String.format("%s: %d", _moves.get(i),
+                                         _counts[i]));
+            }
+        }
+        out.accept(String.format("perft %d: %d positions in %d msec "
+                                 + "(%.0f per second)", _depth, _nodes,
+                                 _nanos / 1_000_000,
+                                 _nodes * 1e9 / Math.max(1, _nanos)));
+    }
+
+    /** Depth of the count. */
+    private final int _depth;
+    /** Moves from the starting position. */
+    private final List<Move> _moves;
+    /** Positions counted below each of _moves. */
+    private final long[] _counts;
+    /** Total positions counted. */
+    private long _nodes;
+    /** Duration of the count in nanoseconds. */
+    private final long _nanos;
+}
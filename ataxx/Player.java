@@ -4,6 +4,11 @@
 
 package ataxx;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /** A generic Ataxx Player.
  *  @author P. N. Hilfinger
  */
@@ -30,6 +35,11 @@ abstract class Player {
         return _game;
     }
 
+    /** Return the settings of the game I am playing in. */
+    GameContext context() {
+        return _game.context();
+    }
+
     /** Return the board I am playing on. The caller should not modify this
      *  board. */
     Board getBoard() {
@@ -40,6 +50,67 @@ abstract class Player {
      *  board.whoseMove() == myColor() and that the game is not over. */
     abstract String getMove();
 
+    /** Stop any computation I am doing in the background, because the
+     *  game is over, or I am being replaced.  By default, does nothing. */
+    void stopThinking() {
+    }
+
+    /** Wait for SEARCH to finish, meanwhile handling commands the user
+     *  enters (see Game.pollCommand).  "stop" ends the search at once,
+     *  so that it yields the best move found so far.  "undo", "new", and
+     *  "quit" also stop it, and the first of them is returned, to be
+     *  executed instead of a move.  Other commands are deferred until
+     *  after the move.  Returns null if no such command arrived.
+     *  Calls STOP to stop the search.  Commands are checked every
+     *  POLL_MILLIS milliseconds. */
+    String awaitSearch(Future<?> search, Runnable stop) {
+        String interruption = null;
+        while (!search.isDone()) {
+            String cmnd = game().pollCommand();
+            if (cmnd != null) {
+                if (interrupts(cmnd, stop) && interruption == null) {
+                    interruption = cmnd;
+                } else {
+                    game().deferCommand(cmnd);
+                }
+                continue;
+            }
+            try {
+                search.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException excp) {
+                /* Check for commands again. */
+            } catch (InterruptedException | ExecutionException excp) {
+                break;
+            }
+        }
+        return interruption;
+    }
+
+    /** Stop the current search by calling STOP if CMND, entered during
+     *  it, calls for that (see awaitSearch), and return true iff CMND
+     *  should be executed instead of a move. */
+    private boolean interrupts(String cmnd, Runnable stop) {
+        Command.Type type;
+        try {
+            type = Command.parseCommand(cmnd).commandType();
+        } catch (GameException excp) {
+            return false;
+        }
+        switch (type) {
+        case STOP:
+            stop.run();
+            return false;
+        case UNDO: case NEW: case QUIT:
+            stop.run();
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /** Milliseconds between checks for commands during a search. */
+    static final long POLL_MILLIS = 5;
+
     /** The game I am playing in. */
     private final Game _game;
     /** The color of my pieces. */
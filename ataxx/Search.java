@@ -0,0 +1,620 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ataxx.PieceColor.*;
+import static ataxx.TranspositionTable.*;
+
+/** One thread's share of an Engine's search: an iteratively deepened
+ *  alpha-beta minimax search of its own copy of the position, sharing
+ *  the Engine's transposition table and stopping when the Engine says
+ *  to.
+ *  @author Zac Nelson
+ */
+class Search {
+
+    /** Maximum minimax search depth before going to static evaluation. */
+    static final int MAX_DEPTH = 64;
+    /** A position magnitude indicating a win (for red if positive, blue
+     *  if negative). */
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 20 - MAX_DEPTH;
+    /** A magnitude greater than a normal value. */
+    static final int INFTY = Integer.MAX_VALUE;
+    /** Number of positions searched between checks of the Engine's
+     *  limits. */
+    static final int CHECK_INTERVAL = 1024;
+
+    /** Move-ordering ranks: the best move from an earlier search, then
+     *  for each captured piece, then for the killer moves. */
+    private static final long HINT_RANK = 1L << 40,
+        CAPTURE_RANK = 1L << 20,
+        FIRST_KILLER_RANK = 1L << 18, SECOND_KILLER_RANK = 1L << 17;
+    /** Aspiration windows: the first iteration depth that uses them, and
+     *  their initial and greatest half-widths, in pieces. */
+    private static final int ASPIRATION_DEPTH = 4, ASPIRATION_WINDOW = 1,
+        MAX_ASPIRATION_WINDOW = 8;
+    /** Late-move reductions: the least remaining depth at which they are
+     *  made, the number of moves at a node searched first at full depth,
+     *  and the largest gain in piece difference (see negamax) a reduced
+     *  move may have. */
+    private static final int LMR_DEPTH = 3, LMR_MOVES = 4, LMR_GAIN = 2;
+    /** Futility pruning: the greatest remaining depth at which it is
+     *  done, and the margins, in pieces per ply of remaining depth, by
+     *  which the static value must miss the window. */
+    private static final int FUTILITY_DEPTH = 2, FUTILITY_MARGIN = 3,
+        REVERSE_FUTILITY_MARGIN = 4;
+    /** Maximum history score of a move (kept below the killer ranks). */
+    private static final int MAX_HISTORY = (1 << 16) - 1;
+
+    /** A search by ENGINE, using TABLE as its transposition table.  ID
+     *  distinguishes the threads of one Engine; 0 is the main thread.
+     *  An Engine keeps its Searches from one move to the next, so that
+     *  their buffers are allocated only once. */
+    Search(Engine engine, TranspositionTable table, int id) {
+        _engine = engine;
+        _table = table;
+        _id = id;
+    }
+
+    /** Prepare to search BOARD, which becomes my private property,
+     *  forgetting the results and statistics of any previous search. */
+    void reset(Board board) {
+        _board = board;
+        _bestMove = 0;
+        _bestPV = new int[0];
+        _bestScore = _depthReached = 0;
+        _aborted = false;
+        _nodes = _ttProbes = _ttHits = _ttCutoffs = _ttCollisions = 0;
+        _reductions = _futilityPrunes = 0;
+        Arrays.fill(_nodesByDepth, 0);
+        Arrays.fill(_history, 0);
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, 0);
+        }
+    }
+
+    /** Search by iterative deepening from depth FIRSTDEPTH to at most
+     *  MAXDEPTH, until the search is stopped or a win or loss is proven.
+     *  If MAIN, this is the main thread, which also stops the search once
+     *  another iteration seems unlikely to finish in time; otherwise, this
+     *  is a helper, which tries the root moves in an order rotated
+     *  according to my id so as to diverge from the other threads. */
+    void iterate(int firstDepth, int maxDepth, boolean main) {
+        int sense = _board.whoseMove() == RED ? 1 : -1;
+        _main = main;
+        _rootRotation = main ? 0 : _id;
+        int[] scores = new int[maxDepth + 1];
+        for (int depth = firstDepth; depth <= maxDepth; depth += 1) {
+            int score = aspirationSearch(depth,
+                                         scores[Math.max(0, depth - 2)]);
+            scores[depth] = score;
+            if (_aborted) {
+                break;
+            }
+            if (depth < _nodesByDepth.length) {
+                _nodesByDepth[depth] = _nodes;
+            }
+            _bestMove = _pv[0][0];
+            _bestPV = Arrays.copyOf(_pv[0], _pvLength[0]);
+            _bestScore = sense * score;
+            _depthReached = depth;
+            if (main) {
+                _engine.iterationDone();
+            }
+            if (Math.abs(score) >= WINNING_VALUE
+                || (main && !_engine.timeForAnotherIteration())) {
+                break;
+            }
+        }
+    }
+
+    /** Search my position to depth DEPTH, returning its value for the
+     *  player to move.  Since an iteration's value is usually close to
+     *  that of the iteration two plies shallower, PREVIOUS, the first
+     *  search uses a narrow (aspiration) window around PREVIOUS, which is
+     *  widened in the direction of a failure until the value falls inside
+     *  it.  (Values alternate between odd and even depths, since the
+     *  side that moves last gains pieces, so the last iteration's value
+     *  is a poorer guess.)  Early iterations and won or lost positions
+     *  use a full window. */
+    private int aspirationSearch(int depth, int previous) {
+        if (depth < ASPIRATION_DEPTH || Math.abs(previous) >= WINNING_VALUE
+            || !_engine.aspiration()) {
+            return negamax(_board, depth, 0, -INFTY, INFTY, true);
+        }
+        int delta = ASPIRATION_WINDOW;
+        int alpha = previous - delta, beta = previous + delta;
+        while (true) {
+            int score = negamax(_board, depth, 0, alpha, beta, true);
+            if (_aborted) {
+                return 0;
+            }
+            delta *= 2;
+            if (score <= alpha) {
+                alpha = delta > MAX_ASPIRATION_WINDOW ? -INFTY
+                    : previous - delta;
+            } else if (score >= beta) {
+                beta = delta > MAX_ASPIRATION_WINDOW ? INFTY
+                    : previous + delta;
+            } else {
+                return score;
+            }
+        }
+    }
+
+    /** Return the principal variation of my deepest completed iteration:
+     *  the line of play it expects, starting with bestMove(). */
+    List<Move> principalVariation() {
+        List<Move> result = new ArrayList<>();
+        for (int code : _bestPV) {
+            result.add(Move.fromCode(code));
+        }
+        return result;
+    }
+
+    /** Return the best move found by my deepest completed iteration, or
+     *  null if none completed. */
+    Move bestMove() {
+        return _bestMove == 0 ? null : Move.fromCode(_bestMove);
+    }
+
+    /** Return the (red-relative) score of bestMove(). */
+    int bestScore() {
+        return _bestScore;
+    }
+
+    /** Return the depth of my deepest completed iteration. */
+    int depthReached() {
+        return _depthReached;
+    }
+
+    /** Record as the result of my search that the best move has code
+     *  MOVE and red-relative score SCORE, according to a search of depth
+     *  DEPTH made earlier. */
+    void setResult(int move, int score, int depth) {
+        _bestMove = move;
+        _bestPV = new int[] { move };
+        _bestScore = score;
+        _depthReached = depth;
+    }
+
+    /** Return the number of positions I have visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the total number of positions I had visited when I finished
+     *  the iteration of depth DEPTH, or 0 if I did not finish it. */
+    long nodesByDepth(int depth) {
+        return depth < _nodesByDepth.length ? _nodesByDepth[depth] : 0;
+    }
+
+    /** Return the number of transposition-table probes I have made. */
+    long ttProbes() {
+        return _ttProbes;
+    }
+
+    /** Return the number of my probes that found an entry. */
+    long ttHits() {
+        return _ttHits;
+    }
+
+    /** Return the number of positions I did not search because of a
+     *  transposition-table entry. */
+    long ttCutoffs() {
+        return _ttCutoffs;
+    }
+
+    /** Return the number of entries for other positions I overwrote. */
+    long ttCollisions() {
+        return _ttCollisions;
+    }
+
+    /** Return the number of moves I searched to reduced depth. */
+    long reductions() {
+        return _reductions;
+    }
+
+    /** Return the number of moves I pruned as futile. */
+    long futilityPrunes() {
+        return _futilityPrunes;
+    }
+
+    /** List of all legal moves for the player whose turn it is.
+     * @param board
+     * @Return List
+     **/
+    static ArrayList<Move> legalMoves(Board board) {
+        ArrayList<Move> legalMoves = new ArrayList<Move>();
+        long empty = board.emptySquares();
+        for (long from = board.pieces(board.whoseMove()); from != 0;
+             from &= from - 1) {
+            int bit = Long.numberOfTrailingZeros(from);
+            int sq = Board.squareIndex(bit);
+            long to = (Board.neighbors(bit) | Board.jumpRing(bit)) & empty;
+            for (; to != 0; to &= to - 1) {
+                legalMoves.add(Move.move(sq, Board.squareIndex(
+                        Long.numberOfTrailingZeros(to))));
+            }
+        }
+        return legalMoves;
+    }
+
+    /** Return the value of BOARD, PLY plies from the root, for the
+     *  player to move, searching DEPTH plies further, within the window
+     *  ALPHA .. BETA: the result is exact if it lies strictly inside the
+     *  window, and otherwise a bound on the value that is at most ALPHA
+     *  or at least BETA.  This is a principal-variation search: iff
+     *  PVNODE, BOARD is on the expected line of play, and its first move
+     *  is searched with the full window and the others with a null
+     *  window (BETA = ALPHA + 1) that just tests whether they are worse,
+     *  and are searched again with the full window if not.  The line of
+     *  play found from a PV node is left in _pv[PLY].  Near the root, the
+     *  search also consults and updates the Engine's analysis cache, if
+     *  any, whose exact results end even the lines of PV nodes, since
+     *  they come from earlier, deeper searches.  If the search is
+     *  stopped, sets _aborted and returns a meaningless value. */
+    private int negamax(Board board, int depth, int ply, int alpha,
+                        int beta, boolean pvNode) {
+        _pvLength[ply] = ply;
+        if (outOfBudget()) {
+            return 0;
+        }
+        if (depth == 0 || board.getWinner() != null) {
+            /* We use WINNING_VALUE + depth as the winning value so as to
+             * favor wins that happen sooner rather than later (depth is
+             * larger the fewer moves have been made). */
+            int score = staticScore(board, WINNING_VALUE + depth);
+            return board.whoseMove() == RED ? score : -score;
+        }
+
+        Symmetry sym = _engine.symmetricHashing()
+            ? board.canonicalSymmetry() : Symmetry.IDENTITY;
+        long key = board.key(sym);
+        long entry = _table.probe(key);
+        _ttProbes += 1;
+        if (entry != 0) {
+            _ttHits += 1;
+        }
+        int hint = entry != 0 && move(entry) != 0
+            ? sym.inverse().applyCode(move(entry)) : 0;
+        AnalysisCache cache = _engine.cache();
+        boolean cached = cache != null && ply <= AnalysisCache.MAX_PLY
+            && depth >= AnalysisCache.MIN_DEPTH;
+        if (cached) {
+            long persistent = cache.probe(board);
+            if (persistent != 0
+                && (entry == 0 || depth(persistent) > depth(entry))) {
+                entry = persistent;
+                hint = move(persistent);
+                if (pvNode && ply > 0 && depth(persistent) >= depth
+                    && bound(persistent) == EXACT) {
+                    _ttCutoffs += 1;
+                    if (hint != 0) {
+                        _pv[ply][ply] = hint;
+                        _pvLength[ply] = ply + 1;
+                    }
+                    return score(persistent);
+                }
+            }
+        }
+        if (entry != 0 && !pvNode && depth(entry) >= depth) {
+            int score = score(entry);
+            int bound = bound(entry);
+            if (bound == EXACT || (bound == LOWER && score >= beta)
+                || (bound == UPPER && score <= alpha)) {
+                _ttCutoffs += 1;
+                return score;
+            }
+        }
+        int alpha0 = alpha;
+
+        boolean prune = !pvNode && depth <= FUTILITY_DEPTH
+            && _engine.futilityPruning()
+            && Math.abs(alpha) < WINNING_VALUE - MAX_DEPTH
+            && Math.abs(beta) < WINNING_VALUE - MAX_DEPTH;
+        int eval = 0;
+        if (prune) {
+            eval = board.whoseMove() == RED
+                ? staticScore(board, 0) : -staticScore(board, 0);
+            if (eval - REVERSE_FUTILITY_MARGIN * depth >= beta) {
+                return eval - REVERSE_FUTILITY_MARGIN * depth;
+            }
+            prune = eval + FUTILITY_MARGIN * (depth - 1) <= alpha;
+        }
+
+        int[] moves = _moves[ply];
+        int numMoves = _engine.cloneDedup() ? board.generateMoves(moves)
+            : board.generateAllMoves(moves);
+        if (numMoves == 0) {
+            moves[0] = Move.PASS_CODE;
+            numMoves = 1;
+        } else {
+            if (ply == 0 && _bestMove != 0) {
+                hint = _bestMove;
+            }
+            orderMoves(board, numMoves, hint, ply);
+            if (ply == 0 && _rootRotation != 0) {
+                rotate(moves, numMoves, _rootRotation % numMoves);
+            }
+        }
+
+        long opponents = board.pieces(board.whoseMove().opposite());
+        boolean reduce = depth >= LMR_DEPTH && _engine.lateMoveReductions();
+        int best = 0;
+        int bestScore = -INFTY;
+        for (int i = 0; i < numMoves; i += 1) {
+            int m = moves[i];
+            int gain = 0;
+            if (m != Move.PASS_CODE) {
+                int from = m >>> Move.CODE_SHIFT, to = m & Move.CODE_MASK;
+                long captures = Board.neighbors(to) & opponents;
+                boolean extend = (Board.neighbors(from) & (1L << to)) != 0;
+                gain = 2 * Long.bitCount(captures) + (extend ? 1 : 0);
+            }
+            /* A move that ends the game has a winning or losing value,
+             * which no heuristic margin bounds, so it is never pruned. */
+            if (prune && i > 0
+                && eval + gain + FUTILITY_MARGIN * (depth - 1) <= alpha
+                && !endsGame(board, m)) {
+                _futilityPrunes += 1;
+                bestScore = Math.max(bestScore, eval + gain);
+                continue;
+            }
+            board.makeMove(m);
+            int score;
+            if (i == 0) {
+                score = -negamax(board, depth - 1, ply + 1, -beta, -alpha,
+                                 pvNode);
+            } else {
+                score = alpha + 1;
+                if (reduce && i >= LMR_MOVES && gain <= LMR_GAIN) {
+                    int reduction = i >= 3 * LMR_MOVES && depth > LMR_DEPTH
+                        ? 2 : 1;
+                    _reductions += 1;
+                    score = -negamax(board, depth - 1 - reduction, ply + 1,
+                                     -alpha - 1, -alpha, false);
+                }
+                if (score > alpha) {
+                    score = -negamax(board, depth - 1, ply + 1, -alpha - 1,
+                                     -alpha, false);
+                }
+                if (score > alpha && score < beta) {
+                    score = -negamax(board, depth - 1, ply + 1, -beta,
+                                     -alpha, true);
+                }
+            }
+            board.undo();
+            if (_aborted) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = m;
+                if (score > alpha) {
+                    alpha = score;
+                    if (pvNode) {
+                        updatePV(ply, m);
+                    }
+                    if (alpha >= beta) {
+                        if (m != Move.PASS_CODE) {
+                            recordCutoff(m, depth, ply);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = bestScore <= alpha0 ? UPPER
+            : bestScore >= beta ? LOWER : EXACT;
+        if (_table.store(key, depth, bound, bestScore,
+                         best == 0 ? 0 : sym.applyCode(best))) {
+            _ttCollisions += 1;
+        }
+        if (cached) {
+            cache.store(board, depth, bound, bestScore, best);
+        }
+        return bestScore;
+    }
+
+    /** Record in _pv[PLY] the line of play consisting of the move with
+     *  code MOVE followed by the line in _pv[PLY + 1]. */
+    private void updatePV(int ply, int move) {
+        _pv[ply][ply] = move;
+        int length = _pvLength[ply + 1];
+        System.arraycopy(_pv[ply + 1], ply + 1, _pv[ply], ply + 1,
+                         length - ply - 1);
+        _pvLength[ply] = length;
+    }
+
+    /** Sort the first N moves in _moves[PLY], the legal moves in BOARD at
+     *  PLY plies from the root, so that those most likely to produce a
+     *  cutoff come first.  The move with code HINT, if present, goes
+     *  first: it is the best move found by an earlier search of this
+     *  position.  The rest are ranked by the number of opposing pieces
+     *  they capture, then by whether they are killer moves at this ply,
+     *  then by their history scores, and then extends before jumps.  Does
+     *  nothing if ordering is turned off. */
+    private void orderMoves(Board board, int n, int hint, int ply) {
+        if (!_engine.moveOrdering()) {
+            return;
+        }
+        int[] moves = _moves[ply];
+        long[] ranks = _ranks[ply];
+        long opponents = board.pieces(board.whoseMove().opposite());
+        for (int i = 0; i < n; i += 1) {
+            int m = moves[i];
+            int from = m >>> Move.CODE_SHIFT, to = m & Move.CODE_MASK;
+            long rank;
+            if (m == hint) {
+                rank = HINT_RANK;
+            } else {
+                rank = (long) Long.bitCount(Board.neighbors(to) & opponents)
+                    * CAPTURE_RANK;
+                if (m == _killers[ply][0]) {
+                    rank += FIRST_KILLER_RANK;
+                } else if (m == _killers[ply][1]) {
+                    rank += SECOND_KILLER_RANK;
+                }
+                rank += _history[m];
+            }
+            boolean extend = (Board.neighbors(from) & (1L << to)) != 0;
+            ranks[i] = 2 * rank + (extend ? 1 : 0);
+        }
+        for (int i = 1; i < n; i += 1) {
+            long rank = ranks[i];
+            int m = moves[i];
+            int j;
+            for (j = i; j > 0 && ranks[j - 1] < rank; j -= 1) {
+                ranks[j] = ranks[j - 1];
+                moves[j] = moves[j - 1];
+            }
+            ranks[j] = rank;
+            moves[j] = m;
+        }
+    }
+
+    /** Rotate the first N elements of MOVES left by K places, in place. */
+    private static void rotate(int[] moves, int n, int k) {
+        reverse(moves, 0, k);
+        reverse(moves, k, n);
+        reverse(moves, 0, n);
+    }
+
+    /** Reverse MOVES[FROM .. TO-1] in place. */
+    private static void reverse(int[] moves, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i += 1, j -= 1) {
+            int t = moves[i];
+            moves[i] = moves[j];
+            moves[j] = t;
+        }
+    }
+
+    /** Record that the move with code MOVE caused a cutoff in a search of
+     *  depth DEPTH at PLY plies from the root: make it the first killer
+     *  move at that ply, and raise its history score. */
+    private void recordCutoff(int move, int depth, int ply) {
+        if (move != _killers[ply][0]) {
+            _killers[ply][1] = _killers[ply][0];
+            _killers[ply][0] = move;
+        }
+        _history[move] = Math.min(MAX_HISTORY, _history[move] + depth * depth);
+    }
+
+    /** Return true iff the move with code MOVE, which is legal on BOARD,
+     *  ends the game: it captures every opposing piece, makes the last
+     *  jump allowed, or leaves no empty square within reach of either
+     *  player (though some may remain).  BOARD is unchanged. */
+    static boolean endsGame(Board board, int move) {
+        if (move == Move.PASS_CODE) {
+            return false;
+        }
+        int from = move >>> Move.CODE_SHIFT, to = move & Move.CODE_MASK;
+        long mine = board.pieces(board.whoseMove()),
+            theirs = board.pieces(board.whoseMove().opposite());
+        long captures = Board.neighbors(to) & theirs;
+        boolean extend = (Board.neighbors(from) & (1L << to)) != 0;
+        long vacated = extend ? 0 : 1L << from;
+        mine = (mine | captures | (1L << to)) & ~vacated;
+        theirs &= ~captures;
+        long empty = (board.emptySquares() & ~(1L << to)) | vacated;
+        return theirs == 0
+            || (!extend && board.numJumps() == Board.JUMP_LIMIT - 1)
+            || ((Board.reachOf(mine) | Board.reachOf(theirs)) & empty) == 0;
+    }
+
+    /** Count one more searched position and return true iff the search
+     *  has been stopped, in which case _aborted is set.  The Engine's
+     *  limits are checked only every CHECK_INTERVAL positions.  The main
+     *  thread ignores a stop until it has completed its first iteration
+     *  (which is cheap), so that it always has a searched move to
+     *  return. */
+    private boolean outOfBudget() {
+        _nodes += 1;
+        if (!_aborted
+            && (_nodes % CHECK_INTERVAL == 0
+                ? !_engine.continueSearch(CHECK_INTERVAL)
+                : _engine.stopped())
+            && (!_main || _depthReached > 0)) {
+            _aborted = true;
+        }
+        return _aborted;
+    }
+
+    /** Return a heuristic value for BOARD.  This value is +- WINNINGVALUE in
+     *  won positions, and 0 for ties. */
+    static int staticScore(Board board, int winningValue) {
+        PieceColor winner = board.getWinner();
+        if (winner != null) {
+            return switch (winner) {
+            case RED -> winningValue;
+            case BLUE -> -winningValue;
+            default -> 0;
+            };
+        }
+
+        return board.redPieces() - board.bluePieces();
+    }
+
+    /** The Engine whose search I am part of. */
+    private final Engine _engine;
+    /** My copy of the position being searched. */
+    private Board _board;
+    /** The transposition table shared by all threads of the search. */
+    private final TranspositionTable _table;
+    /** My thread number. */
+    private final int _id;
+
+    /** True iff I am the main thread of the current search. */
+    private boolean _main;
+    /** Number of places by which to rotate the list of root moves. */
+    private int _rootRotation;
+    /** Triangular table of principal variations: _pv[p][p ..
+     *  _pvLength[p]-1] holds the codes of the line of play found by the
+     *  current iteration from its PV node at ply p. */
+    private final int[][] _pv = new int[MAX_DEPTH + 2][MAX_DEPTH + 2];
+    /** See _pv. */
+    private final int[] _pvLength = new int[MAX_DEPTH + 2];
+    /** Codes of the principal variation of my deepest completed
+     *  iteration. */
+    private int[] _bestPV = new int[0];
+    /** Code of the best move from my deepest completed iteration, or 0 if
+     *  none. */
+    private int _bestMove;
+    /** Score of _bestMove. */
+    private int _bestScore;
+    /** Depth of my deepest completed iteration. */
+    private int _depthReached;
+    /** True iff my current iteration was cut short. */
+    private boolean _aborted;
+
+    /** Buffers for the legal moves at each ply, as codes, so that the
+     *  search allocates no storage as it goes. */
+    private final int[][] _moves = new int[MAX_DEPTH + 1][Board.MAX_MOVES];
+    /** Buffers for the move-ordering ranks of the moves in _moves. */
+    private final long[][] _ranks = new long[MAX_DEPTH + 1][Board.MAX_MOVES];
+    /** Codes of two killer moves for each ply: moves that recently caused
+     *  a cutoff in a sibling position. */
+    private final int[][] _killers = new int[MAX_DEPTH + 1][2];
+    /** History scores of moves, indexed by move code: the sum of the
+     *  squared depths of the searches in which they caused cutoffs. */
+    private final int[] _history = new int[Move.PASS_CODE];
+
+    /** Number of positions visited. */
+    private long _nodes;
+    /** _nodesByDepth[d] is the value of _nodes when the iteration of depth
+     *  d finished. */
+    private final long[] _nodesByDepth = new long[MAX_DEPTH + 1];
+    /** Transposition-table statistics: probes, hits, cutoffs, and
+     *  collisions. */
+    private long _ttProbes, _ttHits, _ttCutoffs, _ttCollisions;
+    /** Numbers of late-move reductions and of futile moves pruned. */
+    private long _reductions, _futilityPrunes;
+}
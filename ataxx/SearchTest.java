@@ -0,0 +1,163 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static ataxx.PieceColor.*;
+
+/** Tests of the heuristic search (see Search): with its pruning
+ *  heuristics off, its principal-variation search, aspiration windows,
+ *  and transposition table must find the same values as plain minimax.
+ *  @author Zac Nelson
+ */
+public class SearchTest {
+
+    /** A position in which red's extend a7-b7 ends the game, though an
+     *  empty square remains, because neither player can reach g1. */
+    private static final String ISOLATED =
+        "r1bxxxb/xxxxxxx/rxxxxxx/xxxxxxx/xxxxxxx/xxxxxxx/xxxxxx1 r 0";
+
+    /** Mostly blocked positions, in the notation of Board.toFen, small
+     *  enough for minimax to DEEP_DEPTH. */
+    private static final String[] SMALL = {
+        "r2bxxx/1r2xxx/2b1xxx/b2rxxx/xxxxxxx/xxxxxxx/xxxxxxx r 0",
+        "xxxxxxx/xxxxxxx/xxx1rb1/xxxb2r/xxx2b1/xxxr1b1/xxxxxxx b 0",
+        "xxxxxxx/xx1r1xx/xxb1bxx/xx1r1xx/xxb2xx/xxxxxxx/xxxxxxx r 3",
+        "rb2xxx/1r1bxxx/b1r1xxx/xxxxxxx/xxxxxxx/xxxxxxx/xxxxxxx b 0",
+        ISOLATED,
+    };
+
+    /** Return the value of BOARD for the player to move, searching DEPTH
+     *  plies, by minimax over every line of play, scoring positions as
+     *  Search does. */
+    private static int minimax(Board board, int depth) {
+        if (depth == 0 || board.getWinner() != null) {
+            int score = Search.staticScore(board,
+                                           Search.WINNING_VALUE + depth);
+            return board.whoseMove() == RED ? score : -score;
+        }
+        List<Move> moves = Search.legalMoves(board);
+        if (moves.isEmpty()) {
+            moves.add(Move.pass());
+        }
+        int best = -Search.INFTY;
+        for (Move move : moves) {
+            board.makeMove(move);
+            best = Math.max(best, -minimax(board, depth - 1));
+            board.undo();
+        }
+        return best;
+    }
+
+    /** Return the initial position and positions a few random moves from
+     *  it, made with a generator seeded with SEED. */
+    private static List<Board> openings(long seed) {
+        Random random = new Random(seed);
+        List<Board> result = new ArrayList<>();
+        result.add(new Board());
+        for (int k = 0; k < NUM_OPENINGS; k += 1) {
+            Board board = new Board();
+            for (int n = 1 + random.nextInt(OPENING_MOVES); n > 0; n -= 1) {
+                List<Move> moves = Search.legalMoves(board);
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            result.add(Board.fromFen(board.toFen()));
+        }
+        return result;
+    }
+
+    /** Check that a search of each of POSITIONS to DEPTH finds the
+     *  minimax value, with aspiration windows iff ASPIRATION, and with
+     *  late-move reductions and futility pruning off.  A search that
+     *  proves a win or loss stops early, at the depth that proved it. */
+    private static void checkValues(List<Board> positions, int depth,
+                                    boolean aspiration) {
+        Engine engine = new Engine(1, 1);
+        engine.setEndgameEmpties(0);
+        engine.setLateMoveReductions(false);
+        engine.setFutilityPruning(false);
+        engine.setAspiration(aspiration);
+        for (Board board : positions) {
+            if (Search.legalMoves(board).size() < 2) {
+                continue;
+            }
+            int sense = board.whoseMove() == RED ? 1 : -1;
+            engine.clear();
+            engine.findMove(board, 0, 0, depth);
+            int reached = engine.depthReached();
+            assertTrue("wrong depth: " + board.toFen(), reached == depth
+                       || Math.abs(engine.score()) >= Search.WINNING_VALUE);
+            assertEquals("wrong value: " + board.toFen(),
+                         minimax(board, reached), sense * engine.score());
+        }
+    }
+
+    @Test
+    public void testOpenings() {
+        List<Board> positions = openings(1);
+        checkValues(positions, OPENING_DEPTH, true);
+        checkValues(positions, OPENING_DEPTH, false);
+    }
+
+    @Test
+    public void testSmallBoards() {
+        List<Board> positions = new ArrayList<>();
+        for (String fen : SMALL) {
+            positions.add(Board.fromFen(fen));
+        }
+        for (int depth = 1; depth <= DEEP_DEPTH; depth += 1) {
+            checkValues(positions, depth, true);
+        }
+        checkValues(positions, DEEP_DEPTH, false);
+    }
+
+    @Test
+    public void testEndsGame() {
+        Board isolated = Board.fromFen(ISOLATED);
+        assertTrue("isolated ending missed",
+                   Search.endsGame(isolated, Move.move("a7-b7").code()));
+        assertFalse("jump ends game",
+                    Search.endsGame(isolated, Move.move("a5-b7").code()));
+        Random random = new Random(1);
+        List<Board> positions = openings(2);
+        for (String fen : SMALL) {
+            positions.add(Board.fromFen(fen));
+        }
+        for (Board start : positions) {
+            Board board = new Board(start);
+            while (board.getWinner() == null) {
+                List<Move> moves = Search.legalMoves(board);
+                if (moves.isEmpty()) {
+                    moves.add(Move.pass());
+                }
+                for (Move move : moves) {
+                    boolean ends = Search.endsGame(board, move.code());
+                    board.makeMove(move);
+                    assertEquals("wrong ending: " + move + " in "
+                                 + start.toFen(), board.getWinner() != null,
+                                 ends);
+                    board.undo();
+                }
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
+    /** Number of random openings tested. */
+    private static final int NUM_OPENINGS = 3;
+    /** Greatest number of moves in a random opening. */
+    private static final int OPENING_MOVES = 4;
+    /** Depth to which the openings are searched: the least at which
+     *  searches use aspiration windows. */
+    private static final int OPENING_DEPTH = 4;
+    /** Greatest depth to which the small positions are searched. */
+    private static final int DEEP_DEPTH = 5;
+}
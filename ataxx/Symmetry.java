@@ -0,0 +1,91 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+/** The eight symmetries of the square board (the dihedral group D4):
+ *  the rotations and reflections that map it onto itself.  Since the
+ *  rules treat all directions alike, and the starting pieces and the
+ *  blocks placed by Board.setBlock are symmetric under reflection, a
+ *  position and its images under these transformations are equally
+ *  good for the player to move, and the images of its best moves are
+ *  best in them.  Each symmetry transposes the board (exchanging columns
+ *  and rows) or not, and then reverses the order of the columns or rows
+ *  or both, or neither.
+ *  @author Zac Nelson
+ */
+enum Symmetry {
+
+    IDENTITY(false, false, false),
+    FLIP_COLUMNS(false, true, false),
+    FLIP_ROWS(false, false, true),
+    ROTATE_180(false, true, true),
+    TRANSPOSE(true, false, false),
+    ROTATE_LEFT(true, true, false),
+    ROTATE_RIGHT(true, false, true),
+    ANTI_TRANSPOSE(true, true, true);
+
+    /** The symmetry that transposes the board iff TRANSPOSE, and then
+     *  reverses the columns iff FLIPCOLUMNS and the rows iff
+     *  FLIPROWS. */
+    Symmetry(boolean transpose, boolean flipColumns, boolean flipRows) {
+        for (int r = 0; r < Board.SIDE; r += 1) {
+            for (int c = 0; c < Board.SIDE; c += 1) {
+                int c1 = transpose ? r : c, r1 = transpose ? c : r;
+                if (flipColumns) {
+                    c1 = Board.SIDE - 1 - c1;
+                }
+                if (flipRows) {
+                    r1 = Board.SIDE - 1 - r1;
+                }
+                _bits[r * Board.SIDE + c] = r1 * Board.SIDE + c1;
+            }
+        }
+    }
+
+    /** Return the bit index (see Board) of the image of the square with
+     *  bit index BIT. */
+    int bit(int bit) {
+        return _bits[bit];
+    }
+
+    /** Return the image of the bitboard BITS. */
+    long apply(long bits) {
+        long result = 0;
+        for (; bits != 0; bits &= bits - 1) {
+            result |= 1L << _bits[Long.numberOfTrailingZeros(bits)];
+        }
+        return result;
+    }
+
+    /** Return the code (see Move.code) of the image of the move with code
+     *  CODE. */
+    int applyCode(int code) {
+        if (code == Move.PASS_CODE) {
+            return code;
+        }
+        return (_bits[code >>> Move.CODE_SHIFT] << Move.CODE_SHIFT)
+            | _bits[code & Move.CODE_MASK];
+    }
+
+    /** Return the image of MOVE. */
+    Move apply(Move move) {
+        return Move.fromCode(applyCode(move.code()));
+    }
+
+    /** Return the symmetry that undoes me. */
+    Symmetry inverse() {
+        switch (this) {
+        case ROTATE_LEFT:
+            return ROTATE_RIGHT;
+        case ROTATE_RIGHT:
+            return ROTATE_LEFT;
+        default:
+            return this;
+        }
+    }
+
+    /** Bit indices of the images of the squares, indexed by bit index. */
+    private final int[] _bits = new int[Board.NUM_SQUARES];
+}
@@ -8,6 +8,8 @@ import java.io.Reader;
 import java.util.Scanner;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /** A CommandSource that takes commands from a Reader.
  *  @author P. N. Hilfinger
@@ -24,24 +26,74 @@ class TextSource implements CommandSource {
         _inp = new Scanner(readers.remove(0));
     }
 
+    /** A source of commands read from the concatenation of the content of
+     *  READERS.  If INTERACTIVE, lines are read ahead on a separate
+     *  thread as the user types them, so that pollCommand can return
+     *  them. */
+    TextSource(List<Reader> readers, boolean interactive) {
+        this(readers);
+        if (interactive) {
+            _lines = new LinkedBlockingQueue<>();
+            Thread reader = new Thread(() -> {
+                String line;
+                do {
+                    line = nextLine();
+                    _lines.add(line == null ? END : line);
+                } while (line != null);
+            }, "ataxx-input");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
     @Override
     public String getCommand(String prompt) {
         if (prompt != null) {
             System.out.print(prompt);
             System.out.flush();
         }
-        if (_inp.hasNextLine()) {
-            return _inp.nextLine();
-        } else if (!_readers.isEmpty()) {
-            _inp = new Scanner(_readers.remove(0));
-            return getCommand(prompt);
-        } else {
+        if (_lines == null) {
+            return nextLine();
+        }
+        try {
+            String line = _lines.take();
+            if (line == END) {
+                _lines.add(END);
+                return null;
+            }
+            return line;
+        } catch (InterruptedException excp) {
+            throw new Error("unexpected interrupt");
+        }
+    }
+
+    @Override
+    public String pollCommand() {
+        if (_lines == null || _lines.peek() == END) {
             return null;
         }
+        return _lines.poll();
     }
 
+    /** Return the next line of input, or null if there is none. */
+    private String nextLine() {
+        while (!_inp.hasNextLine()) {
+            if (_readers.isEmpty()) {
+                return null;
+            }
+            _inp = new Scanner(_readers.remove(0));
+        }
+        return _inp.nextLine();
+    }
+
+    /** Marks the end of input in _lines. */
+    private static final String END = new String("<end>");
+
     /** Source of command input. */
     private Scanner _inp;
     /** Readers to use after the first. */
     private ArrayList<Reader> _readers;
+    /** Lines read ahead when interactive, ending with END; otherwise
+     *  null. */
+    private BlockingQueue<String> _lines;
 }
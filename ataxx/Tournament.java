@@ -0,0 +1,368 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ucb.util.CommandArgs;
+
+import static ataxx.PieceColor.*;
+
+/** A match of many games between two Contestants, A and B, played
+ *  without a Game, a CommandSource, or any output but the score, several
+ *  at a time.  Run as
+ *      java ataxx.Tournament [ --a=SPEC ] [ --b=SPEC ] [ --games=N ]
+ *          [ --concurrency=N ] [ --seed=N ] [ --blocks=N ] [ --plies=N ]
+ *          [ --margin=N ] [ --maxplies=N ] [ --elo0=N --elo1=N ]
+ *          [ --record=DIR ]
+ *  it plays at most N games (default DEFAULT_GAMES) between Contestants
+ *  with the settings SPEC (see Contestant), on N threads (default: one
+ *  per processor), and reports the score of B, its Elo difference from
+ *  A with a 95% confidence interval, and with --elo0 and --elo1, the
+ *  state of an SPRT of the hypothesis that B is ELO1 Elo stronger than A
+ *  against the hypothesis that it is ELO0 stronger (see MatchScore).
+ *  The match ends early once the SPRT accepts either.
+ *
+ *  Games are played in pairs from the same opening, each Contestant
+ *  playing red in one.  An opening is the initial position with up to N
+ *  random block placements (default 0, each with its reflections, as by
+ *  Board.setBlock) followed by N random moves (default DEFAULT_PLIES),
+ *  drawn from a generator seeded by the seed (default 0) and the number
+ *  of the pair, so that the same seed gives the same openings.
+ *
+ *  Games are adjudicated once one player can never move again and the
+ *  other's extends alone would fill the board (see
+ *  Endgame.settledValue), once one player has led by at least N pieces
+ *  (default DEFAULT_MARGIN; 0 for never) for MARGIN_PLIES plies in a
+ *  row, and after N plies (default DEFAULT_MAX_PLIES), when the player
+ *  with more pieces wins.
+ *
+ *  With --record, each game, from the initial position of its opening,
+ *  and its result, adjudicated or not, are added to the GameDatabase in
+ *  DIR.
+ *  @author Zac Nelson
+ */
+public class Tournament {
+
+    /** Default greatest number of games. */
+    static final int DEFAULT_GAMES = 1000;
+    /** Default number of random moves in an opening. */
+    static final int DEFAULT_PLIES = 4;
+    /** Default lead in pieces at which a game is adjudicated. */
+    static final int DEFAULT_MARGIN = 30;
+    /** Number of consecutive plies for which a lead must last for the
+     *  game to be adjudicated. */
+    static final int MARGIN_PLIES = 4;
+    /** Default number of plies after which a game is adjudicated. */
+    static final int DEFAULT_MAX_PLIES = 500;
+    /** Tolerated probabilities of wrong decisions by the SPRT. */
+    static final double SPRT_ALPHA = 0.05, SPRT_BETA = 0.05;
+    /** Number of pairs of games between reports of the score. */
+    static final int REPORT_PAIRS = 50;
+    /** Multiplier of the seed in the seeds of openings. */
+    private static final long SEED_STRIDE = 0x9E3779B97F4A7C15L;
+
+    /** Play the match described in the class comment, with arguments
+     *  ARGS0. */
+    public static void main(String[] args0) {
+        CommandArgs args =
+            new CommandArgs("--a=(.*){0,1} --b=(.*){0,1} --games=(\\d+){0,1}"
+                            + " --concurrency=(\\d+){0,1} --seed=(\\d+){0,1}"
+                            + " --blocks=(\\d+){0,1} --plies=(\\d+){0,1}"
+                            + " --margin=(\\d+){0,1} --maxplies=(\\d+){0,1}"
+                            + " --elo0=(-?\\d+){0,1} --elo1=(-?\\d+){0,1}"
+                            + " --record=(.+){0,1}",
+                            args0);
+        if (!args.ok() || args.contains("--elo0") != args.contains("--elo1")) {
+            System.err.println("Usage: java ataxx.Tournament [ --a=SPEC ]"
+                               + " [ --b=SPEC ] [ --games=N ] ...");
+            System.exit(1);
+        }
+        Tournament match;
+        try {
+            match = new Tournament(args.contains("--a") ? args.getFirst("--a")
+                                   : "",
+                                   args.contains("--b") ? args.getFirst("--b")
+                                   : "");
+        } catch (GameException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (args.contains("--games")) {
+            match._games = args.getInt("--games");
+        }
+        if (args.contains("--concurrency")) {
+            match._concurrency = Math.max(1, args.getInt("--concurrency"));
+        }
+        if (args.contains("--seed")) {
+            match._seed = args.getLong("--seed");
+        }
+        if (args.contains("--blocks")) {
+            match._blocks = args.getInt("--blocks");
+        }
+        if (args.contains("--plies")) {
+            match._plies = args.getInt("--plies");
+        }
+        if (args.contains("--margin")) {
+            match._margin = args.getInt("--margin");
+        }
+        if (args.contains("--maxplies")) {
+            match._maxPlies = args.getInt("--maxplies");
+        }
+        if (args.contains("--elo0")) {
+            match.setSprt(args.getInt("--elo0"), args.getInt("--elo1"));
+        }
+        try {
+            if (args.contains("--record")) {
+                match._record =
+                    new GameDatabase(new File(args.getFirst("--record")));
+            }
+            match.play();
+            if (match._record != null) {
+                match._record.close();
+            }
+        } catch (IOException | GameException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A match between Contestants with the settings SPECA and SPECB,
+     *  which are checked here.  Throws GameException if either is
+     *  malformed. */
+    Tournament(String specA, String specB) {
+        new Contestant(specA);
+        new Contestant(specB);
+        _specA = specA;
+        _specB = specB;
+    }
+
+    /** Run an SPRT of the hypothesis that B is ELO1 Elo stronger than A
+     *  against the hypothesis that it is ELO0 stronger, ending the match
+     *  when it accepts either. */
+    void setSprt(double elo0, double elo1) {
+        _sprt = true;
+        _elo0 = elo0;
+        _elo1 = elo1;
+    }
+
+    /** Play the match, reporting the score every REPORT_PAIRS pairs of
+     *  games and at the end, and return the final score. */
+    MatchScore play() {
+        System.out.printf("A: %s%nB: %s%n", new Contestant(_specA),
+                          new Contestant(_specB));
+        ExecutorService pool = Executors.newFixedThreadPool(_concurrency);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int k = 0; k < _concurrency; k += 1) {
+            workers.add(pool.submit(this::work));
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new Error("tournament thread failed", excp);
+            }
+        }
+        pool.shutdown();
+        report();
+        if (_sprt) {
+            double llr = _score.llr(_elo0, _elo1);
+            System.out.printf("SPRT [%.0f, %.0f]: %s%n", _elo0, _elo1,
+                              llr >= MatchScore.upperBound(SPRT_ALPHA,
+                                                           SPRT_BETA)
+                              ? "H1 accepted"
+                              : llr <= MatchScore.lowerBound(SPRT_ALPHA,
+                                                             SPRT_BETA)
+                              ? "H0 accepted" : "inconclusive");
+        }
+        return _score;
+    }
+
+    /** Play pairs of games until the match is over, on one thread, with
+     *  a pair of Contestants of its own. */
+    private void work() {
+        Contestant a = new Contestant(_specA);
+        Contestant b = new Contestant(_specB);
+        int pairs = (_games + 1) / 2;
+        for (int pair = _nextPair.getAndIncrement();
+             pair < pairs && !_decided; pair = _nextPair.getAndIncrement()) {
+            Board opening = opening(pair);
+            for (PieceColor bColor : new PieceColor[] { BLUE, RED }) {
+                a.newGame();
+                b.newGame();
+                PieceColor winner = bColor == RED ? playGame(opening, b, a)
+                    : playGame(opening, a, b);
+                if (winner == bColor) {
+                    _score.addWin();
+                } else if (winner == EMPTY) {
+                    _score.addDraw();
+                } else {
+                    _score.addLoss();
+                }
+            }
+            pairDone();
+        }
+    }
+
+    /** Note the end of a pair of games, reporting the score if it is
+     *  time to, and deciding the match if the SPRT allows. */
+    private synchronized void pairDone() {
+        _pairsDone += 1;
+        if (_pairsDone % REPORT_PAIRS == 0) {
+            report();
+        }
+        if (_sprt) {
+            double llr = _score.llr(_elo0, _elo1);
+            _decided = llr >= MatchScore.upperBound(SPRT_ALPHA, SPRT_BETA)
+                || llr <= MatchScore.lowerBound(SPRT_ALPHA, SPRT_BETA);
+        }
+    }
+
+    /** Print the current score. */
+    private synchronized void report() {
+        System.out.printf("Games %d: %s", _score.games(), _score);
+        if (_sprt) {
+            System.out.printf("  LLR %.2f (%.2f, %.2f)",
+                              _score.llr(_elo0, _elo1),
+                              MatchScore.lowerBound(SPRT_ALPHA, SPRT_BETA),
+                              MatchScore.upperBound(SPRT_ALPHA, SPRT_BETA));
+        }
+        System.out.printf("  adjudicated %d%n", _adjudicated.get());
+    }
+
+    /** Return the opening of pair number PAIR, as described in the class
+     *  comment: a position that is not over and in which the player to
+     *  move can move. */
+    Board opening(int pair) {
+        Random random = new Random(_seed * SEED_STRIDE + pair);
+        int[] moves = new int[Board.MAX_MOVES];
+        while (true) {
+            Board board = new Board();
+            for (int k = 0; k < _blocks; k += 1) {
+                char c = (char) ('a' + random.nextInt(Board.SIDE));
+                char r = (char) ('1' + random.nextInt(Board.SIDE));
+                if (board.legalBlock(c, r)) {
+                    board.setBlock(c, r);
+                }
+            }
+            for (int k = 0; k < _plies && board.getWinner() == null;
+                 k += 1) {
+                int n = board.generateMoves(moves);
+                if (n == 0) {
+                    board.pass();
+                } else {
+                    board.makeMove(moves[random.nextInt(n)]);
+                }
+            }
+            if (board.getWinner() == null
+                && board.canMove(board.whoseMove())) {
+                return board;
+            }
+        }
+    }
+
+    /** Play a game from OPENING, which is not modified, between RED0
+     *  playing red and BLUE0 playing blue, and return the winner (EMPTY
+     *  for a draw), adjudicating as described in the class comment. */
+    PieceColor playGame(Board opening, Contestant red0, Contestant blue0) {
+        Board board = new Board(opening);
+        int leading = 0;
+        for (int ply = 0; board.getWinner() == null; ply += 1) {
+            PieceColor mover = board.whoseMove();
+            if (!board.canMove(mover)) {
+                board.pass();
+                continue;
+            }
+            board.makeMove((mover == RED ? red0 : blue0).findMove(board));
+            if (board.getWinner() != null) {
+                break;
+            }
+            int margin = board.redPieces() - board.bluePieces();
+            int settled = Endgame.settledValue(board);
+            if (settled != -Endgame.INFTY) {
+                _adjudicated.incrementAndGet();
+                return record(opening, board,
+                              winner(board.whoseMove() == RED ? settled
+                                     : -settled));
+            }
+            leading = _margin > 0 && Math.abs(margin) >= _margin
+                ? leading + 1 : 0;
+            if (leading >= MARGIN_PLIES || ply + 1 >= _maxPlies) {
+                _adjudicated.incrementAndGet();
+                return record(opening, board, winner(margin));
+            }
+        }
+        return record(opening, board, board.getWinner());
+    }
+
+    /** Add the game played from OPENING to BOARD, with the result
+     *  WINNER, to my game database, if any, and return WINNER. */
+    private PieceColor record(Board opening, Board board,
+                              PieceColor winner) {
+        if (_record != null) {
+            List<Move> moves = new ArrayList<>(opening.allMoves());
+            moves.addAll(board.allMoves());
+            try {
+                _record.add(new GameRecord(opening.pieces(BLOCKED), moves,
+                                           winner));
+            } catch (IOException excp) {
+                throw new Error("could not record game", excp);
+            }
+        }
+        return winner;
+    }
+
+    /** Return the winner of a game that ends with red MARGIN pieces
+     *  ahead. */
+    private static PieceColor winner(int margin) {
+        return margin > 0 ? RED : margin < 0 ? BLUE : EMPTY;
+    }
+
+    /** Settings of Contestant A. */
+    private final String _specA;
+    /** Settings of Contestant B. */
+    private final String _specB;
+    /** Greatest number of games. */
+    private int _games = DEFAULT_GAMES;
+    /** Number of games played at once. */
+    private int _concurrency = Runtime.getRuntime().availableProcessors();
+    /** Seed of the openings. */
+    private long _seed;
+    /** Number of random block placements in an opening. */
+    private int _blocks;
+    /** Number of random moves in an opening. */
+    private int _plies = DEFAULT_PLIES;
+    /** Lead at which games are adjudicated, or 0 for none. */
+    private int _margin = DEFAULT_MARGIN;
+    /** Number of plies after which games are adjudicated. */
+    private int _maxPlies = DEFAULT_MAX_PLIES;
+    /** True iff an SPRT is run. */
+    private boolean _sprt;
+    /** Elo differences of the SPRT's hypotheses. */
+    private double _elo0, _elo1;
+
+    /** The score of B. */
+    private final MatchScore _score = new MatchScore();
+    /** Number of the next pair of games to be started. */
+    private final AtomicInteger _nextPair = new AtomicInteger();
+    /** Number of pairs of games finished. */
+    private int _pairsDone;
+    /** Number of games adjudicated. */
+    private final AtomicInteger _adjudicated = new AtomicInteger();
+    /** True once the SPRT has accepted a hypothesis. */
+    private volatile boolean _decided;
+    /** Database to which games are added, or null. */
+    private GameDatabase _record;
+}
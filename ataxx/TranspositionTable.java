@@ -0,0 +1,196 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.util.Arrays;
+
+/** A fixed-size cache of search results, indexed by the Zobrist keys of
+ *  positions (see Board.key()).  Each entry records the depth to which a
+ *  position was searched, the kind of bound its score represents, the
+ *  score, the best move found, and the search (age) that stored it.
+ *
+ *  The table is two parallel arrays of longs, so that its size is
+ *  predictable and probing it allocates nothing.  Entries are grouped in
+ *  buckets of two; a new entry replaces the entry in its bucket with the
+ *  same key, if any, and otherwise the one that is shallower, counting
+ *  entries left from earlier searches as somewhat shallower than they
+ *  are.
+ *
+ *  The table may be shared by several search threads without locking.
+ *  Each entry's packed contents are stored as one long, and its key
+ *  slot holds the key exclusive-or'ed with those contents, so that an
+ *  entry torn by simultaneous stores simply fails to match its key on
+ *  the next probe.  The packed contents returned by probe are decoded
+ *  with the static methods depth, bound, score, and move.
+ *  @author Zac Nelson
+ */
+class TranspositionTable {
+
+    /** Bound types.  EXACT: the score is the position's value.  LOWER: the
+     *  value is at least the score.  UPPER: the value is at most the
+     *  score. */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Number of bytes in one entry. */
+    static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** Number of entries in a bucket. */
+    private static final int BUCKET_SIZE = 2;
+
+    /** Bits of a packed entry holding the score, move, depth, bound, and
+     *  age, from least to most significant. */
+    private static final int SCORE_BITS = 32,
+        MOVE_BITS = 2 * Move.CODE_SHIFT, DEPTH_BITS = 8, BOUND_BITS = 2,
+        AGE_BITS = 6;
+
+    /** Shifts of the move, depth, bound, and age fields. */
+    private static final int MOVE_SHIFT = SCORE_BITS,
+        DEPTH_SHIFT = MOVE_SHIFT + MOVE_BITS,
+        BOUND_SHIFT = DEPTH_SHIFT + DEPTH_BITS,
+        AGE_SHIFT = BOUND_SHIFT + BOUND_BITS;
+
+    /** Greatest depth, and mask of the age, of an entry. */
+    static final int MAX_ENTRY_DEPTH = (1 << DEPTH_BITS) - 1,
+        AGE_MASK = (1 << AGE_BITS) - 1;
+
+    /** Number of plies of depth by which an entry from an earlier search
+     *  is discounted, per search, when choosing an entry to replace. */
+    private static final int AGE_PENALTY = 2;
+
+    /** A table occupying at most MEGABYTES megabytes (and at least one
+     *  bucket). */
+    TranspositionTable(int megabytes) {
+        long entries = Math.max(BUCKET_SIZE,
+                                ((long) megabytes << 20) / ENTRY_BYTES);
+        int size = Integer.highestOneBit((int) Math.min(entries,
+                                                        1 << 30));
+        _keys = new long[size];
+        _data = new long[size];
+        _mask = size - 1;
+    }
+
+    /** Return the number of entries in this table. */
+    int size() {
+        return _keys.length;
+    }
+
+    /** Forget all entries. */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, 0);
+        _age = 0;
+    }
+
+    /** Indicate that a new search is starting, so that entries stored from
+     *  now on are preferred over older ones. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Return the packed contents of the entry for the position with
+     *  Zobrist key KEY, or 0 if there is none. */
+    long probe(long key) {
+        int i = bucket(key);
+        for (int k = 0; k < BUCKET_SIZE; k += 1, i += 1) {
+            long data = _data[i];
+            if ((_keys[i] ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the depth of the entry whose packed contents are DATA. */
+    static int depth(long data) {
+        return field(data, DEPTH_SHIFT, DEPTH_BITS);
+    }
+
+    /** Return the bound type (EXACT, LOWER, or UPPER) of the entry whose
+     *  packed contents are DATA. */
+    static int bound(long data) {
+        return field(data, BOUND_SHIFT, BOUND_BITS);
+    }
+
+    /** Return the score of the entry whose packed contents are DATA. */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /** Return the code (see Move.code()) of the best move of the entry
+     *  whose packed contents are DATA, or 0 if it has none. */
+    static int move(long data) {
+        return field(data, MOVE_SHIFT, MOVE_BITS);
+    }
+
+    /** Return the age, modulo 2 to the AGE_BITS, of the entry whose
+     *  packed contents are DATA. */
+    static int age(long data) {
+        return field(data, AGE_SHIFT, AGE_BITS);
+    }
+
+    /** Return the packed contents of an entry recording the score SCORE,
+     *  a bound of type BOUND, from a search of depth DEPTH (at most
+     *  MAX_ENTRY_DEPTH) that found the move with code BEST (0 if none),
+     *  stored by the search with age AGE.  These are never 0. */
+    static long pack(int depth, int bound, int score, int best, int age) {
+        return (score & 0xFFFFFFFFL)
+            | ((long) best << MOVE_SHIFT)
+            | ((long) Math.min(depth, MAX_ENTRY_DEPTH) << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) (age & AGE_MASK) << AGE_SHIFT)
+            | (1L << (AGE_SHIFT + AGE_BITS));
+    }
+
+    /** Record that the position with key KEY has score SCORE, which is a
+     *  bound of type BOUND, according to a search of depth DEPTH that
+     *  found the move with code BEST (0 if none) as its best move.
+     *  Return true iff this overwrote the entry of a different
+     *  position. */
+    boolean store(long key, int depth, int bound, int score, int best) {
+        int i = bucket(key);
+        int victim = -1;
+        int victimValue = Integer.MAX_VALUE;
+        for (int k = 0; k < BUCKET_SIZE; k += 1, i += 1) {
+            long old = _data[i];
+            if (old == 0 || (_keys[i] ^ old) == key) {
+                victim = i;
+                break;
+            }
+            int age = (_age - age(old)) & AGE_MASK;
+            int value = depth(old) - AGE_PENALTY * age;
+            if (value < victimValue) {
+                victim = i;
+                victimValue = value;
+            }
+        }
+        long old = _data[victim];
+        boolean collision = old != 0 && (_keys[victim] ^ old) != key;
+        long data = pack(depth, bound, score, best, _age);
+        _data[victim] = data;
+        _keys[victim] = key ^ data;
+        return collision;
+    }
+
+    /** Return the index of the first entry of the bucket for KEY. */
+    private int bucket(long key) {
+        return (int) (key ^ (key >>> 32)) & _mask & -BUCKET_SIZE;
+    }
+
+    /** Return the LENGTH-bit field of DATA starting at bit SHIFT. */
+    private static int field(long data, int shift, int length) {
+        return (int) (data >>> shift) & ((1 << length) - 1);
+    }
+
+    /** Zobrist keys of the entries, each exclusive-or'ed with the
+     *  corresponding element of _data. */
+    private final long[] _keys;
+    /** Packed contents of the entries: score, move, depth, bound, and age,
+     *  plus a bit that is set in every occupied entry. */
+    private final long[] _data;
+    /** Mask for reducing hash values to entry indices. */
+    private final int _mask;
+    /** Age of the current search. */
+    private int _age;
+}
@@ -0,0 +1,516 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static ataxx.PieceColor.*;
+import static ataxx.GameException.error;
+
+/** An engine speaking the Universal Ataxx Interface, the protocol
+ *  through which tournament managers and GUIs drive Ataxx engines.
+ *  Commands arrive one per line and replies go to the output stream.  The
+ *  supported commands are uai, isready, uainewgame, setoption (Hash,
+ *  Threads, LMR, Futility, and Endgame), position startpos [moves ...]
+ *  and position fen FEN [moves ...] (FEN as for parseFen), go (with
+ *  wtime, btime, winc, binc, movestogo, movetime, depth, nodes,
+ *  infinite, and ponder), ponderhit, stop, and quit.  Unknown commands
+ *  are ignored, as the protocol requires.
+ *
+ *  In UAI notation, an extend is written as its destination square
+ *  ("b6"), a jump as its two squares ("a7c5"), and a pass as "0000".
+ *  The player who moves first (red here) is called black ("x"), so red's
+ *  clock is btime and blue's is wtime.
+ *
+ *  Searches run on a separate thread, so that stop and isready are
+ *  answered while one is in progress.  One UAI object serves any number
+ *  of games, keeping its Engine (and so its transposition table and
+ *  compiled code) from one to the next.
+ *  @author Zac Nelson
+ */
+class UAI {
+
+    /** Assumed number of moves left in the game when dividing up the
+     *  remaining time, if the manager does not say. */
+    static final int MOVES_TO_GO = 30;
+    /** Milliseconds held back from each move's time to allow for
+     *  communication delays. */
+    static final long MOVE_OVERHEAD = 30;
+    /** Greatest number of words in a position in standard FEN. */
+    static final int FEN_FIELDS = 4;
+    /** Largest transposition table size allowed, in megabytes. */
+    static final int MAX_HASH = 1 << 14;
+    /** Largest number of search threads allowed. */
+    static final int MAX_THREADS = 256;
+    /** Largest setting of the Endgame option. */
+    static final int MAX_ENDGAME = Board.SIDE * Board.SIDE;
+    /** Centipawn value of one piece in reported scores. */
+    static final int PIECE_SCORE = 100;
+
+    /** A UAI engine reading commands from INPUT and writing replies to
+     *  OUTPUT, whose search uses the threads, transposition table size,
+     *  pruning, endgame setting, and default think time of CONTEXT until
+     *  told otherwise. */
+    UAI(Reader input, PrintStream output, GameContext context) {
+        _input = new BufferedReader(input);
+        _output = output;
+        _threads = context.threads();
+        _hashMegabytes = context.hashMegabytes();
+        _lateMoveReductions = context.lateMoveReductions();
+        _futilityPruning = context.futilityPruning();
+        _endgameEmpties = Math.max(0, Math.min(MAX_ENDGAME,
+                                               context.endgameEmpties()));
+        _defaultThinkTime = context.thinkTime();
+        _engine = newEngine();
+        _board = new Board();
+    }
+
+    /** Process commands until quit or the end of input. */
+    void run() {
+        try {
+            String line;
+            while ((line = _input.readLine()) != null) {
+                if (!execute(line.trim())) {
+                    break;
+                }
+            }
+        } catch (IOException excp) {
+            _output.printf("info string input error: %s%n",
+                           excp.getMessage());
+        }
+        stopSearch();
+    }
+
+    /** Execute the command LINE, returning false iff it is quit. */
+    boolean execute(String line) {
+        String[] words = line.split("\\s+");
+        switch (words[0]) {
+        case "uai":
+            _output.printf("id name %s%n", Defaults.VERSION);
+            _output.println("id author Zac Nelson");
+            _output.printf("option name Hash type spin default %d min 1 "
+                           + "max %d%n", _hashMegabytes, MAX_HASH);
+            _output.printf("option name Threads type spin default %d min 1 "
+                           + "max %d%n", _threads, MAX_THREADS);
+            _output.printf("option name LMR type check default %b%n",
+                           _lateMoveReductions);
+            _output.printf("option name Futility type check default %b%n",
+                           _futilityPruning);
+            _output.printf("option name Endgame type spin default %d min 0 "
+                           + "max %d%n", _endgameEmpties, MAX_ENDGAME);
+            _output.println("uaiok");
+            break;
+        case "isready":
+            _output.println("readyok");
+            break;
+        case "uainewgame":
+            waitForSearch();
+            _engine.clear();
+            _board = new Board();
+            break;
+        case "setoption":
+            waitForSearch();
+            setOption(words);
+            break;
+        case "position":
+            waitForSearch();
+            position(words);
+            break;
+        case "go":
+            waitForSearch();
+            go(words);
+            break;
+        case "ponderhit":
+            _engine.ponderHit(_ponderTime);
+            release();
+            break;
+        case "stop":
+            stopSearch();
+            break;
+        case "quit":
+            return false;
+        default:
+            break;
+        }
+        return true;
+    }
+
+    /** Return an Engine with the current option settings, reporting
+     *  each iteration of its searches. */
+    private Engine newEngine() {
+        Engine engine = new Engine(_threads, _hashMegabytes);
+        engine.setListener(this::info);
+        engine.setLateMoveReductions(_lateMoveReductions);
+        engine.setFutilityPruning(_futilityPruning);
+        engine.setEndgameEmpties(_endgameEmpties);
+        return engine;
+    }
+
+    /** Make late-move reductions iff LMR and do futility pruning iff
+     *  FUTILITY, as do the LMR and Futility options. */
+    void setPruning(boolean lmr, boolean futility) {
+        _lateMoveReductions = lmr;
+        _futilityPruning = futility;
+        _engine.setLateMoveReductions(lmr);
+        _engine.setFutilityPruning(futility);
+    }
+
+    /** Try to solve positions with at most EMPTIES empty squares
+     *  exactly, as does the Endgame option. */
+    void setEndgameEmpties(int empties) {
+        _endgameEmpties = Math.max(0, Math.min(MAX_ENDGAME, empties));
+        _engine.setEndgameEmpties(_endgameEmpties);
+    }
+
+    /** Handle "setoption name NAME value VALUE", whose words are WORDS. */
+    private void setOption(String[] words) {
+        if (words.length != 5 || !words[1].equals("name")
+            || !words[3].equals("value")) {
+            return;
+        }
+        switch (words[2].toLowerCase()) {
+        case "lmr":
+            setPruning(Boolean.parseBoolean(words[4]), _futilityPruning);
+            return;
+        case "futility":
+            setPruning(_lateMoveReductions, Boolean.parseBoolean(words[4]));
+            return;
+        default:
+            break;
+        }
+        try {
+            int value = Integer.parseInt(words[4]);
+            switch (words[2].toLowerCase()) {
+            case "hash":
+                _hashMegabytes = Math.max(1, Math.min(MAX_HASH, value));
+                break;
+            case "threads":
+                _threads = Math.max(1, Math.min(MAX_THREADS, value));
+                break;
+            case "endgame":
+                setEndgameEmpties(value);
+                return;
+            default:
+                return;
+            }
+            _engine = newEngine();
+        } catch (NumberFormatException excp) {
+            _output.printf("info string bad option value: %s%n", words[4]);
+        }
+    }
+
+    /** Handle "position startpos [moves MOVE ...]" or "position fen FEN
+     *  [moves MOVE ...]", whose words are WORDS.  Stops at the first
+     *  illegal move. */
+    private void position(String[] words) {
+        int k = 1;
+        if (k < words.length && words[k].equals("startpos")) {
+            _board = new Board();
+            k += 1;
+        } else if (k < words.length && words[k].equals("fen")) {
+            int end = k + 1;
+            while (end < words.length && !words[end].equals("moves")) {
+                end += 1;
+            }
+            String fen = String.join(" ", Arrays.copyOfRange(
+                words, k + 1, end));
+            try {
+                _board = parseFen(fen);
+            } catch (GameException excp) {
+                _output.printf("info string %s%n", excp.getMessage());
+                return;
+            }
+            k = end;
+        } else {
+            _output.println("info string unsupported position");
+            return;
+        }
+        if (k < words.length && words[k].equals("moves")) {
+            for (k += 1; k < words.length; k += 1) {
+                Move move = parseMove(_board, words[k]);
+                if (move == null || _board.getWinner() != null) {
+                    _output.printf("info string illegal move: %s%n",
+                                   words[k]);
+                    return;
+                }
+                _board.makeMove(move);
+            }
+        }
+    }
+
+    /** Handle "go ...", whose words are WORDS, by starting a search of the
+     *  current position with the limits they give. */
+    private void go(String[] words) {
+        long time, increment, moveTime, nodes;
+        int depth, movesToGo;
+        time = increment = moveTime = nodes = 0;
+        depth = Search.MAX_DEPTH;
+        movesToGo = MOVES_TO_GO;
+        boolean infinite, ponder;
+        infinite = ponder = false;
+        String myTime = _board.whoseMove() == RED ? "btime" : "wtime";
+        String myInc = _board.whoseMove() == RED ? "binc" : "winc";
+        try {
+            for (int k = 1; k < words.length; k += 1) {
+                String word = words[k];
+                if (word.equals("infinite")) {
+                    infinite = true;
+                } else if (word.equals("ponder")) {
+                    ponder = true;
+                } else if (k + 1 >= words.length) {
+                    break;
+                } else if (word.equals(myTime)) {
+                    time = Long.parseLong(words[++k]);
+                } else if (word.equals(myInc)) {
+                    increment = Long.parseLong(words[++k]);
+                } else if (word.equals("movestogo")) {
+                    movesToGo = Math.max(1, Integer.parseInt(words[++k]));
+                } else if (word.equals("movetime")) {
+                    moveTime = Long.parseLong(words[++k]);
+                } else if (word.equals("depth")) {
+                    depth = Integer.parseInt(words[++k]);
+                } else if (word.equals("nodes")) {
+                    nodes = Long.parseLong(words[++k]);
+                }
+            }
+        } catch (NumberFormatException excp) {
+            _output.println("info string bad go parameter");
+        }
+
+        long thinkTime;
+        if (infinite) {
+            thinkTime = 0;
+        } else if (moveTime > 0) {
+            thinkTime = Math.max(1, moveTime - MOVE_OVERHEAD);
+        } else if (time > 0) {
+            thinkTime = Math.max(1, Math.min(time / 2, time / movesToGo
+                                             + increment - MOVE_OVERHEAD));
+        } else {
+            thinkTime = 0;
+        }
+        if (!infinite && thinkTime == 0 && nodes == 0
+            && depth == Search.MAX_DEPTH) {
+            thinkTime = _defaultThinkTime;
+        }
+        _ponderTime = thinkTime;
+        _hold = infinite || ponder;
+        startSearch(ponder ? 0 : thinkTime, nodes, Math.max(1, depth));
+    }
+
+    /** Start searching the current position in the background for at
+     *  most THINKTIME milliseconds, NODES positions, and DEPTH plies (0
+     *  for no limit on time or positions), and report the best move when
+     *  it is done and released (see release()).  If the player to move
+     *  must pass, or the game is over, report a pass at once. */
+    private void startSearch(long thinkTime, long nodes, int depth) {
+        Board board = new Board(_board);
+        if (board.getWinner() != null || !board.canMove(board.whoseMove())) {
+            _output.println("bestmove 0000");
+            return;
+        }
+        _searchBoard = board;
+        Future<Move> search =
+            _engine.startSearch(board, thinkTime, nodes, depth);
+        _searcher = new Thread(() -> {
+            try {
+                Move best = search.get();
+                awaitRelease();
+                _output.printf("bestmove %s%n", moveString(best));
+            } catch (InterruptedException | ExecutionException excp) {
+                _output.printf("info string search failed: %s%n", excp);
+            }
+        }, "uai-report");
+        _searcher.start();
+    }
+
+    /** Wait until the result of the current search may be reported:
+     *  immediately, unless it was started by "go infinite" or "go
+     *  ponder", in which case not until stop or ponderhit. */
+    private synchronized void awaitRelease() throws InterruptedException {
+        while (_hold) {
+            wait();
+        }
+    }
+
+    /** Allow the result of the current search to be reported. */
+    private synchronized void release() {
+        _hold = false;
+        notifyAll();
+    }
+
+    /** Report the progress of the search by ENGINE after an iteration. */
+    private void info(Engine engine) {
+        long elapsed = engine.elapsed();
+        long nodes = engine.nodes();
+        StringBuilder pv = new StringBuilder();
+        for (Move move : engine.principalVariation()) {
+            pv.append(' ').append(moveString(move));
+        }
+        _output.printf("info depth %d score %s time %d nodes %d nps %d "
+                       + "pv%s%n", engine.depthReached(),
+                       scoreString(engine.score(), engine.depthReached()),
+                       elapsed, nodes, nodes * 1000 / Math.max(1, elapsed),
+                       pv);
+    }
+
+    /** Return the UAI form of the red-relative score SCORE from a search
+     *  of depth DEPTH, from the point of view of the player to move. */
+    private String scoreString(int score, int depth) {
+        if (_searchBoard.whoseMove() == BLUE) {
+            score = -score;
+        }
+        if (Math.abs(score) >= Search.WINNING_VALUE) {
+            int plies = depth - (Math.abs(score) - Search.WINNING_VALUE);
+            int moves = (plies + 1) / 2;
+            return String.format("mate %d", score > 0 ? moves : -moves);
+        }
+        return String.format("cp %d", score * PIECE_SCORE);
+    }
+
+    /** Stop any search in progress, and wait for it to report its
+     *  move. */
+    private void stopSearch() {
+        release();
+        while (_searcher != null && _searcher.isAlive()) {
+            _engine.stop();
+            joinSearch();
+        }
+    }
+
+    /** Wait for any search in progress to finish. */
+    private void waitForSearch() {
+        while (_searcher != null && _searcher.isAlive()) {
+            joinSearch();
+        }
+    }
+
+    /** Wait briefly for the search thread to finish. */
+    private void joinSearch() {
+        try {
+            _searcher.join(JOIN_MILLIS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Return a new board with the position FEN, in standard Ataxx FEN
+     *  or in the notation of Board.toFen.  Standard FEN gives the rows
+     *  from 7 down to 1, separated by '/', each giving its squares from a
+     *  to g as 'x' for the first player (red), 'o' for the second, '-'
+     *  for a block, and a digit for a run of that many empty squares;
+     *  then the player to move, 'x' or 'o'; and then, optionally, the
+     *  halfmove clock (moves since the last extend) and the fullmove
+     *  number.  The initial position is "x5o/7/7/7/7/7/o5x x 0 1".  The
+     *  halfmove clock serves as the number of consecutive jumps, short of
+     *  Board.JUMP_LIMIT: managers that send a longer one count to a
+     *  larger limit, and still consider the game to be on.  Throws
+     *  GameException if FEN is malformed. */
+    static Board parseFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 2 || !fields[1].matches("[xo]")) {
+            return Board.fromFen(fen);
+        }
+        int jumps = 0;
+        try {
+            if (fields.length > 2) {
+                jumps = Integer.parseInt(fields[2]);
+            }
+            if (fields.length > FEN_FIELDS || jumps < 0
+                || (fields.length > 3 && Integer.parseInt(fields[3]) < 1)) {
+                throw error("malformed position: %s", fen);
+            }
+        } catch (NumberFormatException excp) {
+            throw error("malformed position: %s", fen);
+        }
+        StringBuilder rows = new StringBuilder();
+        for (char ch : fields[0].toCharArray()) {
+            rows.append(ch == 'x' ? Board.FEN_RED : ch == 'o' ? Board.FEN_BLUE
+                        : ch == '-' ? Board.FEN_BLOCK
+                        : ch == '/' || Character.isDigit(ch) ? ch : '?');
+        }
+        try {
+            return Board.fromFen(String.format(
+                "%s %c %d", rows, fields[1].equals("x") ? Board.FEN_RED
+                : Board.FEN_BLUE, Math.min(jumps, Board.JUMP_LIMIT - 1)));
+        } catch (GameException excp) {
+            throw error("malformed position: %s", fen);
+        }
+    }
+
+    /** Return the move in BOARD denoted by the UAI move string STR, or null
+     *  if there is no such legal move. */
+    static Move parseMove(Board board, String str) {
+        Move move;
+        if (str.equals("0000")) {
+            move = Move.pass();
+        } else if (str.matches("[a-g][1-7]")) {
+            move = null;
+            char c = str.charAt(0), r = str.charAt(1);
+            for (int dc = -1; dc <= 1 && move == null; dc += 1) {
+                for (int dr = -1; dr <= 1 && move == null; dr += 1) {
+                    char c0 = (char) (c + dc), r0 = (char) (r + dr);
+                    if (board.get(c0, r0) == board.whoseMove()) {
+                        move = Move.move(c0, r0, c, r);
+                    }
+                }
+            }
+        } else if (str.matches("[a-g][1-7][a-g][1-7]")) {
+            move = Move.move(str.charAt(0), str.charAt(1),
+                             str.charAt(2), str.charAt(3));
+        } else {
+            move = null;
+        }
+        return board.legalMove(move) ? move : null;
+    }
+
+    /** Return the UAI form of MOVE. */
+    static String moveString(Move move) {
+        if (move.isPass()) {
+            return "0000";
+        } else if (move.isExtend()) {
+            return String.format("%c%c", move.col1(), move.row1());
+        } else {
+            return String.format("%c%c%c%c", move.col0(), move.row0(),
+                                 move.col1(), move.row1());
+        }
+    }
+
+    /** Milliseconds to wait at a time for the search thread. */
+    private static final long JOIN_MILLIS = 10;
+
+    /** Source of commands. */
+    private final BufferedReader _input;
+    /** Destination of replies. */
+    private final PrintStream _output;
+    /** Current Threads and Hash option settings. */
+    private int _threads, _hashMegabytes;
+    /** Current LMR and Futility option settings. */
+    private boolean _lateMoveReductions, _futilityPruning;
+    /** Current Endgame option setting. */
+    private int _endgameEmpties;
+    /** Think time for a search with no limits given. */
+    private final long _defaultThinkTime;
+    /** The search machinery. */
+    private Engine _engine;
+    /** The position set by the last position command. */
+    private Board _board;
+    /** The position being searched by the current or last search. */
+    private Board _searchBoard;
+    /** The thread waiting to report the result of the current or last
+     *  search, or null. */
+    private Thread _searcher;
+    /** Think time to use if the current search, started by "go ponder",
+     *  gets a ponder hit. */
+    private long _ponderTime;
+    /** True iff the result of the current search may not be reported
+     *  yet. */
+    private boolean _hold;
+}
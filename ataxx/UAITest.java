@@ -0,0 +1,60 @@
+/* Skeleton code copyright (C) 2008, 2022 Paul N. Hilfinger and the
+ * Regents of the University of California.  Do not distribute this or any
+ * derivative work without permission. */
+
+package ataxx;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static ataxx.Move.*;
+
+/** Tests of the Universal Ataxx Interface's notations (see UAI).
+ *  @author Zac Nelson
+ */
+public class UAITest {
+
+    @Test
+    public void testMoves() {
+        Board b = new Board();
+        assertEquals("wrong extend", move('g', '1', 'g', '2'),
+                     UAI.parseMove(b, "g2"));
+        assertEquals("wrong jump", move('a', '7', 'c', '5'),
+                     UAI.parseMove(b, "a7c5"));
+        assertNull("illegal move accepted", UAI.parseMove(b, "a1a2"));
+        assertNull("illegal pass accepted", UAI.parseMove(b, "0000"));
+        assertEquals("wrong UAI extend", "g2",
+                     UAI.moveString(move('g', '1', 'g', '2')));
+        assertEquals("wrong UAI jump", "a7c5",
+                     UAI.moveString(move('a', '7', 'c', '5')));
+        assertEquals("wrong UAI pass", "0000", UAI.moveString(pass()));
+    }
+
+    @Test
+    public void testFen() {
+        assertEquals("wrong initial position", new Board().toFen(),
+                     UAI.parseFen("x5o/7/7/7/7/7/o5x x 0 1").toFen());
+        assertEquals("wrong position", "r1x2xb/7/7/7/7/7/b5r b 3",
+                     UAI.parseFen("x1-2-o/7/7/7/7/7/o5x o 3 7").toFen());
+        assertEquals("wrong position without clocks",
+                     "r5b/7/7/7/7/7/b5r b 0",
+                     UAI.parseFen("x5o/7/7/7/7/7/o5x o").toFen());
+        assertNull("long clock ended game",
+                   UAI.parseFen("x5o/7/7/7/7/7/o5x x 60 40").getWinner());
+        assertEquals("private notation rejected", "r5b/7/7/7/7/7/b5r r 2",
+                     UAI.parseFen("r5b/7/7/7/7/7/b5r r 2").toFen());
+        String[] bad = {
+            "x5o/7/7/7/7/7/r5x x 0 1", "x5o/7/7/7/7/7/o5x x -1 1",
+            "x5o/7/7/7/7/7/o5x x 0 0", "x5o/7/7/7/7/7/o5x x 0 1 2",
+            "x5o/7/7/7/7/7 x 0 1"
+        };
+        for (String fen : bad) {
+            try {
+                UAI.parseFen(fen);
+                fail("accepted " + fen);
+            } catch (GameException excp) {
+                /* Expected. */
+            }
+        }
+    }
+}
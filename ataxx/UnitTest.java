@@ -15,7 +15,10 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         textui.runClasses(CommandTest.class, MoveTest.class,
-                          BoardTest.class);
+                          BoardTest.class, GameTest.class,
+                          GameRecordTest.class, EndgameTest.class,
+                          SearchTest.class, OpeningBookTest.class,
+                          AnalysisCacheTest.class, UAITest.class);
     }
 
 }